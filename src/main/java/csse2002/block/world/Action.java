@@ -132,47 +132,59 @@ public class Action {
     public static Action loadAction(BufferedReader reader) throws
             ActionFormatException {
 
+        String line;
         try {
-            String line = reader.readLine();
-
-            // EOF reached, reader returns null
-            if (line == null) {
-                return null;
-            }
-
+            line = reader.readLine();
+        } catch (IOException e) {
+            throw new ActionFormatException(e.toString());
+        }
 
-            String [] tokens = line.split(" ", 3);
+        // EOF reached, reader returns null
+        if (line == null) {
+            return null;
+        }
+        return parseAction(line);
+    }
 
-            if (tokens.length > 2) {
-                throw new ActionFormatException("Too many tokens on line.");
-            }
+    /**
+     * Create an Action from a line of an actions file, as loadAction() does.
+     * <br>
+     * The line is split the same way as line.split(" ", 3), without
+     * creating the array.
+     * @param line the line, without its line terminator
+     * @return the created action
+     * @throws ActionFormatException if the line has invalid contents and
+     *                               the action cannot be created
+     * @require line != null
+     */
+    static Action parseAction(String line) throws ActionFormatException {
+        int firstSpace = line.indexOf(' ');
+        if (firstSpace >= 0 && line.indexOf(' ', firstSpace + 1) >= 0) {
+            throw new ActionFormatException("Too many tokens on line.");
+        }
 
-            Action action = null;
+        Action action = null;
 
-            if (tokens.length == 1) {
-                if (tokens[0].equals("DIG")) {
-                    action = new Action(DIG, "");
-                }
-            } else if (tokens.length == 2) {
-                if (tokens[0].equals("MOVE_BUILDER")) {
-                    action = new Action(MOVE_BUILDER, tokens[1]);
-                } else if (tokens[0].equals("MOVE_BLOCK")) {
-                    action = new Action(MOVE_BLOCK, tokens[1]);
-                } else if (tokens[0].equals("DROP")) {
-                    action = new Action(DROP, tokens[1]);
-                }
+        if (firstSpace < 0) {
+            if (line.equals("DIG")) {
+                action = new Action(DIG, "");
             }
-
-
-            if (action == null) {
-                throw new ActionFormatException("Unrecognised action given");
+        } else {
+            String secondary = line.substring(firstSpace + 1);
+            if (line.startsWith("MOVE_BUILDER") && firstSpace == 12) {
+                action = new Action(MOVE_BUILDER, secondary);
+            } else if (line.startsWith("MOVE_BLOCK") && firstSpace == 10) {
+                action = new Action(MOVE_BLOCK, secondary);
+            } else if (line.startsWith("DROP") && firstSpace == 4) {
+                action = new Action(DROP, secondary);
             }
+        }
 
-            return action;
-
-        } catch (IOException e) {
-            throw new ActionFormatException(e.toString());
+        if (action == null) {
+            throw new ActionFormatException("Unrecognised action given");
         }
+
+        return action;
     }
 
     /**
@@ -190,8 +202,11 @@ public class Action {
      * Each action is listed on a single line, and one file can contain
      * multiple actions. <br>
      *
-     * Each action must be processed after it is read (i.e. do not read the
-     * whole file first, read and process each action one at a time).
+     * Actions are read at most BatchActionProcessor.BLOCK_SIZE (1024) lines
+     * ahead of those processed, and never the whole file first: a block of
+     * lines is processed as soon as it is full, or as soon as the reader
+     * has no more input ready (so interactive input is still answered one
+     * line at a time). <br>
      *
      * The file format is as follows:
      * <br>
@@ -254,8 +269,10 @@ public class Action {
      * (The line "RANDOM_ACTION" should then cause an ActionFormatException to
      * be thrown) <br>
      *
-     * Hint: Repeatedly call Action.loadAction() to get the next Action, and
-     * then Action.processAction() to process the action. <br>
+     * Actions are performed by BatchActionProcessor.processActions(), which
+     * reads them in blocks and buffers the output, with the same output as
+     * calling Action.loadAction() then Action.processAction() for each line.
+     * <br>
      *
      * @param reader the reader to read actions from
      * @param startingMap the starting map that actions will be applied to
@@ -268,10 +285,12 @@ public class Action {
                                       WorldMap startingMap)
             throws ActionFormatException {
 
-        Action action = Action.loadAction(reader);
-        while (action != null) {
-            processAction(action, startingMap);
-            action = Action.loadAction(reader);
+        try {
+            BatchActionProcessor.processActions(reader, startingMap,
+                    new WriterActionSink(System.out));
+        } catch (IOException e) {
+            // not possible, PrintStreams do not throw IOExceptions
+            throw new ActionFormatException(e.toString());
         }
     }
 
@@ -336,111 +355,50 @@ public class Action {
      * @require map != null
      */
     public static void processAction(Action action, WorldMap map) {
-
-        try {
-            int primary = action.getPrimaryAction();
-            switch (primary) {
-                case Action.DIG:
-                    handleDig(map);
-                    System.out.println("Top block on current tile removed");
-                    break;
-                case Action.DROP:
-                    int secondaryAction;
-                    try {
-                        secondaryAction =
-                                Integer.parseInt(action.getSecondaryAction());
-                    } catch (NumberFormatException numberFormat) {
-                        System.out.println("Error: Invalid action");
-                        return;
-                    }
-                    handleDrop(map, secondaryAction);
-                    System.out.println("Dropped a block from inventory");
-                    break;
-                case Action.MOVE_BLOCK:
-                    if (!isValidDirection(action.getSecondaryAction())) {
-                        System.out.println("Error: Invalid action");
-                        return;
-                    }
-                    handleMoveBlock(map, action.getSecondaryAction());
-                    System.out.println("Moved block "
-                            + action.getSecondaryAction());
-                    break;
-                case Action.MOVE_BUILDER:
-                    if (!isValidDirection(action.getSecondaryAction())) {
-                        System.out.println("Error: Invalid action");
-                        return;
-                    }
-                    handleMoveBuilder(map, action.getSecondaryAction());
-                    System.out.println("Moved builder "
-                            + action.getSecondaryAction());
-                    break;
-                default:
-                    System.out.println("Error: Invalid action");
-            }
-        } catch (NoExitException noExit) {
-            System.out.println("No exit this way");
-        } catch (TooHighException tooHigh) {
-            System.out.println("Too high");
-        } catch (TooLowException tooLow) {
-            System.out.println("Too low");
-        } catch (InvalidBlockException invalidBlock) {
-            System.out.println("Cannot use that block");
-        }
-    }
-
-    /**
-     * Handle moving the builder.
-     * @param map the map to use
-     * @param direction the direction as a string
-     * @throws NoExitException if the builder cannot move that direction
-     */
-    private static void handleMoveBuilder(WorldMap map, String direction)
-            throws NoExitException {
-        Tile movingTo = map.getBuilder().getCurrentTile().getExits()
-                .get(direction);
-        map.getBuilder().moveTo(movingTo);
-
-    }
-
-    /**
-     * Handle moving a block.
-     * @param map the map to use
-     * @param direction the direction as a string
-     * @throws TooHighException Tile.moveBlock() throws a TooHighException
-     * @throws InvalidBlockException the block on the builder's tile is not
-     *         moveable.
-     * @throws NoExitException if there is no exit in that direction.
-     */
-    private static void handleMoveBlock(WorldMap map, String direction)
-            throws TooHighException, InvalidBlockException, NoExitException {
-        map.getBuilder().getCurrentTile().moveBlock(direction);
+        System.out.println(applyAction(action, map).describe(action));
     }
 
     /**
-     * Handle dropping a block.
-     * @param map the map to use
-     * @param index the block index in the Builder's inventory
-     * @throws TooHighException if Builder.drop() would throw a
-     *         TooHighException
-     * @throws InvalidBlockException if Builder.drop() would throw an
-     *         InvalidBlockException
-     */
-    private static void handleDrop(WorldMap map, int index)
-            throws TooHighException, InvalidBlockException {
-        map.getBuilder().dropFromInventory(index);
-    }
-
-    /**
-     * Handle digging a block.
-     * @param map the map to use
-     * @throws TooLowException if Builder.digOnCurrentTIle() would throw a
-     *         TooLowException
-     * @throws InvalidBlockException if Builder.digOnCurrentTile() would throw
-     *         an InvalidBlockException
+     * Perform the given action on a WorldMap, as processAction() does, but
+     * return the outcome instead of printing a message. <br>
+     * The message processAction() prints is given by
+     * ActionOutcome.describe(action).
+     *
+     * @param action the action to be done on the map
+     * @param map    the map to perform the action on
+     * @return the outcome of the action
+     * @require action != null
+     * @require map != null
      */
-    private static void handleDig(WorldMap map)
-            throws TooLowException, InvalidBlockException {
-        map.getBuilder().digOnCurrentTile();
+    public static ActionOutcome applyAction(Action action, WorldMap map) {
+        Builder builder = map.getBuilder();
+        switch (action.getPrimaryAction()) {
+            case Action.DIG:
+                return builder.tryDigOnCurrentTile();
+            case Action.DROP:
+                int secondaryAction;
+                try {
+                    secondaryAction =
+                            Integer.parseInt(action.getSecondaryAction());
+                } catch (NumberFormatException numberFormat) {
+                    return ActionOutcome.INVALID_ACTION;
+                }
+                return builder.tryDropFromInventory(secondaryAction);
+            case Action.MOVE_BLOCK:
+                if (!isValidDirection(action.getSecondaryAction())) {
+                    return ActionOutcome.INVALID_ACTION;
+                }
+                return builder.getCurrentTile()
+                        .tryMoveBlock(action.getSecondaryAction());
+            case Action.MOVE_BUILDER:
+                if (!isValidDirection(action.getSecondaryAction())) {
+                    return ActionOutcome.INVALID_ACTION;
+                }
+                return builder.tryMoveTo(builder.getCurrentTile()
+                        .getExit(action.getSecondaryAction()));
+            default:
+                return ActionOutcome.INVALID_ACTION;
+        }
     }
 
     /**
@@ -0,0 +1,631 @@
+package csse2002.block.world;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32;
+
+/**
+ * An append-only journal of the actions applied to a world map, so that
+ * progress can be saved a few bytes at a time instead of saving the whole
+ * map. <br>
+ * A journal is a directory holding:
+ * <ul>
+ *     <li> checkpoints, named "checkpoint-{@literal<seq>}.bin": the map
+ *          (saved with WorldMap.saveBinaryMap()) after the first seq
+ *          actions were applied. Only the latest is kept, except that a
+ *          checkpoint large enough to have been memory mapped when it was
+ *          recovered is kept until a later journal session (it may not be
+ *          deletable while it is mapped). </li>
+ *     <li> "journal.log": a header, followed by a record for each action
+ *          applied since the latest checkpoint. </li>
+ * </ul>
+ * Each record holds (little-endian) the length of its body (int32), the
+ * body, and a CRC32 of the body (int32). The body is the action's sequence
+ * number (int64, starting at 1), primary action (int32), outcome
+ * (int8, the ActionOutcome ordinal) and secondary action (int32 length,
+ * or -1 for null, then UTF-8 bytes). <br>
+ * Records are buffered, and written and forced to disk once every
+ * commitInterval actions (group commit), or when commit() is called.
+ * A checkpoint is written every checkpointInterval actions, or when
+ * checkpoint() is called, after which the log is emptied. <br>
+ * {@link #recover(String) recover()} loads the latest checkpoint and
+ * replays the records after it. Actions that were applied but not yet
+ * committed when a program stopped may be lost. <br>
+ * An ActionJournal is not thread safe.
+ * @serial exclude
+ */
+public class ActionJournal implements Closeable {
+
+    /**
+     * The default number of actions written to disk together.
+     */
+    public static final int DEFAULT_COMMIT_INTERVAL = 64;
+
+    /**
+     * The default number of actions between checkpoints.
+     */
+    public static final int DEFAULT_CHECKPOINT_INTERVAL = 100000;
+
+    // the file name of the log, and the prefix and suffix of checkpoints
+    private static final String LOG_NAME = "journal.log";
+    private static final String CHECKPOINT_PREFIX = "checkpoint-";
+    private static final String CHECKPOINT_SUFFIX = ".bin";
+    private static final String TEMPORARY_SUFFIX = ".tmp";
+
+    // the header of the log: magic bytes and a version
+    private static final byte[] MAGIC = {(byte) 0x89, 'B', 'W', 'J'};
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = MAGIC.length + 4;
+
+    // the size of a record body without the secondary action bytes, and
+    // the size of a record's length and crc
+    private static final int BODY_SIZE = 8 + 4 + 1 + 4;
+    private static final int RECORD_OVERHEAD = 4 + 4;
+
+    // the size of the buffer records are collected in
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    // the journal directory
+    private final Path directory;
+
+    // the map actions are applied to
+    private final WorldMap map;
+
+    // the number of actions written to disk together
+    private final int commitInterval;
+
+    // the number of actions between checkpoints, or 0 for no automatic
+    // checkpoints
+    private final int checkpointInterval;
+
+    // the log, positioned at its end
+    private final FileChannel log;
+
+    // records that have not been written to the log yet
+    private final ByteBuffer buffer;
+
+    // the crc of record bodies
+    private final CRC32 crc;
+
+    // the sequence number of the last applied action
+    private long sequence;
+
+    // the sequence number of the latest checkpoint
+    private long checkpointSequence;
+
+    // the sequence number of the checkpoint recovered from if it was memory
+    // mapped (see MappedMapReader), so must not be deleted, otherwise -1
+    private final long mappedCheckpoint;
+
+    // the number of actions applied since the last commit
+    private int uncommitted;
+
+    /**
+     * Create a journal for a map, positioned after the given action.
+     * @param directory the journal directory
+     * @param map the map
+     * @param log the log, positioned where the next record is written
+     * @param sequence the sequence number of the last applied action
+     * @param checkpointSequence the sequence number of the latest
+     *         checkpoint
+     * @param mappedCheckpoint the sequence number of the checkpoint the map
+     *         was loaded from if it was memory mapped, otherwise -1
+     * @param commitInterval the number of actions written to disk together
+     * @param checkpointInterval the number of actions between checkpoints
+     */
+    private ActionJournal(Path directory, WorldMap map, FileChannel log,
+                          long sequence, long checkpointSequence,
+                          long mappedCheckpoint, int commitInterval,
+                          int checkpointInterval) {
+        this.directory = directory;
+        this.map = map;
+        this.log = log;
+        this.sequence = sequence;
+        this.checkpointSequence = checkpointSequence;
+        this.mappedCheckpoint = mappedCheckpoint;
+        this.commitInterval = commitInterval;
+        this.checkpointInterval = checkpointInterval;
+        buffer = ByteBuffer.allocate(BUFFER_SIZE)
+                .order(ByteOrder.LITTLE_ENDIAN);
+        crc = new CRC32();
+        uncommitted = 0;
+    }
+
+    /**
+     * Start a new journal for a map, with the default commit and checkpoint
+     * intervals. Any journal already in the directory is replaced.
+     * @param directory the journal directory, which is created if needed
+     * @param map the map to apply actions to
+     * @return the journal
+     * @throws IOException if the journal cannot be written
+     * @require directory != null &amp;&amp; map != null
+     */
+    public static ActionJournal create(String directory, WorldMap map)
+            throws IOException {
+        return create(directory, map, DEFAULT_COMMIT_INTERVAL,
+                DEFAULT_CHECKPOINT_INTERVAL);
+    }
+
+    /**
+     * Start a new journal for a map. Any journal already in the directory is
+     * replaced. The map is saved as the first checkpoint.
+     * @param directory the journal directory, which is created if needed
+     * @param map the map to apply actions to
+     * @param commitInterval the number of actions written to disk together
+     * @param checkpointInterval the number of actions between checkpoints,
+     *         or 0 to only write checkpoints when checkpoint() is called
+     * @return the journal
+     * @throws IOException if the journal cannot be written
+     * @require directory != null &amp;&amp; map != null
+     * @require commitInterval &gt; 0 &amp;&amp; checkpointInterval &gt;= 0
+     */
+    public static ActionJournal create(String directory, WorldMap map,
+                                       int commitInterval,
+                                       int checkpointInterval)
+            throws IOException {
+        Path path = Paths.get(directory);
+        Files.createDirectories(path);
+
+        ActionJournal journal = new ActionJournal(path, map,
+                openLog(path, true), 0, -1, -1, commitInterval,
+                checkpointInterval);
+        try {
+            // checkpoints of a replaced journal would be newer than this one
+            journal.deleteCheckpointsBefore(Long.MAX_VALUE);
+            journal.checkpoint();
+        } catch (IOException e) {
+            journal.log.close();
+            throw e;
+        }
+        return journal;
+    }
+
+    /**
+     * Recover a journal with the default commit and checkpoint intervals.
+     * @param directory the journal directory
+     * @return the journal, with getMap() in the state after the last
+     *         committed action
+     * @throws IOException if the journal cannot be read or written, or does
+     *         not match its checkpoint
+     * @throws WorldMapFormatException if the checkpoint is invalid
+     * @throws WorldMapInconsistentException if the checkpoint is
+     *         inconsistent
+     * @require directory != null
+     */
+    public static ActionJournal recover(String directory)
+            throws IOException, WorldMapFormatException,
+            WorldMapInconsistentException {
+        return recover(directory, DEFAULT_COMMIT_INTERVAL,
+                DEFAULT_CHECKPOINT_INTERVAL);
+    }
+
+    /**
+     * Recover a journal by loading its latest checkpoint and applying the
+     * actions recorded after it. <br>
+     * The log ends at the first incomplete or corrupt record (e.g. a record
+     * that was being written when a program stopped). It is truncated there,
+     * and new actions are recorded after it.
+     * @param directory the journal directory
+     * @param commitInterval the number of actions written to disk together
+     * @param checkpointInterval the number of actions between checkpoints,
+     *         or 0 to only write checkpoints when checkpoint() is called
+     * @return the journal, with getMap() in the state after the last
+     *         committed action
+     * @throws IOException if the journal cannot be read or written, or does
+     *         not match its checkpoint
+     * @throws WorldMapFormatException if the checkpoint is invalid
+     * @throws WorldMapInconsistentException if the checkpoint is
+     *         inconsistent
+     * @require directory != null
+     * @require commitInterval &gt; 0 &amp;&amp; checkpointInterval &gt;= 0
+     */
+    public static ActionJournal recover(String directory, int commitInterval,
+                                        int checkpointInterval)
+            throws IOException, WorldMapFormatException,
+            WorldMapInconsistentException {
+        Path path = Paths.get(directory);
+
+        long checkpointSequence = latestCheckpoint(path);
+        if (checkpointSequence < 0) {
+            throw new IOException("No checkpoint in " + directory);
+        }
+        Path checkpoint = checkpointPath(path, checkpointSequence);
+        WorldMap map = new WorldMap(checkpoint.toString());
+        long mappedCheckpoint =
+                Files.size(checkpoint) > MappedMapReader.MAP_THRESHOLD
+                        ? checkpointSequence : -1;
+
+        FileChannel log = openLog(path, false);
+        long sequence;
+        try {
+            sequence = replay(log, map, checkpointSequence);
+        } catch (IOException e) {
+            log.close();
+            throw e;
+        }
+
+        return new ActionJournal(path, map, log, sequence,
+                checkpointSequence, mappedCheckpoint, commitInterval,
+                checkpointInterval);
+    }
+
+    /**
+     * Get the map actions are applied to.
+     * @return the map
+     */
+    public WorldMap getMap() {
+        return map;
+    }
+
+    /**
+     * Get the number of actions applied since the journal was created.
+     * @return the sequence number of the last applied action
+     */
+    public long getSequence() {
+        return sequence;
+    }
+
+    /**
+     * Apply an action to the map (see
+     * {@link Action#applyAction(Action, WorldMap)}) and record it. <br>
+     * The record is written to disk with the next commit.
+     * @param action the action to apply
+     * @return the outcome of the action
+     * @throws IOException if writing to the journal fails
+     * @require action != null
+     */
+    public ActionOutcome apply(Action action) throws IOException {
+        ActionOutcome outcome = Action.applyAction(action, map);
+        sequence++;
+        append(action, outcome);
+
+        if (++uncommitted >= commitInterval) {
+            commit();
+        }
+        if (checkpointInterval > 0
+                && sequence - checkpointSequence >= checkpointInterval) {
+            checkpoint();
+        }
+        return outcome;
+    }
+
+    /**
+     * Write all recorded actions to disk.
+     * @throws IOException if writing to the journal fails
+     */
+    public void commit() throws IOException {
+        flush();
+        log.force(false);
+        uncommitted = 0;
+    }
+
+    /**
+     * Save the map as a checkpoint and empty the log. <br>
+     * The checkpoint is written to a temporary file and renamed, so a
+     * complete checkpoint always exists.
+     * @throws IOException if writing the checkpoint or journal fails
+     */
+    public void checkpoint() throws IOException {
+        commit();
+        if (sequence == mappedCheckpoint) {
+            // the map has not changed since the checkpoint it was recovered
+            // from, which may not be replaceable while it is mapped
+            return;
+        }
+
+        Path temporary = directory.resolve(CHECKPOINT_PREFIX + sequence
+                + TEMPORARY_SUFFIX);
+        map.saveBinaryMap(temporary.toString());
+        try (FileChannel channel = FileChannel.open(temporary,
+                StandardOpenOption.WRITE)) {
+            channel.force(true);
+        }
+        Files.move(temporary, checkpointPath(directory, sequence),
+                StandardCopyOption.ATOMIC_MOVE);
+        forceDirectory(directory);
+
+        // the records are now in the checkpoint. If the program stops before
+        // the log is emptied, recover() skips them.
+        log.truncate(HEADER_SIZE);
+        log.position(HEADER_SIZE);
+        log.force(false);
+
+        checkpointSequence = sequence;
+        deleteCheckpointsBefore(checkpointSequence);
+    }
+
+    /**
+     * Commit all recorded actions and close the log.
+     * @throws IOException if writing to the journal fails
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            commit();
+        } finally {
+            log.close();
+        }
+    }
+
+    /**
+     * Add a record for an action to the buffer, writing the buffer to the
+     * log first if it is full.
+     * @param action the action
+     * @param outcome the outcome of the action
+     * @throws IOException if writing to the log fails
+     */
+    private void append(Action action, ActionOutcome outcome)
+            throws IOException {
+        String secondaryAction = action.getSecondaryAction();
+        byte[] secondary = secondaryAction == null ? new byte[0]
+                : secondaryAction.getBytes(StandardCharsets.UTF_8);
+        int bodySize = BODY_SIZE + secondary.length;
+
+        if (RECORD_OVERHEAD + bodySize > buffer.remaining()) {
+            flush();
+        }
+        ByteBuffer target = buffer;
+        if (RECORD_OVERHEAD + bodySize > buffer.capacity()) {
+            target = ByteBuffer.allocate(RECORD_OVERHEAD + bodySize)
+                    .order(ByteOrder.LITTLE_ENDIAN);
+        }
+
+        target.putInt(bodySize);
+        int bodyStart = target.position();
+        target.putLong(sequence).putInt(action.getPrimaryAction())
+                .put((byte) outcome.ordinal())
+                .putInt(secondaryAction == null ? -1 : secondary.length)
+                .put(secondary);
+
+        ByteBuffer body = target.duplicate();
+        body.limit(body.position()).position(bodyStart);
+        crc.reset();
+        crc.update(body);
+        target.putInt((int) crc.getValue());
+
+        if (target != buffer) {
+            target.flip();
+            writeFully(log, target);
+        }
+    }
+
+    /**
+     * Write the buffered records to the log.
+     * @throws IOException if writing fails
+     */
+    private void flush() throws IOException {
+        buffer.flip();
+        writeFully(log, buffer);
+        buffer.clear();
+    }
+
+    /**
+     * Delete the checkpoints older than a sequence number, except the
+     * checkpoint recovered from if it was memory mapped.
+     * @param newest the sequence number of the checkpoint to keep
+     * @throws IOException if the directory cannot be read
+     */
+    private void deleteCheckpointsBefore(long newest) throws IOException {
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory,
+                CHECKPOINT_PREFIX + "*" + CHECKPOINT_SUFFIX)) {
+            for (Path file : files) {
+                long fileSequence = checkpointSequence(file);
+                if (fileSequence >= 0 && fileSequence < newest
+                        && fileSequence != mappedCheckpoint) {
+                    Files.deleteIfExists(file);
+                }
+            }
+        }
+    }
+
+    /**
+     * Apply the actions recorded in a log after a checkpoint, and position
+     * the log after the last valid record.
+     * @param log the log
+     * @param map the map loaded from the checkpoint
+     * @param checkpointSequence the sequence number of the checkpoint
+     * @return the sequence number of the last applied action
+     * @throws IOException if the log cannot be read or does not match the
+     *         checkpoint
+     */
+    private static long replay(FileChannel log, WorldMap map,
+                               long checkpointSequence) throws IOException {
+        ByteBuffer contents = ByteBuffer.allocate((int) Math.min(log.size(),
+                Integer.MAX_VALUE)).order(ByteOrder.LITTLE_ENDIAN);
+        log.position(0);
+        while (contents.hasRemaining() && log.read(contents) >= 0) {
+            // keep reading
+        }
+        contents.flip();
+
+        if (contents.remaining() < HEADER_SIZE) {
+            // the journal was created but its header was never written
+            writeHeader(log);
+            return checkpointSequence;
+        }
+        for (byte magicByte : MAGIC) {
+            if (contents.get() != magicByte) {
+                throw new IOException("Not an action journal");
+            }
+        }
+        if (contents.getInt() != VERSION) {
+            throw new IOException("Unsupported action journal version");
+        }
+
+        long sequence = checkpointSequence;
+        CRC32 crc = new CRC32();
+        int end = contents.position();
+        while (contents.remaining() >= RECORD_OVERHEAD + BODY_SIZE) {
+            int bodySize = contents.getInt();
+            if (bodySize < BODY_SIZE
+                    || bodySize + 4 > contents.remaining()) {
+                break;
+            }
+
+            ByteBuffer body = contents.slice().order(ByteOrder.LITTLE_ENDIAN);
+            body.limit(bodySize);
+            contents.position(contents.position() + bodySize);
+            crc.reset();
+            crc.update(body.duplicate());
+            if ((int) crc.getValue() != contents.getInt()) {
+                break;
+            }
+
+            long recordSequence = body.getLong();
+            int primary = body.getInt();
+            int outcome = body.get();
+            int secondaryLength = body.getInt();
+            if (Math.max(secondaryLength, 0) != body.remaining()
+                    || outcome < 0
+                    || outcome >= ActionOutcome.values().length) {
+                break;
+            }
+            byte[] secondary = new byte[body.remaining()];
+            body.get(secondary);
+            end = contents.position();
+
+            if (recordSequence <= sequence) {
+                // already in the checkpoint
+                continue;
+            } else if (recordSequence != sequence + 1) {
+                throw new IOException("Action journal is missing action "
+                        + (sequence + 1));
+            }
+
+            Action action = new Action(primary, secondaryLength < 0 ? null
+                    : new String(secondary, StandardCharsets.UTF_8));
+            if (Action.applyAction(action, map)
+                    != ActionOutcome.values()[outcome]) {
+                throw new IOException("Action journal does not match its "
+                        + "checkpoint at action " + recordSequence);
+            }
+            sequence = recordSequence;
+        }
+
+        // drop any partly written record
+        log.truncate(end);
+        log.position(end);
+        return sequence;
+    }
+
+    /**
+     * Open the log of a journal.
+     * @param directory the journal directory
+     * @param empty whether to replace the log with an empty one
+     * @return the log, positioned after the header if empty
+     * @throws IOException if the log cannot be opened
+     */
+    private static FileChannel openLog(Path directory, boolean empty)
+            throws IOException {
+        FileChannel log = FileChannel.open(directory.resolve(LOG_NAME),
+                StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        if (empty) {
+            try {
+                log.truncate(0);
+                writeHeader(log);
+            } catch (IOException e) {
+                log.close();
+                throw e;
+            }
+        }
+        return log;
+    }
+
+    /**
+     * Write the log header at the start of an empty log.
+     * @param log the log
+     * @throws IOException if writing fails
+     */
+    private static void writeHeader(FileChannel log) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE)
+                .order(ByteOrder.LITTLE_ENDIAN);
+        header.put(MAGIC).putInt(VERSION).flip();
+        log.truncate(0);
+        log.position(0);
+        writeFully(log, header);
+        log.force(false);
+    }
+
+    /**
+     * Find the latest checkpoint in a journal directory.
+     * @param directory the journal directory
+     * @return the sequence number of the latest checkpoint, or -1 if there
+     *         are none
+     * @throws IOException if the directory cannot be read
+     */
+    private static long latestCheckpoint(Path directory) throws IOException {
+        long latest = -1;
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory,
+                CHECKPOINT_PREFIX + "*" + CHECKPOINT_SUFFIX)) {
+            for (Path file : files) {
+                latest = Math.max(latest, checkpointSequence(file));
+            }
+        }
+        return latest;
+    }
+
+    /**
+     * Get the sequence number of a checkpoint from its file name.
+     * @param file the checkpoint file
+     * @return the sequence number, or -1 if the name is not a checkpoint
+     *         name
+     */
+    private static long checkpointSequence(Path file) {
+        String name = file.getFileName().toString();
+        try {
+            return Long.parseLong(name.substring(CHECKPOINT_PREFIX.length(),
+                    name.length() - CHECKPOINT_SUFFIX.length()));
+        } catch (NumberFormatException | IndexOutOfBoundsException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * Get the path of a checkpoint.
+     * @param directory the journal directory
+     * @param sequence the sequence number of the checkpoint
+     * @return the path
+     */
+    private static Path checkpointPath(Path directory, long sequence) {
+        return directory.resolve(CHECKPOINT_PREFIX + sequence
+                + CHECKPOINT_SUFFIX);
+    }
+
+    /**
+     * Force a directory entry change (e.g. a rename) to disk, where the
+     * platform supports it.
+     * @param directory the directory
+     */
+    private static void forceDirectory(Path directory) {
+        try (FileChannel channel = FileChannel.open(directory,
+                StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (IOException e) {
+            // not supported on this platform, the rename is still atomic
+        }
+    }
+
+    /**
+     * Write all of a buffer.
+     * @param channel the channel to write to
+     * @param buffer the buffer, positioned at the start of its contents
+     * @throws IOException if writing fails
+     */
+    private static void writeFully(FileChannel channel, ByteBuffer buffer)
+            throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+}
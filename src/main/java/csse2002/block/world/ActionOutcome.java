@@ -0,0 +1,73 @@
+package csse2002.block.world;
+
+/**
+ * The result of performing an {@link Action Action} on a world map (see
+ * {@link Action#processAction(Action, WorldMap)}).
+ * @serial exclude
+ */
+public enum ActionOutcome {
+
+    /**
+     * The action was performed.
+     */
+    SUCCESS,
+
+    /**
+     * The action is not a valid action (e.g. an unknown primary action, or
+     * an invalid direction or drop index), so nothing was done.
+     */
+    INVALID_ACTION,
+
+    /**
+     * A NoExitException was thrown.
+     */
+    NO_EXIT,
+
+    /**
+     * A TooHighException was thrown.
+     */
+    TOO_HIGH,
+
+    /**
+     * A TooLowException was thrown.
+     */
+    TOO_LOW,
+
+    /**
+     * An InvalidBlockException was thrown.
+     */
+    INVALID_BLOCK;
+
+    /**
+     * Get the message printed by Action.processAction() when the given
+     * action has this outcome.
+     * @param action the action that was performed
+     * @return the message, without a trailing newline
+     * @require action != null
+     */
+    public String describe(Action action) {
+        switch (this) {
+            case SUCCESS:
+                switch (action.getPrimaryAction()) {
+                    case Action.DIG:
+                        return "Top block on current tile removed";
+                    case Action.DROP:
+                        return "Dropped a block from inventory";
+                    case Action.MOVE_BLOCK:
+                        return "Moved block " + action.getSecondaryAction();
+                    default:
+                        return "Moved builder " + action.getSecondaryAction();
+                }
+            case NO_EXIT:
+                return "No exit this way";
+            case TOO_HIGH:
+                return "Too high";
+            case TOO_LOW:
+                return "Too low";
+            case INVALID_BLOCK:
+                return "Cannot use that block";
+            default:
+                return "Error: Invalid action";
+        }
+    }
+}
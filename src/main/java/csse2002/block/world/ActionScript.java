@@ -0,0 +1,366 @@
+package csse2002.block.world;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.Arrays;
+
+/**
+ * An actions file (see {@link Action#processActions(java.io.BufferedReader,
+ * WorldMap)}) compiled once so that it can be performed on many maps without
+ * being parsed again. <br>
+ * Each distinct line of the file becomes one entry of a pool, holding the
+ * Action, an opcode and an operand (the exit index of a direction, or the
+ * parsed DROP index). The script itself is an int[] of pool entries, one
+ * per line. <br>
+ * If the file has an invalid line, the script holds the lines before it, and
+ * run() throws the ActionFormatException that processActions() would throw
+ * after performing them.
+ * @serial exclude
+ */
+public class ActionScript {
+
+    // opcodes
+    private static final byte MOVE_BUILDER = 0;
+    private static final byte MOVE_BLOCK = 1;
+    private static final byte DIG = 2;
+    private static final byte DROP = 3;
+    // an action processAction() reports as "Error: Invalid action"
+    private static final byte INVALID = 4;
+
+    // the pool entry of each line
+    private final int[] code;
+
+    // the pool: the action, opcode and operand of each distinct line
+    private final Action[] actions;
+    private final byte[] opcodes;
+    private final int[] operands;
+
+    // the message of the ActionFormatException thrown after the script, or
+    // null if the whole file was valid
+    private final String errorMessage;
+
+    /**
+     * Create a compiled script.
+     * @param compiler the compiler that read the file
+     */
+    private ActionScript(Compiler compiler) {
+        code = Arrays.copyOf(compiler.code, compiler.codeLength);
+        actions = Arrays.copyOf(compiler.actions, compiler.poolSize);
+        opcodes = Arrays.copyOf(compiler.opcodes, compiler.poolSize);
+        operands = Arrays.copyOf(compiler.operands, compiler.poolSize);
+        errorMessage = compiler.errorMessage;
+    }
+
+    /**
+     * Compile an actions file. <br>
+     * Reads until the end of the file, or the first line Action.loadAction()
+     * would throw an ActionFormatException for (including if reading throws
+     * an IOException). Such a line is reported by run(), not by this
+     * method. <br>
+     * Lines end with "\n", "\r" or "\r\n", as for BufferedReader.readLine().
+     * @param reader the reader to read actions from
+     * @return the compiled script
+     * @require reader != null
+     */
+    public static ActionScript compile(Reader reader) {
+        Compiler compiler = new Compiler();
+        compiler.compile(reader);
+        return new ActionScript(compiler);
+    }
+
+    /**
+     * Get the number of actions in the script.
+     * @return the number of valid lines before the end of the file or the
+     *         first invalid line
+     */
+    public int size() {
+        return code.length;
+    }
+
+    /**
+     * Get an action in the script. <br>
+     * Repeated lines share the same Action.
+     * @param index the index of the action, from 0 to size() - 1
+     * @return the action
+     */
+    public Action getAction(int index) {
+        return actions[code[index]];
+    }
+
+    /**
+     * Check whether the file had an invalid line, so that run() throws an
+     * ActionFormatException.
+     * @return true if the file had an invalid line
+     */
+    public boolean hasError() {
+        return errorMessage != null;
+    }
+
+    /**
+     * Perform the script on a map, with the same results as
+     * Action.processActions() on the file. <br>
+     * The outcome of each action is sent to the sink, which is flushed
+     * before returning or throwing.
+     * @param map the map to perform the actions on
+     * @param sink the sink to send outcomes to
+     * @return the number of actions performed
+     * @throws ActionFormatException after performing the actions, if the
+     *         file had an invalid line
+     * @throws IOException if the sink throws an IOException
+     * @require map != null &amp;&amp; sink != null
+     */
+    public long run(WorldMap map, ActionSink sink)
+            throws ActionFormatException, IOException {
+        Builder builder = map.getBuilder();
+        try {
+            for (int entry : code) {
+                sink.accept(actions[entry],
+                        execute(opcodes[entry], operands[entry], builder));
+            }
+        } finally {
+            sink.flush();
+        }
+
+        if (errorMessage != null) {
+            throw new ActionFormatException(errorMessage);
+        }
+        return code.length;
+    }
+
+    /**
+     * Perform an instruction, as Action.applyAction() performs the action
+     * it was compiled from.
+     * @param opcode the opcode
+     * @param operand the operand
+     * @param builder the builder of the map
+     * @return the outcome
+     */
+    private static ActionOutcome execute(byte opcode, int operand,
+                                         Builder builder) {
+        switch (opcode) {
+            case MOVE_BUILDER:
+                return builder.tryMoveTo(
+                        builder.getCurrentTile().getExit(operand));
+            case MOVE_BLOCK:
+                return builder.getCurrentTile().tryMoveBlock(operand);
+            case DIG:
+                return builder.tryDigOnCurrentTile();
+            case DROP:
+                return builder.tryDropFromInventory(operand);
+            default:
+                return ActionOutcome.INVALID_ACTION;
+        }
+    }
+
+    /**
+     * Reads an actions file into a growing script and pool. <br>
+     * Lines are read into a reused char buffer, and only lines not already
+     * in the pool are turned into Strings and parsed.
+     */
+    private static class Compiler {
+
+        // the size of the buffer chars are read into
+        private static final int READ_SIZE = 1 << 13;
+
+        // the script so far
+        private int[] code = new int[64];
+        private int codeLength = 0;
+
+        // the pool so far, and the line of each entry
+        private Action[] actions = new Action[16];
+        private byte[] opcodes = new byte[16];
+        private int[] operands = new int[16];
+        private String[] lines = new String[16];
+        private int poolSize = 0;
+
+        // open addressing hash table of pool entry + 1 (0 for empty), by
+        // line
+        private int[] table = new int[32];
+
+        // the current line
+        private char[] line = new char[64];
+        private int lineLength = 0;
+
+        // see ActionScript.errorMessage
+        private String errorMessage = null;
+
+        /**
+         * Read a whole file, stopping at an invalid line.
+         * @param reader the reader to read actions from
+         */
+        void compile(Reader reader) {
+            char[] chars = new char[READ_SIZE];
+            // whether a line has started since the last line terminator
+            boolean inLine = false;
+            // whether the last char was '\r', so a '\n' is not a new line
+            boolean skipLineFeed = false;
+
+            try {
+                int count;
+                while ((count = reader.read(chars)) >= 0) {
+                    for (int i = 0; i < count; i++) {
+                        char c = chars[i];
+                        if (skipLineFeed) {
+                            skipLineFeed = false;
+                            if (c == '\n') {
+                                continue;
+                            }
+                        }
+                        if (c == '\n' || c == '\r') {
+                            if (!endLine()) {
+                                return;
+                            }
+                            inLine = false;
+                            skipLineFeed = c == '\r';
+                        } else {
+                            append(c);
+                            inLine = true;
+                        }
+                    }
+                }
+            } catch (IOException e) {
+                errorMessage = e.toString();
+                return;
+            }
+
+            if (inLine) {
+                endLine();
+            }
+        }
+
+        /**
+         * Add a char to the current line.
+         * @param c the char
+         */
+        private void append(char c) {
+            if (lineLength == line.length) {
+                line = Arrays.copyOf(line, line.length * 2);
+            }
+            line[lineLength++] = c;
+        }
+
+        /**
+         * Add the current line to the script, and start a new line.
+         * @return false if the line is invalid, so compiling stops
+         */
+        private boolean endLine() {
+            int hash = 0;
+            for (int i = 0; i < lineLength; i++) {
+                hash = 31 * hash + line[i];
+            }
+            hash ^= hash >>> 16;
+
+            int mask = table.length - 1;
+            int slot = hash & mask;
+            while (table[slot] != 0 && !lineEquals(lines[table[slot] - 1])) {
+                slot = (slot + 1) & mask;
+            }
+
+            int entry;
+            if (table[slot] != 0) {
+                entry = table[slot] - 1;
+            } else {
+                String text = new String(line, 0, lineLength);
+                Action action;
+                try {
+                    action = Action.parseAction(text);
+                } catch (ActionFormatException e) {
+                    errorMessage = e.getMessage();
+                    return false;
+                }
+                entry = addEntry(text, action);
+                table[slot] = entry + 1;
+                if (poolSize * 2 > table.length) {
+                    rehash();
+                }
+            }
+
+            if (codeLength == code.length) {
+                code = Arrays.copyOf(code, code.length * 2);
+            }
+            code[codeLength++] = entry;
+            lineLength = 0;
+            return true;
+        }
+
+        /**
+         * Check whether the current line equals a pooled line.
+         * @param text the pooled line
+         * @return true if the lines are equal
+         */
+        private boolean lineEquals(String text) {
+            if (text.length() != lineLength) {
+                return false;
+            }
+            for (int i = 0; i < lineLength; i++) {
+                if (text.charAt(i) != line[i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        /**
+         * Add an action to the pool, choosing its opcode and operand.
+         * @param text the line the action was parsed from
+         * @param action the action
+         * @return the pool entry
+         */
+        private int addEntry(String text, Action action) {
+            if (poolSize == actions.length) {
+                int capacity = poolSize * 2;
+                actions = Arrays.copyOf(actions, capacity);
+                opcodes = Arrays.copyOf(opcodes, capacity);
+                operands = Arrays.copyOf(operands, capacity);
+                lines = Arrays.copyOf(lines, capacity);
+            }
+
+            byte opcode = INVALID;
+            int operand = 0;
+            String secondary = action.getSecondaryAction();
+            switch (action.getPrimaryAction()) {
+                case Action.MOVE_BUILDER:
+                case Action.MOVE_BLOCK:
+                    operand = Tile.exitIndex(secondary);
+                    if (operand >= 0) {
+                        opcode = action.getPrimaryAction() == Action.MOVE_BLOCK
+                                ? MOVE_BLOCK : MOVE_BUILDER;
+                    }
+                    break;
+                case Action.DIG:
+                    opcode = DIG;
+                    break;
+                default:
+                    try {
+                        operand = Integer.parseInt(secondary);
+                        opcode = DROP;
+                    } catch (NumberFormatException numberFormat) {
+                        opcode = INVALID;
+                    }
+            }
+
+            actions[poolSize] = action;
+            opcodes[poolSize] = opcode;
+            operands[poolSize] = operand;
+            lines[poolSize] = text;
+            return poolSize++;
+        }
+
+        /**
+         * Double the size of the hash table.
+         */
+        private void rehash() {
+            table = new int[table.length * 2];
+            int mask = table.length - 1;
+            for (int entry = 0; entry < poolSize; entry++) {
+                int hash = lines[entry].hashCode();
+                hash ^= hash >>> 16;
+                int slot = hash & mask;
+                while (table[slot] != 0) {
+                    slot = (slot + 1) & mask;
+                }
+                table[slot] = entry + 1;
+            }
+        }
+    }
+}
@@ -0,0 +1,34 @@
+package csse2002.block.world;
+
+import java.io.IOException;
+
+/**
+ * Receives the outcome of each action performed by a
+ * {@link BatchActionProcessor}.
+ * @serial exclude
+ */
+public interface ActionSink {
+
+    /**
+     * A sink that ignores all outcomes.
+     */
+    ActionSink NONE = (action, outcome) -> { };
+
+    /**
+     * Receive the outcome of an action. <br>
+     * Called once for each action, in the order the actions were performed.
+     * @param action the action that was performed
+     * @param outcome the outcome of the action
+     * @throws IOException if the outcome cannot be written
+     */
+    void accept(Action action, ActionOutcome outcome) throws IOException;
+
+    /**
+     * Write any buffered outcomes. <br>
+     * Called whenever the processor waits for more actions, and when it
+     * stops.
+     * @throws IOException if the outcomes cannot be written
+     */
+    default void flush() throws IOException {
+    }
+}
@@ -0,0 +1,114 @@
+package csse2002.block.world;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+
+/**
+ * Performs the actions in an actions file on a world map, sending each
+ * outcome to an {@link ActionSink} instead of printing it. <br>
+ * Actions are read in blocks of up to BLOCK_SIZE lines, which are then
+ * performed together. A block ends early when the reader has no more input
+ * ready, so interactive input (e.g. System.in) is still answered one line at
+ * a time.
+ * @serial exclude
+ */
+public class BatchActionProcessor {
+
+    /**
+     * The largest number of actions read before they are performed.
+     */
+    public static final int BLOCK_SIZE = 1024;
+
+    /**
+     * BatchActionProcessor only has static members.
+     */
+    private BatchActionProcessor() {
+    }
+
+    /**
+     * Read all the actions from the given reader and perform them on the
+     * given map, in the same order and with the same results as
+     * Action.processActions(). <br>
+     * The outcome of each action is sent to the sink, which is flushed
+     * whenever the reader has no input ready, and before returning or
+     * throwing. <br>
+     * If a line is not a valid action, the actions before it are performed
+     * and then the ActionFormatException is thrown.
+     * @param reader the reader to read actions from
+     * @param map the map to perform the actions on
+     * @param sink the sink to send outcomes to
+     * @return the number of actions performed
+     * @throws ActionFormatException if Action.loadAction() would throw an
+     *         ActionFormatException
+     * @throws IOException if the sink throws an IOException
+     * @require reader != null &amp;&amp; map != null &amp;&amp; sink != null
+     */
+    public static long processActions(BufferedReader reader, WorldMap map,
+                                      ActionSink sink)
+            throws ActionFormatException, IOException {
+        Action[] block = new Action[BLOCK_SIZE];
+        long performed = 0;
+
+        try {
+            while (true) {
+                int count = 0;
+                ActionFormatException invalidLine = null;
+                boolean endOfFile = false;
+
+                // read a block of actions, stopping at the end of the input
+                // currently available
+                do {
+                    String line;
+                    try {
+                        line = reader.readLine();
+                    } catch (IOException e) {
+                        invalidLine = new ActionFormatException(e.toString());
+                        break;
+                    }
+                    if (line == null) {
+                        endOfFile = true;
+                        break;
+                    }
+                    try {
+                        block[count++] = Action.parseAction(line);
+                    } catch (ActionFormatException e) {
+                        count--;
+                        invalidLine = e;
+                        break;
+                    }
+                } while (count < BLOCK_SIZE && ready(reader));
+
+                for (int i = 0; i < count; i++) {
+                    Action action = block[i];
+                    sink.accept(action, Action.applyAction(action, map));
+                    block[i] = null;
+                }
+                performed += count;
+
+                if (invalidLine != null) {
+                    throw invalidLine;
+                } else if (endOfFile) {
+                    return performed;
+                } else if (!ready(reader)) {
+                    sink.flush();
+                }
+            }
+        } finally {
+            sink.flush();
+        }
+    }
+
+    /**
+     * Check whether a reader has input ready.
+     * @param reader the reader
+     * @return reader.ready(), or false if it throws an IOException (which
+     *         the next read reports)
+     */
+    private static boolean ready(BufferedReader reader) {
+        try {
+            return reader.ready();
+        } catch (IOException e) {
+            return false;
+        }
+    }
+}
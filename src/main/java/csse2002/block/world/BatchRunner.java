@@ -0,0 +1,448 @@
+package csse2002.block.world;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+/**
+ * Runs many (input map, actions, output map) jobs in parallel, each with the
+ * same results as running Main with those three parameters. <br>
+ * Jobs are listed in a manifest file, one job per line:
+ * <pre>{@literal
+ * inputMap actions outputMap [outputLog]
+ * }</pre>
+ * separated by whitespace. Blank lines and lines starting with "#" are
+ * ignored, and relative paths are relative to the manifest's directory.
+ * <br>
+ * Alternatively, jobs are read from a directory: each file "name.actions"
+ * in it is a job on the map "name.map" (or "default.map" if there is no
+ * "name.map"), with the output map "name.out.map" and output log
+ * "name.log". <br>
+ * The output log of a job holds what Main would print to System.out, and
+ * defaults to the output map followed by ".log". The output map is only
+ * written if all the actions are valid, as for Main. <br>
+ * Each input map and actions file is only read once. Every job using the
+ * same map gets a copy of the loaded map, and jobs using the same actions
+ * share a compiled {@link ActionScript}.
+ * @serial exclude
+ */
+public class BatchRunner {
+
+    /**
+     * The status of a job that completed without errors.
+     */
+    public static final int OK = 0;
+
+    // job statuses, matching the exit status of Main (which exits with
+    // status 1 on an unexpected exception)
+    private static final int UNEXPECTED_ERROR = 1;
+    private static final int MAP_ERROR = 2;
+    private static final int ACTIONS_ERROR = 3;
+    private static final int ACTION_FORMAT_ERROR = 4;
+    private static final int OUTPUT_ERROR = 5;
+
+    /**
+     * A job: an input map, actions and outputs, and its result once run.
+     */
+    public static final class Job {
+
+        // the files of the job
+        private final String inputMap;
+        private final String actions;
+        private final String outputMap;
+        private final String outputLog;
+
+        // the results of the job
+        private int status;
+        private String error;
+        private long actionCount;
+        private long nanos;
+
+        /**
+         * Create a job.
+         * @param inputMap the map file to load
+         * @param actions the actions file to perform
+         * @param outputMap the map file to save
+         * @param outputLog the file to write action messages to
+         * @require all parameters != null
+         */
+        public Job(String inputMap, String actions, String outputMap,
+                   String outputLog) {
+            this.inputMap = inputMap;
+            this.actions = actions;
+            this.outputMap = outputMap;
+            this.outputLog = outputLog;
+        }
+
+        /**
+         * Get the status of the job, once run.
+         * @return OK, or the status Main would exit with
+         */
+        public int getStatus() {
+            return status;
+        }
+
+        /**
+         * Get the error of the job, once run.
+         * @return what Main would print to System.err, or null if the
+         *         status is OK
+         */
+        public String getError() {
+            return error;
+        }
+
+        /**
+         * Get the number of actions the job performed, once run.
+         * @return the number of actions
+         */
+        public long getActionCount() {
+            return actionCount;
+        }
+
+        /**
+         * Get how long the job took to run.
+         * @return the time in nanoseconds
+         */
+        public long getNanos() {
+            return nanos;
+        }
+
+        /**
+         * A line describing the job and its result.
+         * @return the description
+         */
+        @Override
+        public String toString() {
+            return String.format("%d %.3f ms %d actions %s %s %s%s", status,
+                    nanos / 1e6, actionCount, inputMap, actions, outputMap,
+                    error == null ? "" : " " + error);
+        }
+    }
+
+    // loaded maps and compiled action scripts, by file name. Each future
+    // holds the loaded value, or fails with the exception loading threw.
+    private final ConcurrentHashMap<String, CompletableFuture<WorldMap>> maps
+            = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, CompletableFuture<ActionScript>>
+            scripts = new ConcurrentHashMap<>();
+
+    // the pool jobs run in
+    private final ForkJoinPool pool;
+
+    /**
+     * Create a batch runner.
+     * @param parallelism the largest number of jobs to run at once
+     * @require parallelism &gt; 0
+     */
+    public BatchRunner(int parallelism) {
+        pool = new ForkJoinPool(parallelism);
+    }
+
+    /**
+     * Read the jobs listed in a manifest file, or in a directory.
+     * @param manifest the manifest file or directory
+     * @return the jobs
+     * @throws IOException if the manifest cannot be read, or has an invalid
+     *         line
+     * @require manifest != null
+     */
+    public static List<Job> readJobs(String manifest) throws IOException {
+        File file = new File(manifest);
+        List<Job> jobs = new ArrayList<>();
+
+        if (file.isDirectory()) {
+            String[] names = file.list();
+            if (names == null) {
+                throw new IOException("Cannot list " + manifest);
+            }
+            Arrays.sort(names);
+            for (String name : names) {
+                if (!name.endsWith(".actions")) {
+                    continue;
+                }
+                String job = name.substring(0, name.length()
+                        - ".actions".length());
+                File map = new File(file, job + ".map");
+                if (!map.exists()) {
+                    map = new File(file, "default.map");
+                }
+                jobs.add(new Job(map.getPath(),
+                        new File(file, name).getPath(),
+                        new File(file, job + ".out.map").getPath(),
+                        new File(file, job + ".log").getPath()));
+            }
+            return jobs;
+        }
+
+        File directory = file.getAbsoluteFile().getParentFile();
+        try (BufferedReader reader = new BufferedReader(
+                new FileReader(file))) {
+            String line;
+            int lineNumber = 0;
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                String trimmed = line.trim();
+                if (trimmed.isEmpty() || trimmed.startsWith("#")) {
+                    continue;
+                }
+
+                String[] fields = trimmed.split("\\s+");
+                if (fields.length != 3 && fields.length != 4) {
+                    throw new IOException("Line " + lineNumber + " of "
+                            + manifest + " is not: inputMap actions "
+                            + "outputMap [outputLog]");
+                }
+                String outputMap = resolve(directory, fields[2]);
+                jobs.add(new Job(resolve(directory, fields[0]),
+                        resolve(directory, fields[1]), outputMap,
+                        fields.length == 4 ? resolve(directory, fields[3])
+                                : outputMap + ".log"));
+            }
+        }
+        return jobs;
+    }
+
+    /**
+     * Run jobs in parallel, and wait for them to finish. <br>
+     * The results are stored in each job.
+     * @param jobs the jobs to run
+     * @require jobs != null
+     */
+    public void run(List<Job> jobs) {
+        List<Future<?>> running = new ArrayList<>();
+        for (Job job : jobs) {
+            running.add(pool.submit(() -> runJob(job)));
+        }
+        for (int i = 0; i < running.size(); i++) {
+            try {
+                running.get(i).get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (ExecutionException e) {
+                // an Error, runJob() stores exceptions in the job
+                fail(jobs.get(i), UNEXPECTED_ERROR, e.getCause());
+            }
+        }
+    }
+
+    /**
+     * Stop the pool jobs are run in.
+     */
+    public void shutdown() {
+        pool.shutdown();
+    }
+
+    /**
+     * Run a job the same way Main runs its parameters, and store the
+     * result in the job.
+     * @param job the job
+     */
+    private void runJob(Job job) {
+        long start = System.nanoTime();
+        try {
+            WorldMap map;
+            try {
+                map = load(maps, job.inputMap, () -> new WorldMap(
+                        job.inputMap)).copy();
+            } catch (BlockWorldException | IOException e) {
+                fail(job, MAP_ERROR, e);
+                return;
+            }
+
+            ActionScript script;
+            try {
+                script = load(scripts, job.actions, () -> {
+                    try (Reader reader = new BufferedReader(
+                            new FileReader(job.actions))) {
+                        return ActionScript.compile(reader);
+                    }
+                });
+            } catch (BlockWorldException | IOException e) {
+                fail(job, ACTIONS_ERROR, e);
+                return;
+            }
+
+            try (Writer log = new BufferedWriter(
+                    new FileWriter(job.outputLog))) {
+                job.actionCount = script.run(map, new WriterActionSink(log));
+            } catch (ActionFormatException e) {
+                job.actionCount = script.size();
+                fail(job, ACTION_FORMAT_ERROR, e);
+                return;
+            } catch (IOException e) {
+                fail(job, OUTPUT_ERROR, e);
+                return;
+            }
+
+            try {
+                map.saveMap(job.outputMap);
+            } catch (IOException e) {
+                fail(job, OUTPUT_ERROR, e);
+                return;
+            }
+            job.status = OK;
+        } catch (RuntimeException e) {
+            fail(job, UNEXPECTED_ERROR, e);
+        } finally {
+            job.nanos = System.nanoTime() - start;
+        }
+    }
+
+    /**
+     * Record a failed job.
+     * @param job the job
+     * @param status the status Main would exit with
+     * @param error the exception Main would print, or that Main would
+     *              exit with
+     */
+    private static void fail(Job job, int status, Throwable error) {
+        job.status = status;
+        job.error = error.toString();
+    }
+
+    /**
+     * Something that loads a file.
+     * @param <T> the type of value loaded
+     */
+    private interface Loader<T> {
+
+        /**
+         * Load the file.
+         * @return the loaded value
+         * @throws BlockWorldException if the file is invalid
+         * @throws IOException if the file cannot be read
+         */
+        T load() throws BlockWorldException, IOException;
+    }
+
+    /**
+     * Get a loaded file from a cache, loading it if this is the first time
+     * it is needed. Other jobs needing the same file wait for it to load.
+     * @param cache the cache
+     * @param filename the file name
+     * @param loader the loader for the file
+     * @param <T> the type of value loaded
+     * @return the loaded value
+     * @throws BlockWorldException if loading throws a BlockWorldException
+     * @throws IOException if loading throws an IOException
+     */
+    private static <T> T load(
+            ConcurrentHashMap<String, CompletableFuture<T>> cache,
+            String filename, Loader<T> loader)
+            throws BlockWorldException, IOException {
+        String key = new File(filename).getAbsolutePath();
+        CompletableFuture<T> future = cache.get(key);
+        if (future == null) {
+            CompletableFuture<T> loading = new CompletableFuture<>();
+            future = cache.putIfAbsent(key, loading);
+            if (future == null) {
+                future = loading;
+                try {
+                    loading.complete(loader.load());
+                } catch (BlockWorldException | IOException
+                        | RuntimeException e) {
+                    loading.completeExceptionally(e);
+                }
+            }
+        }
+
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof BlockWorldException) {
+                throw (BlockWorldException) cause;
+            } else if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            throw (RuntimeException) cause;
+        }
+    }
+
+    /**
+     * Resolve a path in a manifest.
+     * @param directory the manifest's directory
+     * @param path the path
+     * @return the path, relative to the manifest's directory if it is not
+     *         absolute
+     */
+    private static String resolve(File directory, String path) {
+        File file = new File(path);
+        return file.isAbsolute() ? path : new File(directory, path).getPath();
+    }
+
+    /**
+     * Run the jobs in a manifest file or directory, and print a line for
+     * each job (see Job.toString()) then a summary to System.out. <br>
+     * Exits with status 1 if the manifest cannot be read. Otherwise exits
+     * with the highest status of any job (0 if all jobs completed).
+     * @param manifest the manifest file or directory
+     */
+    public static void runManifest(String manifest) {
+        List<Job> jobs = null;
+        try {
+            jobs = readJobs(manifest);
+        } catch (IOException e) {
+            System.err.println(e);
+            System.exit(1);
+        }
+
+        BatchRunner runner = new BatchRunner(
+                Runtime.getRuntime().availableProcessors());
+        long start = System.nanoTime();
+        runner.run(jobs);
+        long wallNanos = System.nanoTime() - start;
+        runner.shutdown();
+
+        int exitStatus = OK;
+        long actionCount = 0;
+        long[] latencies = new long[jobs.size()];
+        for (int i = 0; i < jobs.size(); i++) {
+            Job job = jobs.get(i);
+            System.out.println(job);
+            exitStatus = Math.max(exitStatus, job.status);
+            actionCount += job.actionCount;
+            latencies[i] = job.nanos;
+        }
+        Arrays.sort(latencies);
+
+        double seconds = wallNanos / 1e9;
+        System.out.println(String.format("%d jobs in %.3f s: %.1f jobs/s, "
+                        + "%.0f actions/s, latency ms p50 %.3f p95 %.3f "
+                        + "max %.3f", jobs.size(), seconds,
+                jobs.size() / seconds, actionCount / seconds,
+                percentile(latencies, 50) / 1e6,
+                percentile(latencies, 95) / 1e6,
+                percentile(latencies, 100) / 1e6));
+        System.exit(exitStatus);
+    }
+
+    /**
+     * Get a percentile of sorted values.
+     * @param sorted the values, in increasing order
+     * @param percent the percentile, from 0 to 100
+     * @return the value, or 0 if there are no values
+     */
+    private static long percentile(long[] sorted, int percent) {
+        if (sorted.length == 0) {
+            return 0;
+        }
+        int index = (int) Math.ceil(sorted.length * percent / 100.0) - 1;
+        return sorted[Math.max(index, 0)];
+    }
+}
@@ -0,0 +1,326 @@
+package csse2002.block.world;
+
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+/**
+ * The binary world map format, and a writer for it. <br>
+ * A binary map holds the same information as a text map (see
+ * {@link WorldMap#WorldMap(String)}), plus the tile the builder is on and
+ * any exits not named "north", "east", "south" or "west". All values are
+ * little-endian. <br>
+ * The file starts with a header:
+ * <pre>{@literal
+ *magic      4 bytes  0x89 'B' 'W' 'M'
+ *version    int32    VERSION
+ *}</pre>
+ * followed by four sections in order, each of the form:
+ * <pre>{@literal
+ *tag        int32    BUILDER, TILES, EXITS or NAMED_EXITS
+ *length     int32    number of bytes in the payload
+ *payload    length bytes
+ *crc        int32    CRC32 of the payload
+ *}</pre>
+ * The payloads are:
+ * <ul>
+ *     <li> BUILDER: the starting x and y (int32 each), the builder's name
+ *          (int32 length, then UTF-8 bytes), the inventory (int32 count,
+ *          then one type ordinal byte per block) and the id of the
+ *          builder's tile (int32, -1 if the builder is not on a tile in
+ *          the map, in which case it is loaded onto tile 0). </li>
+ *     <li> TILES: the number of tiles N (int32), then one packed column
+ *          (int32) per tile, in the order of WorldMap.getTiles(). Bits 0 to
+ *          3 hold the number of blocks, and each block from the bottom up
+ *          takes the next two bits, holding its type ordinal (see
+ *          {@link StandardBlocks}). </li>
+ *     <li> EXITS: for each tile, a byte with bit i set if the tile has an
+ *          exit with exit index i (see {@link Tile#NORTH}), followed by the
+ *          id of the tile at each of those exits (int32 each), in order of
+ *          exit index. </li>
+ *     <li> NAMED_EXITS: the number of other exits (int32), then for each
+ *          one the tile id (int32), the exit name (int32 length, then UTF-8
+ *          bytes) and the id of the tile it leads to (int32). </li>
+ * </ul>
+ * Tile ids are indices in WorldMap.getTiles(). The file ends after the last
+ * section.
+ * @serial exclude
+ */
+final class BinaryMapFormat {
+
+    // the first bytes of every binary map. 0x89 can not start a text map.
+    static final byte[] MAGIC = {(byte) 0x89, 'B', 'W', 'M'};
+
+    // the current version of the format
+    static final int VERSION = 1;
+
+    // section tags, in the order the sections appear
+    static final int BUILDER = 1;
+    static final int TILES = 2;
+    static final int EXITS = 3;
+    static final int NAMED_EXITS = 4;
+
+    // the number of bits used for the height in a packed column
+    static final int HEIGHT_BITS = 4;
+
+    // the number of bits used for each block in a packed column
+    static final int CODE_BITS = 2;
+
+    // the number of bytes in a section's tag and length, and in its crc
+    private static final int SECTION_HEADER_SIZE = 8;
+    private static final int SECTION_TRAILER_SIZE = 4;
+
+    /**
+     * BinaryMapFormat only has static members.
+     */
+    private BinaryMapFormat() {
+    }
+
+    /**
+     * Check if a file starts with the binary map magic bytes.
+     * @param contents the contents of the file
+     * @return true if the contents start with MAGIC
+     */
+    static boolean hasMagic(ByteBuffer contents) {
+        if (contents.limit() < MAGIC.length) {
+            return false;
+        }
+        for (int i = 0; i < MAGIC.length; i++) {
+            if (contents.get(i) != MAGIC[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Write a world map to a file in the binary format.
+     * @param filename the file to write to
+     * @param startPosition the position of tile 0
+     * @param builder the builder
+     * @param tileArray the tiles, in order of id
+     * @throws IOException if the file cannot be opened or written to, or a
+     *         block is not one of the standard block types
+     */
+    static void write(String filename, Position startPosition,
+                      Builder builder, SparseTileArray tileArray)
+            throws IOException {
+        try (FileChannel channel =
+                     new FileOutputStream(filename).getChannel()) {
+            ByteBuffer header = allocate(MAGIC.length + 4);
+            header.put(MAGIC).putInt(VERSION);
+            writeFully(channel, header);
+
+            writeSection(channel, BUILDER,
+                    encodeBuilder(startPosition, builder, tileArray));
+            writeSection(channel, TILES, encodeTiles(tileArray));
+            writeSection(channel, EXITS, encodeExits(tileArray));
+            writeSection(channel, NAMED_EXITS, encodeNamedExits(tileArray));
+        }
+    }
+
+    /**
+     * Encode the BUILDER section.
+     * @param startPosition the position of tile 0
+     * @param builder the builder
+     * @param tileArray the tiles
+     * @return the payload
+     * @throws IOException if a block is not a standard block type
+     */
+    private static ByteBuffer encodeBuilder(Position startPosition,
+                                            Builder builder,
+                                            SparseTileArray tileArray)
+            throws IOException {
+        byte[] name = builder.getName().getBytes(StandardCharsets.UTF_8);
+        List<Block> inventory = builder.getInventory();
+
+        ByteBuffer payload = allocate(4 + 4 + 4 + name.length + 4
+                + inventory.size() + 4);
+        payload.putInt(startPosition.getX()).putInt(startPosition.getY());
+        payload.putInt(name.length).put(name);
+
+        payload.putInt(inventory.size());
+        for (Block block : inventory) {
+            payload.put((byte) typeOrdinal(block));
+        }
+
+        // -1 if the builder has moved off the map using exits that were
+        // added later
+        payload.putInt(tileArray.indexOf(builder.getCurrentTile()));
+        return payload;
+    }
+
+    /**
+     * Encode the TILES section.
+     * @param tileArray the tiles
+     * @return the payload
+     * @throws IOException if a block is not a standard block type
+     */
+    private static ByteBuffer encodeTiles(SparseTileArray tileArray)
+            throws IOException {
+        ByteBuffer payload = allocate(4 + 4 * tileArray.size());
+        payload.putInt(tileArray.size());
+
+        for (int i = 0; i < tileArray.size(); i++) {
+            List<Block> blocks = tileArray.getTileAt(i).getBlocks();
+            int column = blocks.size();
+            for (int level = 0; level < blocks.size(); level++) {
+                column |= typeOrdinal(blocks.get(level))
+                        << (HEIGHT_BITS + level * CODE_BITS);
+            }
+            payload.putInt(column);
+        }
+        return payload;
+    }
+
+    /**
+     * Encode the EXITS section.
+     * @param tileArray the tiles
+     * @return the payload
+     */
+    private static ByteBuffer encodeExits(SparseTileArray tileArray) {
+        int size = 0;
+        for (int i = 0; i < tileArray.size(); i++) {
+            size += 1 + 4 * Integer.bitCount(
+                    tileArray.getTileAt(i).exitMask());
+        }
+
+        ByteBuffer payload = allocate(size);
+        for (int i = 0; i < tileArray.size(); i++) {
+            Tile tile = tileArray.getTileAt(i);
+            int mask = tile.exitMask();
+            payload.put((byte) mask);
+            for (int index = 0; mask != 0; index++, mask >>>= 1) {
+                if ((mask & 1) != 0) {
+                    payload.putInt(tileArray.indexOf(tile.getExit(index)));
+                }
+            }
+        }
+        return payload;
+    }
+
+    /**
+     * Encode the NAMED_EXITS section.
+     * @param tileArray the tiles
+     * @return the payload
+     */
+    private static ByteBuffer encodeNamedExits(SparseTileArray tileArray) {
+        int size = 4;
+        int count = 0;
+        for (int i = 0; i < tileArray.size(); i++) {
+            Tile tile = tileArray.getTileAt(i);
+            if (tile.hasNamedExits()) {
+                for (String name : tile.getExits().keySet()) {
+                    if (Tile.exitIndex(name) < 0) {
+                        size += 4 + 4 + utf8Length(name) + 4;
+                        count++;
+                    }
+                }
+            }
+        }
+
+        ByteBuffer payload = allocate(size);
+        payload.putInt(count);
+        for (int i = 0; i < tileArray.size(); i++) {
+            Tile tile = tileArray.getTileAt(i);
+            if (!tile.hasNamedExits()) {
+                continue;
+            }
+            for (Map.Entry<String, Tile> exit : tile.getExits().entrySet()) {
+                if (Tile.exitIndex(exit.getKey()) < 0) {
+                    byte[] name = exit.getKey().getBytes(
+                            StandardCharsets.UTF_8);
+                    payload.putInt(i).putInt(name.length).put(name);
+                    payload.putInt(tileArray.indexOf(exit.getValue()));
+                }
+            }
+        }
+        return payload;
+    }
+
+    /**
+     * Get the type ordinal to store for a block. Blocks that are not
+     * standard blocks are stored by their block type, as in a text map.
+     * @param block the block
+     * @return the type ordinal
+     * @throws IOException if the block type is not a standard block type
+     */
+    private static int typeOrdinal(Block block) throws IOException {
+        int ordinal = StandardBlocks.standardOrdinal(block);
+        if (ordinal >= 0) {
+            return ordinal;
+        }
+
+        Block standard = StandardBlocks.fromBlockType(block.getBlockType());
+        if (standard == null) {
+            throw new IOException("Cannot save block of type "
+                    + block.getBlockType() + " in a binary map");
+        }
+        return standard.getTypeOrdinal();
+    }
+
+    /**
+     * Write a section.
+     * @param channel the channel to write to
+     * @param tag the section tag
+     * @param payload the section payload, positioned at its end
+     * @throws IOException if writing fails
+     */
+    private static void writeSection(FileChannel channel, int tag,
+                                     ByteBuffer payload) throws IOException {
+        payload.flip();
+
+        CRC32 crc = new CRC32();
+        crc.update(payload.duplicate());
+
+        ByteBuffer header = allocate(SECTION_HEADER_SIZE);
+        header.putInt(tag).putInt(payload.remaining());
+        writeFully(channel, header);
+
+        while (payload.hasRemaining()) {
+            channel.write(payload);
+        }
+
+        ByteBuffer trailer = allocate(SECTION_TRAILER_SIZE);
+        trailer.putInt((int) crc.getValue());
+        writeFully(channel, trailer);
+    }
+
+    /**
+     * Write all of a buffer that has been filled.
+     * @param channel the channel to write to
+     * @param buffer the buffer, positioned at the end of its contents
+     * @throws IOException if writing fails
+     */
+    private static void writeFully(FileChannel channel, ByteBuffer buffer)
+            throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    /**
+     * Allocate a little-endian buffer.
+     * @param size the size in bytes
+     * @return the buffer
+     */
+    private static ByteBuffer allocate(int size) {
+        return ByteBuffer.allocate(size).order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    /**
+     * Get the number of bytes in the UTF-8 encoding of a String.
+     * @param str the String
+     * @return the number of bytes
+     */
+    private static int utf8Length(String str) {
+        return str.getBytes(StandardCharsets.UTF_8).length;
+    }
+}
@@ -0,0 +1,328 @@
+package csse2002.block.world;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * Reads a world map in the binary format (see {@link BinaryMapFormat}).
+ * <br>
+ * Problems with the file are reported as WorldMapFormatExceptions.
+ * @serial exclude
+ */
+class BinaryMapReader {
+
+    // the contents of the file, little-endian
+    private final ByteBuffer bytes;
+
+    // the results of read()
+    private Position startPosition;
+    private String builderName;
+    private List<Block> inventory;
+    private int builderTileId;
+    private Tile[] tiles;
+
+    /**
+     * Create a reader for the bytes of a binary map file.
+     * @param bytes the contents of the file, from 0 to bytes.limit()
+     */
+    BinaryMapReader(ByteBuffer bytes) {
+        this.bytes = bytes.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+        this.bytes.position(0);
+    }
+
+    /**
+     * Get the starting position read from the file.
+     * @return the starting position
+     */
+    Position getStartPosition() {
+        return startPosition;
+    }
+
+    /**
+     * Get the builder's name read from the file.
+     * @return the builder's name
+     */
+    String getBuilderName() {
+        return builderName;
+    }
+
+    /**
+     * Get the builder's inventory read from the file.
+     * @return the inventory
+     */
+    List<Block> getInventory() {
+        return inventory;
+    }
+
+    /**
+     * Get the tile the builder is on.
+     * @return the builder's tile
+     */
+    Tile getBuilderTile() {
+        return tiles[builderTileId];
+    }
+
+    /**
+     * Get the linked tiles read from the file, indexed by tile id.
+     * @return the tiles
+     */
+    Tile[] getTiles() {
+        return tiles;
+    }
+
+    /**
+     * Read the whole file.
+     * @throws WorldMapFormatException if the file is not a valid binary
+     *         map
+     * @throws TooHighException if a tile would have too many blocks, or
+     *         ground blocks that are too high
+     * @throws NoExitException if Tile.addExit throws a NoExitException
+     *         (should not be possible)
+     */
+    void read() throws WorldMapFormatException, TooHighException,
+            NoExitException {
+        try {
+            if (!BinaryMapFormat.hasMagic(bytes)) {
+                throw new WorldMapFormatException("Not a binary map");
+            }
+            bytes.position(BinaryMapFormat.MAGIC.length);
+
+            int version = bytes.getInt();
+            if (version != BinaryMapFormat.VERSION) {
+                throw new WorldMapFormatException("Unsupported binary map "
+                        + "version " + version);
+            }
+
+            readBuilder(section(BinaryMapFormat.BUILDER));
+            readTiles(section(BinaryMapFormat.TILES));
+            readExits(section(BinaryMapFormat.EXITS));
+            readNamedExits(section(BinaryMapFormat.NAMED_EXITS));
+
+            if (bytes.hasRemaining()) {
+                throw new WorldMapFormatException("Extra content in binary "
+                        + "map");
+            }
+        } catch (BufferUnderflowException e) {
+            throw new WorldMapFormatException("Binary map ended abruptly");
+        }
+
+        if (builderTileId >= tiles.length) {
+            throw new WorldMapFormatException("Builder's tile id in binary "
+                    + "map does not refer to a valid tile");
+        }
+    }
+
+    /**
+     * Read the next section, checking its tag and crc.
+     * @param tag the expected section tag
+     * @return the section payload, little-endian
+     * @throws WorldMapFormatException if the section is missing or corrupt
+     */
+    private ByteBuffer section(int tag) throws WorldMapFormatException {
+        int actualTag = bytes.getInt();
+        if (actualTag != tag) {
+            throw new WorldMapFormatException("Expected section " + tag
+                    + " in binary map, found " + actualTag);
+        }
+
+        int length = bytes.getInt();
+        if (length < 0 || length > bytes.remaining()) {
+            throw new WorldMapFormatException("Binary map ended abruptly");
+        }
+
+        ByteBuffer payload = bytes.slice();
+        payload.limit(length);
+        bytes.position(bytes.position() + length);
+
+        CRC32 crc = new CRC32();
+        crc.update(payload.duplicate());
+        if ((int) crc.getValue() != bytes.getInt()) {
+            throw new WorldMapFormatException("Section " + tag
+                    + " of binary map is corrupt");
+        }
+
+        return payload.order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    /**
+     * Read the BUILDER section.
+     * @param payload the section payload
+     * @throws WorldMapFormatException if the section is invalid
+     */
+    private void readBuilder(ByteBuffer payload)
+            throws WorldMapFormatException {
+        int x = payload.getInt();
+        int y = payload.getInt();
+        startPosition = new Position(x, y);
+
+        builderName = readString(payload);
+
+        int inventorySize = readCount(payload, 1);
+        inventory = new ArrayList<>(inventorySize);
+        for (int i = 0; i < inventorySize; i++) {
+            inventory.add(block(payload.get()));
+        }
+
+        // -1 if the builder was not on a tile in the map
+        builderTileId = Math.max(payload.getInt(), 0);
+        endOfSection(payload);
+    }
+
+    /**
+     * Read the TILES section.
+     * @param payload the section payload
+     * @throws WorldMapFormatException if the section is invalid
+     * @throws TooHighException if Tile(List) would throw one
+     */
+    private void readTiles(ByteBuffer payload)
+            throws WorldMapFormatException, TooHighException {
+        int numTiles = readCount(payload, 4);
+        if (numTiles == 0) {
+            throw new WorldMapFormatException("Binary map has no tiles");
+        }
+
+        tiles = new Tile[numTiles];
+        List<Block> blocks = new ArrayList<>();
+        for (int i = 0; i < numTiles; i++) {
+            int column = payload.getInt();
+            int height = column & ((1 << BinaryMapFormat.HEIGHT_BITS) - 1);
+            int codeBits = height * BinaryMapFormat.CODE_BITS;
+            if (BinaryMapFormat.HEIGHT_BITS + codeBits >= Integer.SIZE
+                    || column >>> (BinaryMapFormat.HEIGHT_BITS + codeBits)
+                    != 0) {
+                throw new WorldMapFormatException("Invalid tile column in "
+                        + "binary map");
+            }
+
+            int codes = column >>> BinaryMapFormat.HEIGHT_BITS;
+            for (int level = 0; level < height; level++) {
+                blocks.add(block(codes & ((1 << BinaryMapFormat.CODE_BITS)
+                        - 1)));
+                codes >>>= BinaryMapFormat.CODE_BITS;
+            }
+
+            tiles[i] = new Tile(blocks);
+            blocks.clear();
+        }
+        endOfSection(payload);
+    }
+
+    /**
+     * Read the EXITS section, adding the exits to the tiles.
+     * @param payload the section payload
+     * @throws WorldMapFormatException if the section is invalid
+     * @throws NoExitException if Tile.addExit throws a NoExitException
+     *         (should not be possible)
+     */
+    private void readExits(ByteBuffer payload)
+            throws WorldMapFormatException, NoExitException {
+        for (Tile tile : tiles) {
+            int mask = payload.get();
+            if ((mask & ~0xF) != 0) {
+                throw new WorldMapFormatException("Invalid exits in binary "
+                        + "map");
+            }
+
+            for (int index = 0; mask != 0; index++, mask >>>= 1) {
+                if ((mask & 1) != 0) {
+                    tile.addExit(Tile.exitName(index), tile(payload.getInt()));
+                }
+            }
+        }
+        endOfSection(payload);
+    }
+
+    /**
+     * Read the NAMED_EXITS section, adding the exits to the tiles.
+     * @param payload the section payload
+     * @throws WorldMapFormatException if the section is invalid
+     * @throws NoExitException if Tile.addExit throws a NoExitException
+     *         (should not be possible)
+     */
+    private void readNamedExits(ByteBuffer payload)
+            throws WorldMapFormatException, NoExitException {
+        int count = readCount(payload, 12);
+        for (int i = 0; i < count; i++) {
+            Tile tile = tile(payload.getInt());
+            String name = readString(payload);
+            tile.addExit(name, tile(payload.getInt()));
+        }
+        endOfSection(payload);
+    }
+
+    /**
+     * Get a tile by id.
+     * @param tileId the tile id
+     * @return the tile
+     * @throws WorldMapFormatException if there is no tile with that id
+     */
+    private Tile tile(int tileId) throws WorldMapFormatException {
+        if (tileId < 0 || tileId >= tiles.length) {
+            throw new WorldMapFormatException("Tile id in binary map does "
+                    + "not refer to a valid tile");
+        }
+        return tiles[tileId];
+    }
+
+    /**
+     * Get a standard block by type ordinal.
+     * @param ordinal the type ordinal
+     * @return the shared block
+     * @throws WorldMapFormatException if ordinal is not a type ordinal
+     */
+    private static Block block(int ordinal) throws WorldMapFormatException {
+        if (ordinal < 0 || ordinal >= StandardBlocks.COUNT) {
+            throw new WorldMapFormatException(
+                    "Invalid block type in binary map");
+        }
+        return StandardBlocks.fromOrdinal(ordinal);
+    }
+
+    /**
+     * Read a count of items, checking that the payload is large enough to
+     * hold them.
+     * @param payload the section payload
+     * @param minItemSize the smallest number of bytes each item takes
+     * @return the count
+     * @throws WorldMapFormatException if the count is invalid
+     */
+    private static int readCount(ByteBuffer payload, int minItemSize)
+            throws WorldMapFormatException {
+        int count = payload.getInt();
+        if (count < 0 || (long) count * minItemSize > payload.remaining()) {
+            throw new WorldMapFormatException("Invalid count in binary map");
+        }
+        return count;
+    }
+
+    /**
+     * Read a String stored as an int32 length then UTF-8 bytes.
+     * @param payload the section payload
+     * @return the String
+     * @throws WorldMapFormatException if the length is invalid
+     */
+    private static String readString(ByteBuffer payload)
+            throws WorldMapFormatException {
+        byte[] utf8 = new byte[readCount(payload, 1)];
+        payload.get(utf8);
+        return new String(utf8, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Check that a section payload has been completely read.
+     * @param payload the section payload
+     * @throws WorldMapFormatException if there are bytes left
+     */
+    private static void endOfSection(ByteBuffer payload)
+            throws WorldMapFormatException {
+        if (payload.hasRemaining()) {
+            throw new WorldMapFormatException("Extra content in binary map "
+                    + "section");
+        }
+    }
+}
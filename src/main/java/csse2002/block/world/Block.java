@@ -40,4 +40,18 @@ public interface Block {
      */
     boolean isCarryable();
 
+    /**
+     * Get the type ordinal of a block. <br>
+     * The standard block types have the ordinals
+     * {@link WoodBlock#ORDINAL WoodBlock.ORDINAL},
+     * {@link GrassBlock#ORDINAL GrassBlock.ORDINAL},
+     * {@link SoilBlock#ORDINAL SoilBlock.ORDINAL} and
+     * {@link StoneBlock#ORDINAL StoneBlock.ORDINAL}, numbered from 0.
+     * Other block types return -1 unless they inherit an ordinal.
+     * @return the type ordinal, or -1 if not a standard block type
+     */
+    default int getTypeOrdinal() {
+        return -1;
+    }
+
 }
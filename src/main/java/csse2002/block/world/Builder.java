@@ -1,9 +1,9 @@
 package csse2002.block.world;
 
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.LinkedList;
 import java.util.List;
-import java.util.Map;
 
 /**
  * A Player who modifies the map. <br>
@@ -22,6 +22,10 @@ public class Builder {
     /* Name of the builder*/
     String name;
 
+    /* The tracker passing changes to this Builder on to its map's state
+       hash, or null if the map has not needed one. */
+    private TileTracker tracker;
+
     /**
      * Create a builder. <br>
      * Set the name of the Builder (such that getName() == name) and the
@@ -94,6 +98,84 @@ public class Builder {
         return Collections.unmodifiableList(this.contents);
     }
 
+    /**
+     * Save the builder's inventory, so that it can be put back with
+     * restore().
+     * @return a copy of the inventory
+     */
+    List<Block> saveInventory() {
+        return new ArrayList<>(contents);
+    }
+
+    /**
+     * Put the builder back on a tile, with an inventory saved by
+     * saveInventory(). <br>
+     * The change is not recorded in the snapshot log (the caller records
+     * it).
+     * @param tile the tile
+     * @param inventory the saved inventory, or null to keep the inventory
+     */
+    void restore(Tile tile, List<Block> inventory) {
+        StateHash hash = getStateHash();
+        if (hash != null) {
+            hash.moveBuilder(hash.seedOf(currentTile), hash.seedOf(tile));
+        }
+        currentTile = tile;
+
+        if (inventory != null) {
+            if (hash != null) {
+                for (Block block : contents) {
+                    hash.removeFromInventory(block);
+                }
+                for (Block block : inventory) {
+                    hash.addToInventory(block);
+                }
+            }
+            contents.clear();
+            contents.addAll(inventory);
+        }
+    }
+
+    /**
+     * Add the builder's position and inventory to a state hash being
+     * computed.
+     * @param hash the state hash of the builder's map
+     */
+    void addToStateHash(StateHash hash) {
+        hash.toggle(StateHash.builderKey(hash.seedOf(currentTile)));
+        for (Block block : contents) {
+            hash.addToInventory(block);
+        }
+    }
+
+    /**
+     * Pass changes to this builder on to a tracker.
+     * @param builderTracker the tracker of this builder's map
+     */
+    void attachTracker(TileTracker builderTracker) {
+        tracker = builderTracker;
+    }
+
+    /**
+     * Stop passing changes to this builder on to a tracker, if they still
+     * are.
+     * @param builderTracker the tracker to detach
+     */
+    void detachTracker(TileTracker builderTracker) {
+        if (tracker == builderTracker) {
+            tracker = null;
+        }
+    }
+
+    /**
+     * Get the state hash changes to this builder update.
+     * @return the state hash, or null if the map does not keep one
+     */
+    private StateHash getStateHash() {
+        TileTracker builderTracker = tracker;
+        return builderTracker == null ? null : builderTracker.getStateHash();
+    }
+
     /**
      * Drop a block from inventory on the top of the current tile <br>
      * The block at inventoryIndex should be removed from the Builder's
@@ -123,16 +205,55 @@ public class Builder {
      */
     public void dropFromInventory(int inventoryIndex) throws
             InvalidBlockException, TooHighException {
+        switch (tryDropFromInventory(inventoryIndex)) {
+            case INVALID_BLOCK:
+                throw new InvalidBlockException();
+            case TOO_HIGH:
+                throw new TooHighException();
+            default:
+                break;
+        }
+    }
+
+    /**
+     * Attempt to drop a block from the inventory, as dropFromInventory()
+     * does, but return the outcome instead of throwing an exception.
+     * @param inventoryIndex the index in the inventory to place
+     * @return INVALID_BLOCK if the inventoryIndex is out of the inventory
+     *         range, TOO_HIGH if Tile.tryPlaceBlock() returns TOO_HIGH,
+     *         otherwise SUCCESS
+     */
+    public ActionOutcome tryDropFromInventory(int inventoryIndex) {
+        SnapshotLog log = currentTile.getSnapshotLog();
+        if (log == null) {
+            return applyDropFromInventory(inventoryIndex);
+        }
+        return log.write(currentTile, null, this,
+                () -> applyDropFromInventory(inventoryIndex));
+    }
+
+    /**
+     * Drop a block from the inventory, as tryDropFromInventory() does,
+     * without recording the change in the snapshot log.
+     * @param inventoryIndex the index in the inventory to place
+     * @return the outcome, as for tryDropFromInventory()
+     */
+    private ActionOutcome applyDropFromInventory(int inventoryIndex) {
         if (inventoryIndex < 0 || inventoryIndex >= contents.size()) {
-            throw new InvalidBlockException();
+            return ActionOutcome.INVALID_BLOCK;
         }
 
         Block block = contents.get(inventoryIndex);
 
-        // should handle the TooHighException
-        currentTile.placeBlock(block);
-
-        contents.remove(inventoryIndex);
+        ActionOutcome outcome = currentTile.applyPlaceBlock(block);
+        if (outcome == ActionOutcome.SUCCESS) {
+            contents.remove(inventoryIndex);
+            StateHash hash = getStateHash();
+            if (hash != null) {
+                hash.removeFromInventory(block);
+            }
+        }
+        return outcome;
     }
 
     /**
@@ -156,15 +277,51 @@ public class Builder {
      */
     public void digOnCurrentTile() throws TooLowException,
             InvalidBlockException {
+        switch (tryDigOnCurrentTile()) {
+            case TOO_LOW:
+                throw new TooLowException();
+            case INVALID_BLOCK:
+                throw new InvalidBlockException();
+            default:
+                break;
+        }
+    }
+
+    /**
+     * Attempt to dig in the current tile, as digOnCurrentTile() does, but
+     * return the outcome instead of throwing an exception.
+     * @return TOO_LOW if there are no blocks on the current tile,
+     *         INVALID_BLOCK if the top block is not diggable, otherwise
+     *         SUCCESS
+     */
+    public ActionOutcome tryDigOnCurrentTile() {
+        SnapshotLog log = currentTile.getSnapshotLog();
+        if (log == null) {
+            return applyDigOnCurrentTile();
+        }
+        return log.write(currentTile, null, this,
+                this::applyDigOnCurrentTile);
+    }
+
+    /**
+     * Dig in the current tile, as tryDigOnCurrentTile() does, without
+     * recording the change in the snapshot log.
+     * @return the outcome, as for tryDigOnCurrentTile()
+     */
+    private ActionOutcome applyDigOnCurrentTile() {
+        Block block = currentTile.peekTopBlock();
 
-        // throws TooLowException if no blocks, and InvalidBlockException if
-        // not diggable.
-        Block block = currentTile.dig();
+        ActionOutcome outcome = currentTile.applyDig();
 
         // only add the block to the inventory if it is carryable.
-        if (block.isCarryable()) {
+        if (outcome == ActionOutcome.SUCCESS && block.isCarryable()) {
             contents.add(block);
+            StateHash hash = getStateHash();
+            if (hash != null) {
+                hash.addToInventory(block);
+            }
         }
+        return outcome;
     }
 
     /**
@@ -187,19 +344,10 @@ public class Builder {
             return false;
         }
 
-        boolean tilesAreConnected = false;
+        boolean tilesAreConnected = currentTile.hasExitTo(newTile);
         boolean heightsAreCompatible = false;
 
-        for (Map.Entry<String,
-                       Tile> entry : currentTile.getExits().entrySet()) {
-            if (entry.getValue() == newTile) {
-                tilesAreConnected = true;
-                break;
-            }
-        }
-
-        if (Math.abs(newTile.getBlocks().size()
-                     - currentTile.getBlocks().size()) <= 1) {
+        if (Math.abs(newTile.height() - currentTile.height()) <= 1) {
             heightsAreCompatible = true;
         }
 
@@ -218,11 +366,42 @@ public class Builder {
      * @throws NoExitException if canEnter(newTile) == false
      */
     public void moveTo(Tile newTile) throws NoExitException {
-        if (!canEnter(newTile)) {
+        if (tryMoveTo(newTile) != ActionOutcome.SUCCESS) {
             throw new NoExitException();
         }
+    }
+
+    /**
+     * Attempt to move the builder to a new tile, as moveTo() does, but
+     * return the outcome instead of throwing an exception.
+     * @param newTile the tile to move to
+     * @return NO_EXIT if canEnter(newTile) == false, otherwise SUCCESS
+     */
+    public ActionOutcome tryMoveTo(Tile newTile) {
+        SnapshotLog log = currentTile.getSnapshotLog();
+        if (log == null) {
+            return applyMoveTo(newTile);
+        }
+        return log.write(null, null, this, () -> applyMoveTo(newTile));
+    }
+
+    /**
+     * Move the builder to a new tile, as tryMoveTo() does, without
+     * recording the change in the snapshot log.
+     * @param newTile the tile to move to
+     * @return the outcome, as for tryMoveTo()
+     */
+    private ActionOutcome applyMoveTo(Tile newTile) {
+        if (!canEnter(newTile)) {
+            return ActionOutcome.NO_EXIT;
+        }
 
+        StateHash hash = getStateHash();
+        if (hash != null) {
+            hash.moveBuilder(hash.seedOf(currentTile), hash.seedOf(newTile));
+        }
         currentTile = newTile;
+        return ActionOutcome.SUCCESS;
     }
 
 }
@@ -0,0 +1,43 @@
+package csse2002.block.world;
+
+/**
+ * An ActionSink that counts the outcomes it receives.
+ * @serial exclude
+ */
+public class CountingActionSink implements ActionSink {
+
+    // the number of actions with each outcome, indexed by ordinal
+    private final long[] counts = new long[ActionOutcome.values().length];
+
+    /**
+     * Count the outcome of an action.
+     * @param action the action that was performed
+     * @param outcome the outcome of the action
+     */
+    @Override
+    public void accept(Action action, ActionOutcome outcome) {
+        counts[outcome.ordinal()]++;
+    }
+
+    /**
+     * Get the number of actions received with an outcome.
+     * @param outcome the outcome
+     * @return the number of actions
+     * @require outcome != null
+     */
+    public long getCount(ActionOutcome outcome) {
+        return counts[outcome.ordinal()];
+    }
+
+    /**
+     * Get the number of actions received.
+     * @return the number of actions
+     */
+    public long getTotal() {
+        long total = 0;
+        for (long count : counts) {
+            total += count;
+        }
+        return total;
+    }
+}
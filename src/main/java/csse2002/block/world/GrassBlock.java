@@ -6,6 +6,17 @@ package csse2002.block.world;
  */
 public class GrassBlock extends GroundBlock {
 
+    /**
+     * The type ordinal of GrassBlocks (see Block.getTypeOrdinal()).
+     */
+    public static final int ORDINAL = 1;
+
+    /**
+     * A shared GrassBlock. GrassBlocks have no state, so this instance can be
+     * used instead of constructing a new one.
+     */
+    public static final GrassBlock INSTANCE = new GrassBlock();
+
     /**
      * Get the colour of a GrassBlock. <br>
      * Always returns "green"
@@ -36,4 +47,14 @@ public class GrassBlock extends GroundBlock {
         return false;
     }
 
+    /**
+     * Get the type ordinal of a GrassBlock. <br>
+     * Always returns GrassBlock.ORDINAL
+     * @return 1
+     */
+    @Override
+    public int getTypeOrdinal() {
+        return ORDINAL;
+    }
+
 }
@@ -41,7 +41,9 @@ public class Main {
      *     <li> Call Action.processActions() using the created BufferedReader
      *          and WorldMap. If an exception is thrown, print the exception to
      *          the console using System.err.println, and then exit with
-     *          status 4. </li>
+     *          status 4. When reading from System.in, actions are
+     *          performed with PipelinedActionProcessor.processActions()
+     *          instead, which gives the same output. </li>
      *     <li> Call WorldMap.saveMap() using the 3rd parameter to save the map
      *          to an output file. If an exception is thrown, print the
      *          exception to the console using System.err.println() and then
@@ -49,11 +51,20 @@ public class Main {
      * </ol>
      *
      * To print an exception to System.err, use System.err.println(e), where e
-     * is the caught exception.
+     * is the caught exception. <br>
+     *
+     * Alternatively, takes 2 parameters "--batch" (args[0]) and a manifest
+     * file or directory (args[1]), and runs each job in it in parallel, as
+     * described in {@link BatchRunner}.
      *
      * @param args the input arguments to the program
      */
     public static void main(String[] args) {
+        if (args.length == 2 && args[0].equals("--batch")) {
+            BatchRunner.runManifest(args[1]);
+            return;
+        }
+
         if (args.length != 3) {
             System.err.println(
                     "Usage: program inputMap inoutActions outputMap");
@@ -89,10 +100,21 @@ public class Main {
         }
 
         try {
-            Action.processActions(reader, map);
+            if (inputActions.equals("System.in")) {
+                // read actions on another thread, so a process piping them
+                // in is not stalled while they are performed
+                PipelinedActionProcessor.processActions(reader, map,
+                        new WriterActionSink(System.out));
+            } else {
+                Action.processActions(reader, map);
+            }
         } catch (ActionFormatException format) {
             System.err.println(format);
             System.exit(4);
+        } catch (IOException io) {
+            // only if interrupted, PrintStreams do not throw IOExceptions
+            System.err.println(io);
+            System.exit(4);
         }
 
         try {
@@ -0,0 +1,77 @@
+package csse2002.block.world;
+
+import java.io.IOException;
+
+/**
+ * Converts world maps between the text format (see
+ * {@link WorldMap#WorldMap(String)}) and the binary format (see
+ * {@link WorldMap#saveBinaryMap(String)}).
+ * @serial exclude
+ */
+public class MapConverter {
+
+    /**
+     * MapConverter only has static members.
+     */
+    private MapConverter() {
+    }
+
+    /**
+     * Convert a map file to the binary format. <br>
+     * The input may be in either format.
+     * @param inputMap the map file to read
+     * @param outputMap the binary map file to write
+     * @throws BlockWorldException if the input map cannot be loaded
+     * @throws IOException if the input map does not exist, or the output
+     *         map cannot be written
+     */
+    public static void toBinary(String inputMap, String outputMap)
+            throws BlockWorldException, IOException {
+        new WorldMap(inputMap).saveBinaryMap(outputMap);
+    }
+
+    /**
+     * Convert a map file to the text format. <br>
+     * The input may be in either format. Text maps always start the builder
+     * on tile 0, so this loses the builder's tile if it was on another
+     * tile of a binary map.
+     * @param inputMap the map file to read
+     * @param outputMap the text map file to write
+     * @throws BlockWorldException if the input map cannot be loaded
+     * @throws IOException if the input map does not exist, or the output
+     *         map cannot be written
+     */
+    public static void toText(String inputMap, String outputMap)
+            throws BlockWorldException, IOException {
+        new WorldMap(inputMap).saveMap(outputMap);
+    }
+
+    /**
+     * Convert a map file from the command line. <br>
+     * Takes 3 parameters: the output format ("binary" or "text"), the input
+     * map file and the output map file. If the parameters are invalid,
+     * prints a usage message to System.err and exits with status 1. If the
+     * conversion fails, prints the exception to System.err and exits with
+     * status 2.
+     * @param args the input arguments to the program
+     */
+    public static void main(String[] args) {
+        if (args.length != 3
+                || !(args[0].equals("binary") || args[0].equals("text"))) {
+            System.err.println(
+                    "Usage: program binary|text inputMap outputMap");
+            System.exit(1);
+        }
+
+        try {
+            if (args[0].equals("binary")) {
+                toBinary(args[1], args[2]);
+            } else {
+                toText(args[1], args[2]);
+            }
+        } catch (BlockWorldException | IOException e) {
+            System.err.println(e);
+            System.exit(2);
+        }
+    }
+}
@@ -0,0 +1,825 @@
+package csse2002.block.world;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Reads a world map file (see {@link WorldMap#WorldMap(String)} for the
+ * format) by reading it into memory at once and parsing the bytes in place.
+ * <br>
+ * Files larger than MAP_THRESHOLD are memory mapped instead of copied to the
+ * heap. A mapped file stays mapped until its buffer is garbage collected,
+ * and on some platforms (e.g. Windows) a mapped file cannot be replaced or
+ * deleted, so saving a map back to the large file it was loaded from can
+ * fail until then. <br>
+ * Lines, integers, block names and exit names are matched directly against
+ * the file's bytes, so apart from the builder's name no Strings are
+ * created. <br>
+ * Errors are reported with the same WorldMapFormatException messages and
+ * line numbers as reading the file line by line with a BufferedReader.
+ * This relies on the default charset decoding every byte below 0x80 as
+ * the matching ASCII character, and never decoding other bytes as ASCII
+ * characters, so it should only be used when {@link #canRead(Charset)}
+ * is true. <br>
+ * The tile entries and exit entries are each split into ranges of lines
+ * which are parsed in parallel on the common fork-join pool. If several
+ * lines are invalid, the error from the lowest line is reported.
+ * @serial exclude
+ */
+class MappedMapReader {
+
+    // returned by parseInt() if the bytes are not a valid integer
+    private static final long NOT_AN_INT = Long.MIN_VALUE;
+
+    // the maximum number of lines parsed by one task without splitting
+    private static final int LINES_PER_TASK = 1024;
+
+    // the size of the largest file read into the heap rather than memory
+    // mapped
+    static final long MAP_THRESHOLD = 1 << 26;
+
+    // the names of the standard block types, indexed by type ordinal
+    private static final byte[][] BLOCK_NAMES =
+            new byte[StandardBlocks.COUNT][];
+
+    // the exit names "north", "east", "south", "west", indexed by exit index
+    private static final byte[][] EXIT_NAMES = new byte[4][];
+
+    static {
+        for (int i = 0; i < BLOCK_NAMES.length; i++) {
+            BLOCK_NAMES[i] = asciiBytes(
+                    StandardBlocks.fromOrdinal(i).getBlockType());
+        }
+        for (int i = 0; i < EXIT_NAMES.length; i++) {
+            EXIT_NAMES[i] = asciiBytes(Tile.exitName(i));
+        }
+    }
+
+    private static final byte[] TOTAL = asciiBytes("total");
+    private static final byte[] EXITS = asciiBytes("exits");
+
+    // the contents of the file
+    private final ByteBuffer bytes;
+
+    // the charset used to decode the builder's name and non-ASCII integers
+    private final Charset charset;
+
+    // the position of the start of the next line in bytes
+    private int position;
+
+    // the start (inclusive) and end (exclusive) of the last line read
+    private int lineStart;
+    private int lineEnd;
+
+    // the number of lines read
+    private int lineNumber;
+
+    // the results of read()
+    private Position startPosition;
+    private String builderName;
+    private List<Block> inventory;
+    private Tile[] tiles;
+
+    // hasExitLine[i] is true if tile i has an entry in the exits section
+    private boolean[] hasExitLine;
+
+    /**
+     * A task to parse a range of lines in the tile entries or exit entries
+     * sections.
+     */
+    @SuppressWarnings("serial")
+    private class SectionTask extends RecursiveTask<BlockWorldException> {
+
+        // whether the lines are exit entries (otherwise tile entries)
+        private final boolean exits;
+
+        // the start (inclusive) and end (exclusive) of each line in the
+        // section
+        private final int[] starts;
+        private final int[] ends;
+
+        // the line number of the first line in the section
+        private final int firstLineNumber;
+
+        // the range of lines in the section to parse
+        private final int from;
+        private final int to;
+
+        /**
+         * Create a task to parse lines from to to - 1 of a section.
+         * @param exits whether the lines are exit entries
+         * @param starts the start of each line in the section
+         * @param ends the end of each line in the section
+         * @param firstLineNumber the line number of the first line in the
+         *         section
+         * @param from the first line to parse (inclusive)
+         * @param to the last line to parse (exclusive)
+         */
+        SectionTask(boolean exits, int[] starts, int[] ends,
+                    int firstLineNumber, int from, int to) {
+            this.exits = exits;
+            this.starts = starts;
+            this.ends = ends;
+            this.firstLineNumber = firstLineNumber;
+            this.from = from;
+            this.to = to;
+        }
+
+        /**
+         * Parse the lines, splitting the range in two if it is large.
+         * @return the exception from the lowest invalid line, or null if
+         *         all lines are valid
+         */
+        @Override
+        protected BlockWorldException compute() {
+            if (to - from <= LINES_PER_TASK) {
+                return parseLines();
+            }
+
+            int middle = (from + to) >>> 1;
+            SectionTask lower = new SectionTask(exits, starts, ends,
+                    firstLineNumber, from, middle);
+            SectionTask upper = new SectionTask(exits, starts, ends,
+                    firstLineNumber, middle, to);
+            lower.fork();
+            BlockWorldException upperError = upper.compute();
+            BlockWorldException lowerError = lower.join();
+            return lowerError != null ? lowerError : upperError;
+        }
+
+        /**
+         * Parse the lines in order, stopping at the first invalid line.
+         * @return the exception from the first invalid line, or null if
+         *         all lines are valid
+         */
+        private BlockWorldException parseLines() {
+            List<Block> scratch = new ArrayList<>();
+            try {
+                for (int i = from; i < to; i++) {
+                    if (exits) {
+                        hasExitLine[readTileExits(starts[i], ends[i])] = true;
+                    } else {
+                        int tileId = readTileId(starts[i], ends[i],
+                                firstLineNumber + i);
+                        tiles[tileId] = readTile(starts[i], ends[i], scratch);
+                    }
+                }
+            } catch (BlockWorldException e) {
+                return e;
+            }
+            return null;
+        }
+    }
+
+    /**
+     * Create a reader for the bytes of a file.
+     * @param bytes the contents of the file, from 0 to bytes.limit()
+     * @param charset the charset to decode Strings with
+     */
+    MappedMapReader(ByteBuffer bytes, Charset charset) {
+        this.bytes = bytes;
+        this.charset = charset;
+        position = 0;
+        lineNumber = 0;
+    }
+
+    /**
+     * Read the contents of a world map file, memory mapping it if it is
+     * larger than MAP_THRESHOLD.
+     * @param filename the name of the file
+     * @return the contents of the file, or null if the file cannot be read
+     *         at once and should be read with a stream instead (e.g. it is
+     *         not a regular file or is larger than 2GB)
+     * @throws FileNotFoundException if the file cannot be opened
+     */
+    static ByteBuffer contents(String filename) throws FileNotFoundException {
+        RandomAccessFile file = new RandomAccessFile(filename, "r");
+        try (FileChannel channel = file.getChannel()) {
+            long size = channel.size();
+            if (!new File(filename).isFile() || size > Integer.MAX_VALUE) {
+                return null;
+            }
+            if (size > MAP_THRESHOLD) {
+                // the mapping stays valid after the channel is closed
+                return channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            }
+
+            ByteBuffer contents = ByteBuffer.allocate((int) size);
+            while (contents.hasRemaining()) {
+                if (channel.read(contents) < 0) {
+                    // the file was shortened while it was read
+                    return null;
+                }
+            }
+            contents.flip();
+            return contents;
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Check if a MappedMapReader can read files in a charset.
+     * @param charset the charset files are decoded with
+     * @return true if the charset is ASCII compatible (UTF-8, US-ASCII or
+     *         ISO-8859-1)
+     */
+    static boolean canRead(Charset charset) {
+        return charset.equals(StandardCharsets.UTF_8)
+                || charset.equals(StandardCharsets.US_ASCII)
+                || charset.equals(StandardCharsets.ISO_8859_1);
+    }
+
+    /**
+     * Get the starting position read from the file.
+     * @return the starting position
+     */
+    Position getStartPosition() {
+        return startPosition;
+    }
+
+    /**
+     * Get the builder's name read from the file.
+     * @return the builder's name
+     */
+    String getBuilderName() {
+        return builderName;
+    }
+
+    /**
+     * Get the builder's inventory read from the file.
+     * @return the inventory
+     */
+    List<Block> getInventory() {
+        return inventory;
+    }
+
+    /**
+     * Get the linked tiles read from the file, indexed by tile ID.
+     * @return the tiles
+     */
+    Tile[] getTiles() {
+        return tiles;
+    }
+
+    /**
+     * Read the whole file, checking it in the same order as
+     * WorldMap(String).
+     * @throws WorldMapFormatException if the file is incorrectly formatted
+     * @throws TooHighException if a tile would have too many blocks, or
+     *         ground blocks that are too high
+     * @throws NoExitException if Tile.addExit throws a NoExitException
+     *         (should not be possible)
+     */
+    void read() throws WorldMapFormatException, TooHighException,
+            NoExitException {
+        // read in starting position
+        readLineOrThrow("File ended abruptly");
+        long x = parseInt(lineStart, lineEnd);
+        if (x == NOT_AN_INT) {
+            throw new WorldMapFormatException(errorOnLine()
+                    + "Invalid integer for starting position x");
+        }
+
+        readLineOrThrow("File ended abruptly");
+        long y = parseInt(lineStart, lineEnd);
+        if (y == NOT_AN_INT) {
+            throw new WorldMapFormatException(errorOnLine()
+                    + "Invalid integer for starting position y");
+        }
+
+        startPosition = new Position((int) x, (int) y);
+
+        // read builder information
+        readLineOrThrow("File ended abruptly");
+        builderName = decode(lineStart, lineEnd);
+
+        readLineOrThrow("File ended abruptly");
+        inventory = new ArrayList<>();
+        readBlocks(lineStart, lineEnd, inventory);
+
+        readBlankLineOrThrow("File ended abruptly after inventory",
+                "No blank line following inventory");
+
+        int numTiles = readTotal();
+
+        tiles = new Tile[numTiles];
+        readSection(false, "Missing tile under 'total:N'");
+
+        for (int i = 0; i < tiles.length; i++) {
+            if (tiles[i] == null) {
+                throw new WorldMapFormatException("Missing entry"
+                        + " for tile with ID " + i);
+            }
+        }
+
+        // blank line, followed by an exits header
+        readBlankLineOrThrow("File ends abruptly after tile entries.",
+                "Missing blank line "
+                        + "after tile entries (or too many entries).");
+
+        readLineOrThrow("File ends abruptly after tile entries.");
+        if (!lineEquals(EXITS)) {
+            throw new WorldMapFormatException(errorOnLine()
+                    + "Missing 'exits' token.");
+        }
+
+        // parse the exits for each Tile
+        hasExitLine = new boolean[numTiles];
+        readSection(true, "Missing tile under 'exits'");
+
+        for (int i = 0; i < numTiles; i++) {
+            if (!hasExitLine[i]) {
+                throw new WorldMapFormatException("Missing exit entry"
+                        + "for tile." + i);
+            }
+        }
+
+        if (position < bytes.limit()) {
+            throw new WorldMapFormatException(errorOnLine()
+                    + "Extra content in file.");
+        }
+    }
+
+    /**
+     * Read the N tile entries or exit entries following the current line,
+     * parsing them in parallel. <br>
+     * Tile entries are stored in tiles, and exit entries are added to the
+     * tiles and marked in hasExitLine. If several entries have the same
+     * tile ID, tasks may write to the same element of tiles or the same
+     * tile at once. But then some tile ID has no entry, so the map is
+     * rejected once the section has been read.
+     * @param exits whether to read exit entries (otherwise tile entries)
+     * @param errorMsgFileEnd the error message if the file ends before N
+     *         entries
+     * @throws WorldMapFormatException if an entry is incorrectly formatted
+     *         or the file ends
+     * @throws TooHighException if Tile(List) would throw one
+     * @throws NoExitException if Tile.addExit throws a NoExitException
+     *         (should not be possible)
+     */
+    private void readSection(boolean exits, String errorMsgFileEnd)
+            throws WorldMapFormatException, TooHighException,
+            NoExitException {
+        // every line but the last has at least a line separator
+        int capacity = Math.min(tiles.length, bytes.limit() - position);
+        int[] starts = new int[capacity];
+        int[] ends = new int[capacity];
+
+        int firstLineNumber = lineNumber + 1;
+        int count = 0;
+        while (count < tiles.length && readLine()) {
+            starts[count] = lineStart;
+            ends[count] = lineEnd;
+            count++;
+        }
+
+        BlockWorldException error = new SectionTask(exits, starts, ends,
+                firstLineNumber, 0, count).invoke();
+        if (error instanceof TooHighException) {
+            throw (TooHighException) error;
+        } else if (error instanceof NoExitException) {
+            throw (NoExitException) error;
+        } else if (error != null) {
+            throw (WorldMapFormatException) error;
+        }
+
+        if (count < tiles.length) {
+            throw new WorldMapFormatException(errorOnLine()
+                    + errorMsgFileEnd);
+        }
+    }
+
+    /**
+     * Get an error string "Error on line {@literal<line-number>}: " for the
+     * current line.
+     * @return an error string
+     */
+    private String errorOnLine() {
+        return errorOnLine(lineNumber);
+    }
+
+    /**
+     * Get an error string "Error on line {@literal<line-number>}: ".
+     * @param lineNumber the line number
+     * @return an error string
+     */
+    private static String errorOnLine(int lineNumber) {
+        return "Error on line " + lineNumber + ": ";
+    }
+
+    /**
+     * Read the next line into lineStart and lineEnd, or throw an exception
+     * with the message errorMsg if the file has ended.
+     * @param errorMsg the error message if the file has ended
+     * @throws WorldMapFormatException if the file has ended
+     */
+    private void readLineOrThrow(String errorMsg)
+            throws WorldMapFormatException {
+        if (!readLine()) {
+            throw new WorldMapFormatException(errorOnLine() + errorMsg);
+        }
+    }
+
+    /**
+     * Read the next line into lineStart and lineEnd, if the file has not
+     * ended. <br>
+     * Lines end at "\n", "\r" or "\r\n", as for BufferedReader.readLine().
+     * @return true if a line was read, false if the file has ended
+     */
+    private boolean readLine() {
+        int limit = bytes.limit();
+        if (position >= limit) {
+            return false;
+        }
+
+        int end = position;
+        byte b = 0;
+        while (end < limit && (b = bytes.get(end)) != '\n' && b != '\r') {
+            end++;
+        }
+
+        lineStart = position;
+        lineEnd = end;
+        if (end == limit) {
+            position = limit;
+        } else if (b == '\r' && end + 1 < limit && bytes.get(end + 1) == '\n') {
+            position = end + 2;
+        } else {
+            position = end + 1;
+        }
+        lineNumber++;
+        return true;
+    }
+
+    /**
+     * Read a blank line, or throw an exception if the file has ended or
+     * the next line is not blank.
+     * @param errorMsgFileEnd the error message if the file has ended
+     * @param errorMsgNotBlank the error message if the line is not blank
+     * @throws WorldMapFormatException if there is no blank line
+     */
+    private void readBlankLineOrThrow(String errorMsgFileEnd,
+                                      String errorMsgNotBlank)
+            throws WorldMapFormatException {
+        readLineOrThrow(errorMsgFileEnd);
+        if (lineEnd != lineStart) {
+            // the error is reported on the line before, as by LineReader
+            lineNumber--;
+            throw new WorldMapFormatException(errorOnLine()
+                    + errorMsgNotBlank);
+        }
+    }
+
+    /**
+     * Read the "total:N" line.
+     * @return N
+     * @throws WorldMapFormatException if the line is incorrectly formatted
+     */
+    private int readTotal() throws WorldMapFormatException {
+        readLineOrThrow("File ended abruptly");
+
+        int colon = indexOf(':', lineStart, lineEnd);
+        if (colon < 0) {
+            throw new WorldMapFormatException(errorOnLine() + "No colon"
+                    + "separating 'total' and N");
+        } else if (indexOf(':', colon + 1, lineEnd) >= 0) {
+            throw new WorldMapFormatException(errorOnLine() + "Multiple"
+                    + " colons on total:N line.");
+        }
+
+        if (!bytesEqual(lineStart, colon, TOTAL)) {
+            throw new WorldMapFormatException(errorOnLine()
+                    + "Missing token 'total' on total:N line.");
+        }
+
+        long numTiles = parseInt(colon + 1, lineEnd);
+        if (numTiles == NOT_AN_INT) {
+            throw new WorldMapFormatException(errorOnLine()
+                    + "In total:N, N is not a valid integer");
+        } else if (numTiles < 0) {
+            throw new WorldMapFormatException(errorOnLine()
+                    + "In total:N, N is negative");
+        } else if (numTiles >= Integer.MAX_VALUE) {
+            throw new WorldMapFormatException("");
+        }
+        return (int) numTiles;
+    }
+
+    /**
+     * Check that a line is a tile entry, and read its tile ID.
+     * @param lineStart the start of the line (inclusive)
+     * @param lineEnd the end of the line (exclusive)
+     * @param lineNumber the line number of the line
+     * @return the tile ID
+     * @throws WorldMapFormatException if the line does not have exactly
+     *         one space, or the tile ID is not between 0 and N - 1
+     */
+    private int readTileId(int lineStart, int lineEnd, int lineNumber)
+            throws WorldMapFormatException {
+        int space = indexOf(' ', lineStart, lineEnd);
+        if (space < 0) {
+            throw new WorldMapFormatException(errorOnLine(lineNumber)
+                    + "No space in tile entry");
+        } else if (indexOf(' ', space + 1, lineEnd) >= 0) {
+            throw new WorldMapFormatException(errorOnLine(lineNumber)
+                    + "Too many spaces in tile entry");
+        }
+
+        long tileId = parseInt(lineStart, space);
+        if (tileId == NOT_AN_INT) {
+            throw new WorldMapFormatException(errorOnLine(lineNumber)
+                    + "Tile ID  is not a valid integer");
+        } else if (tileId < 0) {
+            throw new WorldMapFormatException(errorOnLine(lineNumber)
+                    + "Tile ID is negative");
+        } else if (tileId >= tiles.length) {
+            throw new WorldMapFormatException(errorOnLine(lineNumber)
+                    + "Tile ID is too high");
+        }
+        return (int) tileId;
+    }
+
+    /**
+     * Create a tile from the blocks of a tile entry.
+     * @param lineStart the start of the tile entry (inclusive)
+     * @param lineEnd the end of the tile entry (exclusive)
+     * @param scratch an empty list to collect the blocks in
+     * @return the new tile
+     * @throws WorldMapFormatException if a block name is invalid
+     * @throws TooHighException if Tile(List) would throw one
+     */
+    private Tile readTile(int lineStart, int lineEnd, List<Block> scratch)
+            throws WorldMapFormatException, TooHighException {
+        int space = indexOf(' ', lineStart, lineEnd);
+        readBlocks(space + 1, lineEnd, scratch);
+        try {
+            return new Tile(scratch);
+        } finally {
+            scratch.clear();
+        }
+    }
+
+    /**
+     * Read an exits entry and add the exits to the tiles.
+     * @param lineStart the start of the exits entry (inclusive)
+     * @param lineEnd the end of the exits entry (exclusive)
+     * @return the ID of the tile the exits were added to
+     * @throws WorldMapFormatException if the entry is incorrectly formatted
+     * @throws NoExitException if Tile.addExit throws a NoExitException
+     *         (should not be possible)
+     */
+    private int readTileExits(int lineStart, int lineEnd)
+            throws WorldMapFormatException, NoExitException {
+        int space = indexOf(' ', lineStart, lineEnd);
+        if (space < 0) {
+            throw new WorldMapFormatException("No space in exit line");
+        } else if (indexOf(' ', space + 1, lineEnd) >= 0) {
+            throw new WorldMapFormatException("Too many spaces in exit line");
+        }
+
+        int tileId = checkExitTileId(parseInt(lineStart, space));
+        Tile current = tiles[tileId];
+
+        // trailing commas are ignored (as by String.split)
+        int end = lineEnd;
+        while (end > space + 1 && bytes.get(end - 1) == ',') {
+            end--;
+        }
+
+        int start = space + 1;
+        while (start < end) {
+            int comma = indexOf(',', start, end);
+            int exitEnd = comma < 0 ? end : comma;
+
+            int colon = indexOf(':', start, exitEnd);
+            if (colon < 0) {
+                throw new WorldMapFormatException("Exit line"
+                        + " is missing colon.");
+            } else if (indexOf(':', colon + 1, exitEnd) >= 0) {
+                throw new WorldMapFormatException("Exit line"
+                        + " has too many colons.");
+            }
+
+            int exitIndex = match(start, colon, EXIT_NAMES);
+            if (exitIndex < 0) {
+                throw new WorldMapFormatException("Exit name is "
+                        + "invalid.");
+            }
+
+            int otherTileId = checkExitTileId(parseInt(colon + 1, exitEnd));
+            current.addExit(Tile.exitName(exitIndex), tiles[otherTileId]);
+
+            start = exitEnd + 1;
+        }
+        return tileId;
+    }
+
+    /**
+     * Check that a tile ID in the exits section refers to a tile.
+     * @param tileId the tile ID, or NOT_AN_INT
+     * @return the tile ID
+     * @throws WorldMapFormatException if the tile ID is invalid
+     */
+    private int checkExitTileId(long tileId) throws WorldMapFormatException {
+        if (tileId == NOT_AN_INT) {
+            throw new WorldMapFormatException("Tile id in exit line is not"
+                    + " a valid number");
+        } else if (tileId < 0) {
+            throw new WorldMapFormatException("Tile id in exit line is "
+                    + " negative");
+        } else if (tileId >= tiles.length) {
+            throw new WorldMapFormatException("Tile id in exit line does "
+                    + " not refer to a valid tile");
+        }
+        return (int) tileId;
+    }
+
+    /**
+     * Add the blocks named in a comma separated list to a list of blocks.
+     * <br>
+     * Trailing commas are ignored (as by String.split), so a list of only
+     * commas has no blocks.
+     * @param start the start of the list (inclusive)
+     * @param end the end of the list (exclusive)
+     * @param blocks the list to add the blocks to
+     * @throws WorldMapFormatException if a block name is invalid
+     */
+    private void readBlocks(int start, int end, List<Block> blocks)
+            throws WorldMapFormatException {
+        while (end > start && bytes.get(end - 1) == ',') {
+            end--;
+        }
+
+        while (start < end) {
+            int comma = indexOf(',', start, end);
+            int nameEnd = comma < 0 ? end : comma;
+
+            int ordinal = match(start, nameEnd, BLOCK_NAMES);
+            if (ordinal < 0) {
+                throw new WorldMapFormatException(
+                        "Invalid block name specified");
+            }
+            blocks.add(StandardBlocks.fromOrdinal(ordinal));
+
+            start = nameEnd + 1;
+        }
+    }
+
+    /**
+     * Parse an integer from bytes, accepting exactly what
+     * Integer.parseInt() accepts.
+     * @param start the start of the integer (inclusive)
+     * @param end the end of the integer (exclusive)
+     * @return the integer, or NOT_AN_INT if it is not a valid integer
+     */
+    private long parseInt(int start, int end) {
+        if (start >= end) {
+            return NOT_AN_INT;
+        }
+
+        boolean negative = false;
+        int limit = -Integer.MAX_VALUE;
+        int i = start;
+
+        byte first = bytes.get(i);
+        if (first == '-' || first == '+') {
+            if (first == '-') {
+                negative = true;
+                limit = Integer.MIN_VALUE;
+            }
+            i++;
+            if (i == end) {
+                return NOT_AN_INT;
+            }
+        }
+
+        // accumulate negatively, as Integer.MIN_VALUE has no positive
+        int multiplyMin = limit / 10;
+        int result = 0;
+        for (; i < end; i++) {
+            byte b = bytes.get(i);
+            if (b < 0) {
+                // Integer.parseInt() accepts non-ASCII digits too
+                return parseDecodedInt(start, end);
+            }
+
+            int digit = b - '0';
+            if (digit < 0 || digit > 9 || result < multiplyMin) {
+                return NOT_AN_INT;
+            }
+            result *= 10;
+            if (result < limit + digit) {
+                return NOT_AN_INT;
+            }
+            result -= digit;
+        }
+        return negative ? result : -result;
+    }
+
+    /**
+     * Decode bytes as a String and parse it with Integer.parseInt().
+     * @param start the start of the integer (inclusive)
+     * @param end the end of the integer (exclusive)
+     * @return the integer, or NOT_AN_INT if it is not a valid integer
+     */
+    private long parseDecodedInt(int start, int end) {
+        try {
+            return Integer.parseInt(decode(start, end));
+        } catch (NumberFormatException nfe) {
+            return NOT_AN_INT;
+        }
+    }
+
+    /**
+     * Decode bytes as a String.
+     * @param start the start of the String (inclusive)
+     * @param end the end of the String (exclusive)
+     * @return the decoded String
+     */
+    private String decode(int start, int end) {
+        byte[] copy = new byte[end - start];
+        for (int i = 0; i < copy.length; i++) {
+            copy[i] = bytes.get(start + i);
+        }
+        return new String(copy, charset);
+    }
+
+    /**
+     * Find the first occurrence of an ASCII character in a range of bytes.
+     * @param c the character to find
+     * @param start the start of the range (inclusive)
+     * @param end the end of the range (exclusive)
+     * @return the index of the character, or -1 if it is not in the range
+     */
+    private int indexOf(char c, int start, int end) {
+        for (int i = start; i < end; i++) {
+            if (bytes.get(i) == c) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Find which of a list of names a range of bytes is equal to.
+     * @param start the start of the range (inclusive)
+     * @param end the end of the range (exclusive)
+     * @param names the names to compare against
+     * @return the index of the matching name, or -1 if none match
+     */
+    private int match(int start, int end, byte[][] names) {
+        for (int i = 0; i < names.length; i++) {
+            if (bytesEqual(start, end, names[i])) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Check if the current line is equal to the given bytes.
+     * @param expected the expected bytes
+     * @return true if the line is equal to expected
+     */
+    private boolean lineEquals(byte[] expected) {
+        return bytesEqual(lineStart, lineEnd, expected);
+    }
+
+    /**
+     * Check if a range of bytes is equal to the given bytes.
+     * @param start the start of the range (inclusive)
+     * @param end the end of the range (exclusive)
+     * @param expected the expected bytes
+     * @return true if the range is equal to expected
+     */
+    private boolean bytesEqual(int start, int end, byte[] expected) {
+        if (end - start != expected.length) {
+            return false;
+        }
+        for (int i = 0; i < expected.length; i++) {
+            if (bytes.get(start + i) != expected[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Encode an ASCII String as bytes.
+     * @param str the String
+     * @return the bytes of str
+     */
+    private static byte[] asciiBytes(String str) {
+        return str.getBytes(StandardCharsets.US_ASCII);
+    }
+}
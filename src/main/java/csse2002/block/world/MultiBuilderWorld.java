@@ -0,0 +1,262 @@
+package csse2002.block.world;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Many builders acting on one world map at the same time, each driven by
+ * its own thread. <br>
+ * Tiles are guarded by striped locks: each tile position hashes to one of a
+ * fixed number of locks. An operation holds the locks of every tile it
+ * reads or changes (one tile for dig and drop, two for moving a builder or
+ * a block), always taking the lower numbered lock first, so operations on
+ * different parts of the map run in parallel without deadlocking. <br>
+ * While a MultiBuilderWorld is in use:
+ * <ul>
+ *     <li> tiles must only be changed through its methods, and their exits
+ *          and the map's tiles must not change. </li>
+ *     <li> each builder must only be used by one thread at a time (its
+ *          inventory and current tile are not guarded). </li>
+ * </ul>
+ * Outcomes are the same as Action.applyAction() for a map with that
+ * builder, and are returned instead of thrown.
+ * @serial exclude
+ */
+public class MultiBuilderWorld {
+
+    /**
+     * The default number of locks.
+     */
+    public static final int DEFAULT_STRIPES = 1024;
+
+    // multiplier used to spread packed positions over the locks
+    private static final long MIX = 0x9E3779B97F4A7C15L;
+
+    // the map the builders act on
+    private final WorldMap map;
+
+    // the locks, and the shift that maps a mixed position to a lock
+    private final Object[] stripes;
+    private final int stripeShift;
+
+    // the lock of each tile in the map, by index in breadth-first-search
+    // order
+    private final int[] tileStripes;
+
+    // the builders, starting with map.getBuilder()
+    private final List<Builder> builders;
+
+    /**
+     * Create a multi builder world with the default number of locks.
+     * @param map the map, whose builder is the first builder
+     * @require map != null
+     */
+    public MultiBuilderWorld(WorldMap map) {
+        this(map, DEFAULT_STRIPES);
+    }
+
+    /**
+     * Create a multi builder world.
+     * @param map the map, whose builder is the first builder
+     * @param minStripes the smallest number of locks to use, rounded up to
+     *                   a power of two
+     * @require map != null &amp;&amp; minStripes &gt; 0
+     */
+    public MultiBuilderWorld(WorldMap map, int minStripes) {
+        this.map = map;
+
+        int bits = 32 - Integer.numberOfLeadingZeros(
+                Math.max(minStripes, 2) - 1);
+        stripes = new Object[1 << bits];
+        for (int i = 0; i < stripes.length; i++) {
+            stripes[i] = new Object();
+        }
+        stripeShift = Long.SIZE - bits;
+
+        SparseTileArray tileArray = map.getTileArray();
+        tileStripes = new int[tileArray.size()];
+        for (int i = 0; i < tileStripes.length; i++) {
+            long position = TileIndex.pack(tileArray.getX(i),
+                    tileArray.getY(i));
+            tileStripes[i] = (int) ((position * MIX) >>> stripeShift);
+        }
+
+        builders = new ArrayList<>();
+        builders.add(map.getBuilder());
+    }
+
+    /**
+     * Get the map the builders act on.
+     * @return the map
+     */
+    public WorldMap getMap() {
+        return map;
+    }
+
+    /**
+     * Add a builder with an empty inventory.
+     * @param name the builder's name
+     * @param startingTile the tile the builder starts on
+     * @return the builder
+     * @require startingTile is a tile of getMap()
+     */
+    public Builder addBuilder(String name, Tile startingTile) {
+        Builder builder = new Builder(name, startingTile);
+        synchronized (builders) {
+            builders.add(builder);
+        }
+        return builder;
+    }
+
+    /**
+     * Add a builder with a starting inventory.
+     * @param name the builder's name
+     * @param startingTile the tile the builder starts on
+     * @param startingInventory the builder's starting inventory
+     * @return the builder
+     * @throws InvalidBlockException if a block in the inventory is not
+     *         carryable
+     * @require startingTile is a tile of getMap()
+     */
+    public Builder addBuilder(String name, Tile startingTile,
+                              List<Block> startingInventory)
+            throws InvalidBlockException {
+        Builder builder = new Builder(name, startingTile, startingInventory);
+        synchronized (builders) {
+            builders.add(builder);
+        }
+        return builder;
+    }
+
+    /**
+     * Get the builders, in the order they were added.
+     * @return a copy of the list of builders
+     */
+    public List<Builder> getBuilders() {
+        synchronized (builders) {
+            return Collections.unmodifiableList(new ArrayList<>(builders));
+        }
+    }
+
+    /**
+     * Perform an action for a builder, as Action.applyAction() does.
+     * @param builder the builder performing the action
+     * @param action the action
+     * @return the outcome of the action
+     * @require builder != null &amp;&amp; action != null
+     */
+    public ActionOutcome apply(Builder builder, Action action) {
+        String secondary = action.getSecondaryAction();
+        switch (action.getPrimaryAction()) {
+            case Action.DIG:
+                return dig(builder);
+            case Action.DROP:
+                int index;
+                try {
+                    index = Integer.parseInt(secondary);
+                } catch (NumberFormatException numberFormat) {
+                    return ActionOutcome.INVALID_ACTION;
+                }
+                return drop(builder, index);
+            case Action.MOVE_BLOCK:
+            case Action.MOVE_BUILDER:
+                int direction = secondary == null ? -1
+                        : Tile.exitIndex(secondary);
+                if (direction < 0) {
+                    return ActionOutcome.INVALID_ACTION;
+                }
+                return action.getPrimaryAction() == Action.MOVE_BLOCK
+                        ? moveBlock(builder, direction)
+                        : moveBuilder(builder, direction);
+            default:
+                return ActionOutcome.INVALID_ACTION;
+        }
+    }
+
+    /**
+     * Move a builder through an exit of its current tile.
+     * @param builder the builder
+     * @param direction Tile.NORTH, EAST, SOUTH or WEST
+     * @return the outcome, as for Builder.tryMoveTo()
+     * @require builder != null
+     */
+    public ActionOutcome moveBuilder(Builder builder, int direction) {
+        Tile current = builder.getCurrentTile();
+        Tile target = current.getExit(direction);
+        if (target == null) {
+            return ActionOutcome.NO_EXIT;
+        }
+
+        int first = stripeOf(current);
+        int second = stripeOf(target);
+        synchronized (stripes[Math.min(first, second)]) {
+            synchronized (stripes[Math.max(first, second)]) {
+                return builder.tryMoveTo(target);
+            }
+        }
+    }
+
+    /**
+     * Move the top block of a builder's current tile through one of its
+     * exits.
+     * @param builder the builder
+     * @param direction Tile.NORTH, EAST, SOUTH or WEST
+     * @return the outcome, as for Tile.tryMoveBlock()
+     * @require builder != null
+     */
+    public ActionOutcome moveBlock(Builder builder, int direction) {
+        Tile current = builder.getCurrentTile();
+        Tile target = current.getExit(direction);
+        if (target == null) {
+            return ActionOutcome.NO_EXIT;
+        }
+
+        int first = stripeOf(current);
+        int second = stripeOf(target);
+        synchronized (stripes[Math.min(first, second)]) {
+            synchronized (stripes[Math.max(first, second)]) {
+                return current.tryMoveBlock(direction);
+            }
+        }
+    }
+
+    /**
+     * Dig on a builder's current tile.
+     * @param builder the builder
+     * @return the outcome, as for Builder.tryDigOnCurrentTile()
+     * @require builder != null
+     */
+    public ActionOutcome dig(Builder builder) {
+        synchronized (stripes[stripeOf(builder.getCurrentTile())]) {
+            return builder.tryDigOnCurrentTile();
+        }
+    }
+
+    /**
+     * Drop a block from a builder's inventory onto its current tile.
+     * @param builder the builder
+     * @param inventoryIndex the index in the inventory to place
+     * @return the outcome, as for Builder.tryDropFromInventory()
+     * @require builder != null
+     */
+    public ActionOutcome drop(Builder builder, int inventoryIndex) {
+        synchronized (stripes[stripeOf(builder.getCurrentTile())]) {
+            return builder.tryDropFromInventory(inventoryIndex);
+        }
+    }
+
+    /**
+     * Get the lock guarding a tile.
+     * @param tile the tile
+     * @return the index of the lock in stripes
+     */
+    private int stripeOf(Tile tile) {
+        int index = map.getTileArray().indexOf(tile);
+        if (index >= 0 && index < tileStripes.length) {
+            return tileStripes[index];
+        }
+        // not a tile of the map, so it has no position
+        return (int) ((System.identityHashCode(tile) * MIX) >>> stripeShift);
+    }
+}
@@ -0,0 +1,538 @@
+package csse2002.block.world;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * Performs a log of actions by many builders in parallel, with the same
+ * results as performing them one at a time in order (e.g. with
+ * MultiBuilderWorld.apply(), or Action.processActions() when every action
+ * is by the map's builder). <br>
+ * The log is performed in windows of WINDOW_SIZE actions. The actions in a
+ * window are partitioned by the chunk (see {@link TileIndex}) their builder
+ * starts the window in, keeping each builder's actions in one partition and
+ * in order. Partitions run speculatively in parallel: before an action
+ * touches a tile, its partition claims the tile's chunk. If the chunk is
+ * already claimed by another partition (e.g. a MOVE_BLOCK across a chunk
+ * boundary into another partition's region), the partition stops. <br>
+ * Once all partitions stop, every action before the earliest stopped action
+ * is kept. Partitions only touched their own builders and chunks, so those
+ * actions give the same results as in order. Later actions are undone, and
+ * the stopped action is performed on its own before the next window
+ * starts. <br>
+ * As every conflict undoes the rest of its window, the window shrinks
+ * after a conflict (down to MIN_WINDOW_SIZE actions) and grows back after
+ * windows without one. A conflict in a window of MIN_WINDOW_SIZE actions
+ * means conflicts are too frequent to gain from running in parallel, so
+ * the next WINDOW_SIZE actions are performed in order on one thread. <br>
+ * Actions are performed without the world's locks, so the world must not be
+ * used by other threads during execute().
+ * @serial exclude
+ */
+public class ParallelActionExecutor {
+
+    /**
+     * The number of actions performed speculatively together.
+     */
+    public static final int WINDOW_SIZE = 4096;
+
+    /**
+     * The smallest number of actions performed speculatively together,
+     * after conflicts.
+     */
+    public static final int MIN_WINDOW_SIZE = 64;
+
+    // the number of partitions per thread of the pool
+    private static final int PARTITIONS_PER_THREAD = 4;
+
+    // the tile array of the world's map
+    private final SparseTileArray tileArray;
+
+    // the pool partitions run in
+    private final ForkJoinPool pool;
+
+    // the number of partitions in a window
+    private final int partitionCount;
+
+    // the chunk of each tile in the map, numbered from 0, by index in
+    // breadth-first-search order
+    private final int[] tileChunks;
+
+    // the partition + 1 that has claimed each chunk in this window, or 0
+    private final AtomicIntegerArray chunkOwners;
+
+    // the number of actions performed on their own after a conflict
+    private long conflicts;
+
+    /**
+     * Create an executor that runs in the common fork join pool.
+     * @param world the world the actions are performed in
+     * @require world != null
+     */
+    public ParallelActionExecutor(MultiBuilderWorld world) {
+        this(world, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Create an executor.
+     * @param world the world the actions are performed in
+     * @param pool the pool to run partitions in
+     * @require world != null &amp;&amp; pool != null
+     */
+    public ParallelActionExecutor(MultiBuilderWorld world, ForkJoinPool pool) {
+        this.pool = pool;
+        tileArray = world.getMap().getTileArray();
+        partitionCount = Math.max(1, pool.getParallelism()
+                * PARTITIONS_PER_THREAD);
+
+        Map<Long, Integer> chunkNumbers = new HashMap<>();
+        tileChunks = new int[tileArray.size()];
+        for (int i = 0; i < tileChunks.length; i++) {
+            long key = TileIndex.chunkKey(tileArray.getX(i),
+                    tileArray.getY(i));
+            Integer number = chunkNumbers.get(key);
+            if (number == null) {
+                number = chunkNumbers.size();
+                chunkNumbers.put(key, number);
+            }
+            tileChunks[i] = number;
+        }
+        chunkOwners = new AtomicIntegerArray(chunkNumbers.size());
+    }
+
+    /**
+     * Get the number of actions that were performed on their own because
+     * of a conflict between partitions.
+     * @return the number of conflicts
+     */
+    public long getConflicts() {
+        return conflicts;
+    }
+
+    /**
+     * Perform a log of actions. Action i is performed by builder i.
+     * @param builders the builder performing each action
+     * @param actions the actions
+     * @return the outcome of each action
+     * @require builders.size() == actions.size()
+     * @require every builder is one of the world's builders, not used by
+     *          any other thread
+     */
+    public ActionOutcome[] execute(List<Builder> builders,
+                                   List<Action> actions) {
+        int count = actions.size();
+        Builder[] entryBuilders = builders.toArray(new Builder[count]);
+        Action[] entryActions = actions.toArray(new Action[count]);
+        ActionOutcome[] outcomes = new ActionOutcome[count];
+
+        int start = 0;
+        int windowSize = WINDOW_SIZE;
+        while (start < count) {
+            int end = Math.min(count, start + windowSize);
+            Partition[] partitions = partition(entryBuilders, start, end);
+
+            List<Partition> running = new ArrayList<>();
+            for (Partition partition : partitions) {
+                if (partition != null) {
+                    partition.setup(entryBuilders, entryActions, outcomes);
+                    running.add(partition);
+                }
+            }
+            if (running.size() == 1) {
+                // nothing to conflict with
+                running.get(0).performUnclaimed();
+                start = end;
+                windowSize = Math.min(WINDOW_SIZE, windowSize * 2);
+                continue;
+            }
+            pool.invoke(new RecursiveAction() {
+                @Override
+                protected void compute() {
+                    invokeAll(running);
+                }
+            });
+
+            int stop = end;
+            for (Partition partition : running) {
+                stop = Math.min(stop, partition.stop);
+            }
+            for (Partition partition : running) {
+                partition.undoFrom(stop);
+                partition.releaseClaims();
+            }
+
+            if (stop < end) {
+                // perform the conflicting action in order, on its own
+                outcomes[stop] = perform(entryBuilders[stop],
+                        entryActions[stop], -1, null);
+                conflicts++;
+                start = stop + 1;
+
+                if (windowSize == MIN_WINDOW_SIZE) {
+                    // conflicts are too frequent to run in parallel
+                    int sequentialEnd = Math.min(count, start + WINDOW_SIZE);
+                    performInOrder(entryBuilders, entryActions, outcomes,
+                            start, sequentialEnd);
+                    start = sequentialEnd;
+                } else {
+                    windowSize = Math.max(MIN_WINDOW_SIZE, windowSize / 4);
+                }
+            } else {
+                start = end;
+                windowSize = Math.min(WINDOW_SIZE, windowSize * 2);
+            }
+        }
+        return outcomes;
+    }
+
+    /**
+     * Perform a range of the log in order on this thread, without claiming
+     * chunks or recording undo records.
+     * @param builders the builder performing each action
+     * @param actions the actions
+     * @param outcomes the outcome of each action
+     * @param start the first action to perform
+     * @param end the action after the last one to perform
+     */
+    private void performInOrder(Builder[] builders, Action[] actions,
+                                ActionOutcome[] outcomes, int start,
+                                int end) {
+        for (int entry = start; entry < end; entry++) {
+            outcomes[entry] = perform(builders[entry], actions[entry], -1,
+                    null);
+        }
+    }
+
+    /**
+     * Split the actions of a window into partitions, by the chunk each
+     * builder is in at the start of the window.
+     * @param builders the builder performing each action
+     * @param start the first action of the window
+     * @param end the action after the window
+     * @return the partitions, null if a partition has no actions
+     */
+    private Partition[] partition(Builder[] builders, int start, int end) {
+        Partition[] partitions = new Partition[partitionCount];
+        Map<Builder, Partition> builderPartitions = new IdentityHashMap<>();
+        for (int entry = start; entry < end; entry++) {
+            Partition partition = builderPartitions.get(builders[entry]);
+            if (partition == null) {
+                int chunk = chunkOf(builders[entry].getCurrentTile());
+                int number = chunk < 0 ? 0 : Math.floorMod(chunk * 0x9E3779B1,
+                        partitionCount);
+                partition = partitions[number];
+                if (partition == null) {
+                    partition = new Partition(number, end);
+                    partitions[number] = partition;
+                }
+                builderPartitions.put(builders[entry], partition);
+            }
+            partition.add(entry);
+        }
+        return partitions;
+    }
+
+    /**
+     * Get the chunk of a tile.
+     * @param tile the tile
+     * @return the chunk number, or -1 if the tile is not in the map
+     */
+    private int chunkOf(Tile tile) {
+        int index = tileArray.indexOf(tile);
+        return index >= 0 && index < tileChunks.length
+                ? tileChunks[index] : -1;
+    }
+
+    /**
+     * Perform an action, as MultiBuilderWorld.apply() does, without locks.
+     * <br>
+     * When a partition is given, the chunks of the tiles the action touches
+     * are claimed first, and the action is recorded so that it can be
+     * undone.
+     * @param builder the builder performing the action
+     * @param action the action
+     * @param entry the index of the action in the log
+     * @param partition the partition performing the action, or null to
+     *                  perform it without claims
+     * @return the outcome, or null if a chunk could not be claimed
+     */
+    private ActionOutcome perform(Builder builder, Action action, int entry,
+                                  Partition partition) {
+        String secondary = action.getSecondaryAction();
+        int primary = action.getPrimaryAction();
+        int value = 0;
+        switch (primary) {
+            case Action.DIG:
+                break;
+            case Action.DROP:
+                try {
+                    value = Integer.parseInt(secondary);
+                } catch (NumberFormatException numberFormat) {
+                    return ActionOutcome.INVALID_ACTION;
+                }
+                break;
+            case Action.MOVE_BLOCK:
+            case Action.MOVE_BUILDER:
+                value = secondary == null ? -1 : Tile.exitIndex(secondary);
+                if (value < 0) {
+                    return ActionOutcome.INVALID_ACTION;
+                }
+                break;
+            default:
+                return ActionOutcome.INVALID_ACTION;
+        }
+
+        Tile current = builder.getCurrentTile();
+        Tile target = primary == Action.MOVE_BLOCK
+                || primary == Action.MOVE_BUILDER
+                ? current.getExit(value) : null;
+
+        if (partition != null) {
+            if (!partition.claim(current)
+                    || (target != null && !partition.claim(target))) {
+                return null;
+            }
+            partition.record(entry, builder, current, target,
+                    primary == Action.DIG || primary == Action.DROP);
+        }
+
+        switch (primary) {
+            case Action.DIG:
+                return builder.tryDigOnCurrentTile();
+            case Action.DROP:
+                return builder.tryDropFromInventory(value);
+            case Action.MOVE_BLOCK:
+                return current.tryMoveBlock(value);
+            default:
+                return builder.tryMoveTo(target);
+        }
+    }
+
+    /**
+     * The actions of a window performed by one group of builders, and how
+     * to undo them.
+     */
+    @SuppressWarnings("serial")
+    private final class Partition extends RecursiveAction {
+
+        // the partition number
+        private final int number;
+
+        // the log indices of the actions, in order
+        private int[] entries = new int[16];
+        private int entryCount = 0;
+
+        // the log
+        private Builder[] builders;
+        private Action[] actions;
+        private ActionOutcome[] outcomes;
+
+        // the first action not performed, or the end of the window
+        private int stop;
+
+        // the chunks this partition has claimed
+        private final List<Integer> claims = new ArrayList<>();
+
+        // undo records of the actions performed, in order
+        private final List<Undo> undoLog = new ArrayList<>();
+
+        /**
+         * Create an empty partition.
+         * @param number the partition number
+         * @param end the end of the window
+         */
+        Partition(int number, int end) {
+            this.number = number;
+            this.stop = end;
+        }
+
+        /**
+         * Add an action to the partition.
+         * @param entry the index of the action in the log
+         */
+        void add(int entry) {
+            if (entryCount == entries.length) {
+                entries = Arrays.copyOf(entries, entryCount * 2);
+            }
+            entries[entryCount++] = entry;
+        }
+
+        /**
+         * Give the partition the log.
+         * @param builders the builder performing each action
+         * @param actions the actions
+         * @param outcomes the outcome of each action
+         */
+        void setup(Builder[] builders, Action[] actions,
+                   ActionOutcome[] outcomes) {
+            this.builders = builders;
+            this.actions = actions;
+            this.outcomes = outcomes;
+        }
+
+        /**
+         * Perform the actions in order, until a chunk cannot be claimed.
+         */
+        @Override
+        protected void compute() {
+            for (int i = 0; i < entryCount; i++) {
+                int entry = entries[i];
+                ActionOutcome outcome = perform(builders[entry],
+                        actions[entry], entry, this);
+                if (outcome == null) {
+                    stop = entry;
+                    return;
+                }
+                outcomes[entry] = outcome;
+            }
+        }
+
+        /**
+         * Perform all the actions in order, without claiming chunks or
+         * recording undo records.
+         */
+        void performUnclaimed() {
+            for (int i = 0; i < entryCount; i++) {
+                int entry = entries[i];
+                outcomes[entry] = perform(builders[entry], actions[entry],
+                        entry, null);
+            }
+        }
+
+        /**
+         * Claim the chunk of a tile for this partition.
+         * @param tile the tile
+         * @return true if the chunk is claimed by this partition
+         */
+        boolean claim(Tile tile) {
+            int chunk = chunkOf(tile);
+            if (chunk < 0) {
+                return false;
+            }
+            int owner = chunkOwners.get(chunk);
+            if (owner == number + 1) {
+                return true;
+            }
+            if (owner == 0 && chunkOwners.compareAndSet(chunk, 0,
+                    number + 1)) {
+                claims.add(chunk);
+                return true;
+            }
+            return false;
+        }
+
+        /**
+         * Record the state an action is about to change.
+         * @param entry the index of the action in the log
+         * @param builder the builder performing the action
+         * @param current the builder's tile
+         * @param target the other tile the action touches, or null
+         * @param changesInventory whether the action may change the
+         *                         builder's inventory
+         */
+        void record(int entry, Builder builder, Tile current, Tile target,
+                    boolean changesInventory) {
+            undoLog.add(new Undo(entry, builder, current, target,
+                    changesInventory));
+        }
+
+        /**
+         * Undo the actions at or after an index in the log, latest first.
+         * @param first the index of the first action to undo
+         */
+        void undoFrom(int first) {
+            for (int i = undoLog.size() - 1; i >= 0; i--) {
+                Undo undo = undoLog.get(i);
+                if (undo.entry < first) {
+                    break;
+                }
+                undo.apply();
+            }
+        }
+
+        /**
+         * Release the chunks this partition has claimed.
+         */
+        void releaseClaims() {
+            for (int chunk : claims) {
+                chunkOwners.set(chunk, 0);
+            }
+        }
+    }
+
+    /**
+     * The state an action may change, saved before performing it.
+     */
+    private static final class Undo {
+
+        // the index of the action in the log
+        private final int entry;
+
+        // the builder, its tile and its inventory (or null if the action
+        // does not change it)
+        private final Builder builder;
+        private final Tile current;
+        private final List<Block> inventory;
+
+        // the blocks of the builder's tile
+        private final Tile.SavedBlocks currentBlocks;
+
+        // the other tile the action touches and its blocks, or null
+        private final Tile target;
+        private final Tile.SavedBlocks targetBlocks;
+
+        /**
+         * Save the state an action may change.
+         * @param entry the index of the action in the log
+         * @param builder the builder performing the action
+         * @param current the builder's tile
+         * @param target the other tile the action touches, or null
+         * @param changesInventory whether the action may change the
+         *                         builder's inventory
+         */
+        Undo(int entry, Builder builder, Tile current, Tile target,
+             boolean changesInventory) {
+            this.entry = entry;
+            this.builder = builder;
+            this.current = current;
+            this.inventory = changesInventory ? builder.saveInventory() : null;
+            this.currentBlocks = current.saveBlocks();
+            this.target = target;
+            this.targetBlocks = target == null ? null : target.saveBlocks();
+        }
+
+        /**
+         * Put back the saved state, as one change to the snapshot log.
+         */
+        void apply() {
+            SnapshotLog log = current.getSnapshotLog();
+            if (log == null) {
+                restore();
+            } else {
+                log.write(current, target, builder, () -> {
+                    restore();
+                    return ActionOutcome.SUCCESS;
+                });
+            }
+        }
+
+        /**
+         * Put back the saved state, without recording it in the snapshot
+         * log.
+         */
+        private void restore() {
+            if (target != null) {
+                target.restoreBlocks(targetBlocks);
+            }
+            current.restoreBlocks(currentBlocks);
+            builder.restore(current, inventory);
+        }
+    }
+}
@@ -0,0 +1,335 @@
+package csse2002.block.world;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Finds the tiles linked to a starting tile, and their positions, as
+ * SparseTileArray.addLinkedTiles() does, expanding large breadth-first-search
+ * levels in parallel. <br>
+ * The search is level synchronous: all tiles of one level are expanded
+ * before the next level starts. Small levels are expanded exactly as the
+ * sequential search does. Levels of at least PARALLEL_LEVEL tiles are
+ * split into tasks of GRAIN tiles, which check the tiles they find against
+ * the index of earlier levels (only read while a level is expanded), and
+ * claim new tiles by compare-and-set in two open addressing tables for the
+ * level, one by tile identity and one by position. A tile found at two
+ * positions, or two tiles found at one position, is a conflict. <br>
+ * A tile found more than once in a level keeps the rank (its parent's place
+ * in the level * 4 + exit index) of the first time the sequential search
+ * would find it, so adding each level's tiles to the index in order of rank
+ * gives exactly the sequential order. <br>
+ * Conflicts found in parallel are only detected, not described: link()
+ * returns null, and the caller repeats the sequential search to throw the
+ * exact exception.
+ * @serial exclude
+ */
+final class ParallelTileLinker {
+
+    /**
+     * A new tile found by a level expanded in parallel, at its position.
+     */
+    private static final class Claim {
+
+        // the tile and its position
+        private final Tile tile;
+        private final int x;
+        private final int y;
+
+        // the lowest rank the tile was found with. Only lowered, by RANK,
+        // which can only update it if it is not private.
+        volatile int rank;
+
+        /**
+         * Create a claim.
+         * @param tile the tile
+         * @param x the x coordinate
+         * @param y the y coordinate
+         * @param rank the rank the tile was found with
+         */
+        private Claim(Tile tile, int x, int y, int rank) {
+            this.tile = tile;
+            this.x = x;
+            this.y = y;
+            this.rank = rank;
+        }
+    }
+
+    // lowers Claim.rank
+    private static final AtomicIntegerFieldUpdater<Claim> RANK =
+            AtomicIntegerFieldUpdater.newUpdater(Claim.class, "rank");
+
+    // the smallest level expanded in parallel
+    static final int PARALLEL_LEVEL = 1 << 10;
+
+    // the number of tiles of a level expanded by each task
+    private static final int GRAIN = 1 << 8;
+
+    // the change in x and y of each exit, by exit index
+    private static final int[] DIRECTIONS_X = {0, 1, 0, -1};
+    private static final int[] DIRECTIONS_Y = {-1, 0, 1, 0};
+
+    // multiplier used to spread hash bits (the golden ratio)
+    private static final long MIX = 0x9E3779B97F4A7C15L;
+
+    // the pool large levels are expanded in
+    private final ForkJoinPool pool;
+
+    // the tiles found so far, in sequential order
+    private final TileIndex index;
+
+    // the claims of the level being found by tile identity and by
+    // position, each a power of two long, and at most half full
+    private AtomicReferenceArray<Claim> byTile;
+    private AtomicReferenceArray<Claim> byPosition;
+
+    // set when a conflict is found
+    private volatile boolean inconsistent;
+
+    /**
+     * Create a linker.
+     * @param index the index to add the tiles found to
+     * @param pool the pool to expand large levels in
+     */
+    private ParallelTileLinker(TileIndex index, ForkJoinPool pool) {
+        this.index = index;
+        this.pool = pool;
+    }
+
+    /**
+     * Find the tiles linked to a starting tile.
+     * @param startingTile the tile to start from
+     * @param startingX the x coordinate of startingTile
+     * @param startingY the y coordinate of startingTile
+     * @param pool the pool to expand large levels in
+     * @return an index of the tiles in breadth-first-search order, as built
+     *         by SparseTileArray.addLinkedTiles(), or null if a level
+     *         expanded in parallel found that the tiles are not
+     *         geometrically consistent
+     * @throws WorldMapInconsistentException if a level expanded
+     *         sequentially found that the tiles are not geometrically
+     *         consistent
+     */
+    static TileIndex link(Tile startingTile, int startingX, int startingY,
+                          ForkJoinPool pool)
+            throws WorldMapInconsistentException {
+        TileIndex index = new TileIndex();
+        index.add(startingTile, startingX, startingY);
+        ParallelTileLinker linker = new ParallelTileLinker(index, pool);
+
+        int levelStart = 0;
+        while (levelStart < index.size()) {
+            int levelEnd = index.size();
+            if (levelEnd - levelStart < PARALLEL_LEVEL) {
+                for (int slot = levelStart; slot < levelEnd; slot++) {
+                    SparseTileArray.linkExits(index, null, slot);
+                }
+            } else if (!linker.expand(levelStart, levelEnd)) {
+                return null;
+            }
+            levelStart = levelEnd;
+        }
+        return index;
+    }
+
+    /**
+     * Expand a level in parallel, adding the next level to the index.
+     * @param levelStart the slot of the first tile of the level
+     * @param levelEnd the end of the slots of the level
+     * @return true, or false if a conflict was found
+     */
+    private boolean expand(int levelStart, int levelEnd) {
+        int size = levelEnd - levelStart;
+        int capacity = Integer.highestOneBit(size * 8 - 1) << 1;
+        byTile = new AtomicReferenceArray<>(capacity);
+        byPosition = new AtomicReferenceArray<>(capacity);
+
+        // the claim of the tile at each exit, by rank, if it is new
+        Claim[] found = new Claim[4 * size];
+        pool.invoke(new Expansion(levelStart, levelStart, levelEnd, found));
+        if (inconsistent) {
+            return false;
+        }
+
+        // add each tile at its lowest rank
+        for (int rank = 0; rank < found.length; rank++) {
+            Claim claim = found[rank];
+            if (claim != null && claim.rank == rank) {
+                index.add(claim.tile, claim.x, claim.y);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Expand some of the tiles of a level.
+     * @param levelStart the slot of the first tile of the level
+     * @param from the slot of the first tile to expand
+     * @param to the end of the slots to expand
+     * @param found where to store the claims of new tiles, by rank
+     */
+    private void expand(int levelStart, int from, int to, Claim[] found) {
+        for (int slot = from; slot < to && !inconsistent; slot++) {
+            Tile parent = index.tile(slot);
+            for (int direction = 0; direction < 4; direction++) {
+                Tile tile = parent.getExit(direction);
+                if (tile == null) {
+                    continue;
+                }
+                int x = index.x(slot) + DIRECTIONS_X[direction];
+                int y = index.y(slot) + DIRECTIONS_Y[direction];
+
+                // tiles of earlier levels
+                int placed = index.slotOf(tile);
+                if (placed >= 0) {
+                    if (index.x(placed) != x || index.y(placed) != y) {
+                        inconsistent = true;
+                        return;
+                    }
+                    continue;
+                }
+                if (index.tileAt(x, y) != null) {
+                    inconsistent = true;
+                    return;
+                }
+
+                // tiles of the next level
+                int rank = (slot - levelStart) * 4 + direction;
+                Claim claim = find(tile);
+                if (claim == null) {
+                    claim = claim(new Claim(tile, x, y, rank));
+                } else if (claim.x != x || claim.y != y) {
+                    claim = null;
+                }
+                if (claim == null) {
+                    inconsistent = true;
+                    return;
+                }
+                int current;
+                do {
+                    current = claim.rank;
+                } while (current > rank
+                        && !RANK.compareAndSet(claim, current, rank));
+                found[rank] = claim;
+            }
+        }
+    }
+
+    /**
+     * Find the claim of a tile in the level being found.
+     * @param tile the tile
+     * @return the claim, or null if the tile has not been claimed
+     */
+    private Claim find(Tile tile) {
+        int mask = byTile.length() - 1;
+        for (int i = tileHash(tile) & mask; ; i = (i + 1) & mask) {
+            Claim existing = byTile.get(i);
+            if (existing == null || existing.tile == tile) {
+                return existing;
+            }
+        }
+    }
+
+    /**
+     * Claim a tile and its position in the level being found.
+     * @param claim the claim
+     * @return the claim of the tile (claim, or an earlier claim of the same
+     *         tile at the same position), or null if the tile was claimed at
+     *         another position, or the position by another tile
+     */
+    private Claim claim(Claim claim) {
+        int mask = byTile.length() - 1;
+        int i = tileHash(claim.tile) & mask;
+        while (true) {
+            Claim existing = byTile.get(i);
+            if (existing == null) {
+                if (byTile.compareAndSet(i, null, claim)) {
+                    break;
+                }
+                existing = byTile.get(i);
+            }
+            if (existing.tile == claim.tile) {
+                return existing.x == claim.x && existing.y == claim.y
+                        ? existing : null;
+            }
+            i = (i + 1) & mask;
+        }
+
+        i = positionHash(claim.x, claim.y) & mask;
+        while (true) {
+            Claim existing = byPosition.get(i);
+            if (existing == null) {
+                if (byPosition.compareAndSet(i, null, claim)) {
+                    return claim;
+                }
+                existing = byPosition.get(i);
+            }
+            if (existing.x == claim.x && existing.y == claim.y) {
+                // the tile was new, so this is a different tile
+                return null;
+            }
+            i = (i + 1) & mask;
+        }
+    }
+
+    /**
+     * Compute a well spread identity hash for a tile.
+     * @param tile the tile
+     * @return the hash
+     */
+    private static int tileHash(Tile tile) {
+        return (int) ((System.identityHashCode(tile) * MIX) >>> 32);
+    }
+
+    /**
+     * Compute a well spread hash of a position.
+     * @param x the x coordinate
+     * @param y the y coordinate
+     * @return the hash
+     */
+    private static int positionHash(int x, int y) {
+        return (int) ((TileIndex.pack(x, y) * MIX) >>> 32);
+    }
+
+    /**
+     * Expands a range of the tiles of a level, splitting it between tasks.
+     */
+    @SuppressWarnings("serial")
+    private final class Expansion extends RecursiveAction {
+
+        // the slot of the first tile of the level, and the range to expand
+        private final int levelStart;
+        private final int from;
+        private final int to;
+
+        // where to store the claims of new tiles, by rank
+        private final Claim[] found;
+
+        /**
+         * Create a task expanding a range of tiles.
+         * @param levelStart the slot of the first tile of the level
+         * @param from the slot of the first tile to expand
+         * @param to the end of the slots to expand
+         * @param found where to store the claims of new tiles, by rank
+         */
+        private Expansion(int levelStart, int from, int to, Claim[] found) {
+            this.levelStart = levelStart;
+            this.from = from;
+            this.to = to;
+            this.found = found;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= GRAIN) {
+                expand(levelStart, from, to, found);
+                return;
+            }
+            int middle = (from + to) >>> 1;
+            invokeAll(new Expansion(levelStart, from, middle, found),
+                    new Expansion(levelStart, middle, to, found));
+        }
+    }
+}
@@ -0,0 +1,418 @@
+package csse2002.block.world;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Finds shortest routes for a builder between tiles of a WorldMap. <br>
+ * A builder can move from a tile to the tile at its "north", "east", "south"
+ * or "west" exit if it can enter that tile (see Builder.canEnter(): the
+ * heights differ by at most 1). Routes are returned as exit indices
+ * (Tile.NORTH, EAST, SOUTH or WEST), which can be replayed with
+ * Builder.moveTo(tile.getExit(direction)), MOVE_BUILDER actions (see
+ * toActions()), or the game's Direction (whose ordinals are exit indices).
+ * <br>
+ * Searches use A* with the Manhattan distance between tile positions,
+ * which never overestimates as every move changes the position by exactly
+ * one. If A* expands too many tiles without reaching the target (e.g. the
+ * target is walled off by height), the search is finished by a
+ * bidirectional breadth-first search instead, which stops as soon as
+ * either side runs out of tiles, so an unreachable target in a small
+ * region is found quickly. <br>
+ * Heights and exits are read from the tiles at the time of each search.
+ * A PathFinder reuses its search state between searches, so must only be
+ * used by one thread at a time; use one PathFinder per thread to search
+ * in parallel.
+ * @serial exclude
+ */
+public class PathFinder {
+
+    // the smallest number of tiles A* expands before falling back
+    private static final int MIN_EXPANSIONS = 256;
+
+    // the number of tiles A* expands per unit of distance between the
+    // tiles before falling back
+    private static final int EXPANSIONS_PER_STEP = 16;
+
+    // the graph searched
+    private final TileGraph graph;
+
+    // the search number each tile was last reached by, by tile index, so
+    // that the arrays below do not need clearing for each search. Forward
+    // for A* and the forward side of the bidirectional search, and
+    // backward for the backward side.
+    private final int[] forwardStamps;
+    private final int[] backwardStamps;
+    private int search = 0;
+
+    // the distance from the start (forward) or to the target (backward)
+    private final int[] forwardCosts;
+    private final int[] backwardCosts;
+
+    // the tile before (forward) or after (backward) each tile on the best
+    // route found, and the direction of that move
+    private final int[] forwardLinks;
+    private final int[] backwardLinks;
+    private final byte[] forwardDirections;
+    private final byte[] backwardDirections;
+
+    // the A* open set, as a binary heap of keys (f cost and tie break)
+    // and tile indexes
+    private long[] heapKeys = new long[64];
+    private int[] heapTiles = new int[64];
+    private int heapSize;
+
+    // the frontiers of the bidirectional search
+    private int[] forwardFrontier;
+    private int[] backwardFrontier;
+    private int[] nextFrontier;
+
+    /**
+     * Create a path finder for a map.
+     * @param map the map
+     * @require map != null
+     */
+    public PathFinder(WorldMap map) {
+        graph = map.getTileGraph();
+        int size = graph.size();
+        forwardStamps = new int[size];
+        backwardStamps = new int[size];
+        forwardCosts = new int[size];
+        backwardCosts = new int[size];
+        forwardLinks = new int[size];
+        backwardLinks = new int[size];
+        forwardDirections = new byte[size];
+        backwardDirections = new byte[size];
+        forwardFrontier = new int[16];
+        backwardFrontier = new int[16];
+        nextFrontier = new int[16];
+    }
+
+    /**
+     * Find a shortest route between two tiles.
+     * @param from the tile to start at
+     * @param to the tile to reach
+     * @return the directions of each move in order (empty if from == to),
+     *         or null if to cannot be reached, or either tile is not in the
+     *         map
+     * @require from != null &amp;&amp; to != null
+     */
+    public int[] findPath(Tile from, Tile to) {
+        int start = graph.indexOf(from);
+        int target = graph.indexOf(to);
+        if (start < 0 || target < 0) {
+            return null;
+        }
+
+        int limit = MIN_EXPANSIONS
+                + EXPANSIONS_PER_STEP * distance(start, target);
+        int[] path = aStar(start, target, limit);
+        if (path == null && heapSize > 0) {
+            // A* stopped early, rather than running out of tiles
+            path = bidirectionalSearch(start, target);
+        }
+        return path;
+    }
+
+    /**
+     * Find a shortest route between two tiles using only A*.
+     * @param from the tile to start at
+     * @param to the tile to reach
+     * @return the route, as for findPath()
+     * @require from != null &amp;&amp; to != null
+     */
+    public int[] findPathAStar(Tile from, Tile to) {
+        int start = graph.indexOf(from);
+        int target = graph.indexOf(to);
+        if (start < 0 || target < 0) {
+            return null;
+        }
+        return aStar(start, target, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Find a shortest route between two tiles using only a bidirectional
+     * breadth-first search.
+     * @param from the tile to start at
+     * @param to the tile to reach
+     * @return the route, as for findPath()
+     * @require from != null &amp;&amp; to != null
+     */
+    public int[] findPathBidirectional(Tile from, Tile to) {
+        int start = graph.indexOf(from);
+        int target = graph.indexOf(to);
+        if (start < 0 || target < 0) {
+            return null;
+        }
+        return bidirectionalSearch(start, target);
+    }
+
+    /**
+     * Convert a route to MOVE_BUILDER actions.
+     * @param path the directions of each move
+     * @return an action for each move
+     * @require path != null
+     */
+    public static List<Action> toActions(int[] path) {
+        List<Action> actions = new ArrayList<>(path.length);
+        for (int direction : path) {
+            actions.add(new Action(Action.MOVE_BUILDER,
+                    Tile.exitName(direction)));
+        }
+        return actions;
+    }
+
+    /**
+     * Search with A*, expanding at most limit tiles. <br>
+     * If the search stops because of the limit, the open set is left
+     * non-empty.
+     * @param start the index of the tile to start at
+     * @param target the index of the tile to reach
+     * @param limit the largest number of tiles to expand
+     * @return the route, or null if the target is unreachable or the limit
+     *         was reached
+     */
+    private int[] aStar(int start, int target, int limit) {
+        int stamp = nextSearch();
+        heapSize = 0;
+        forwardStamps[start] = stamp;
+        forwardCosts[start] = 0;
+        forwardLinks[start] = -1;
+        push(distance(start, target), 0, start);
+
+        int expanded = 0;
+        while (heapSize > 0) {
+            long key = heapKeys[0];
+            int tile = heapTiles[0];
+            int cost = forwardCosts[tile];
+            if ((int) (key >>> 32) != cost + distance(tile, target)) {
+                // a better route to the tile was found after this entry
+                pop();
+                continue;
+            }
+            if (tile == target) {
+                heapSize = 0;
+                return forwardPath(start, target);
+            }
+            if (expanded++ == limit) {
+                return null;
+            }
+            pop();
+
+            for (int direction = 0; direction < 4; direction++) {
+                int next = graph.move(tile, direction);
+                if (next < 0) {
+                    continue;
+                }
+                if (forwardStamps[next] != stamp
+                        || forwardCosts[next] > cost + 1) {
+                    forwardStamps[next] = stamp;
+                    forwardCosts[next] = cost + 1;
+                    forwardLinks[next] = tile;
+                    forwardDirections[next] = (byte) direction;
+                    push(cost + 1 + distance(next, target), cost + 1, next);
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Search breadth first from both ends at once, always growing the
+     * smaller frontier by a whole level.
+     * @param start the index of the tile to start at
+     * @param target the index of the tile to reach
+     * @return the route, or null if the target is unreachable
+     */
+    private int[] bidirectionalSearch(int start, int target) {
+        int stamp = nextSearch();
+        forwardStamps[start] = stamp;
+        forwardCosts[start] = 0;
+        forwardLinks[start] = -1;
+        backwardStamps[target] = stamp;
+        backwardCosts[target] = 0;
+        backwardLinks[target] = -1;
+        if (start == target) {
+            return new int[0];
+        }
+
+        forwardFrontier[0] = start;
+        int forwardSize = 1;
+        backwardFrontier[0] = target;
+        int backwardSize = 1;
+
+        while (forwardSize > 0 && backwardSize > 0) {
+            boolean forward = forwardSize <= backwardSize;
+            int[] frontier = forward ? forwardFrontier : backwardFrontier;
+            int size = forward ? forwardSize : backwardSize;
+            int[] stamps = forward ? forwardStamps : backwardStamps;
+            int[] costs = forward ? forwardCosts : backwardCosts;
+            int[] links = forward ? forwardLinks : backwardLinks;
+            byte[] directions = forward ? forwardDirections
+                    : backwardDirections;
+            int[] otherStamps = forward ? backwardStamps : forwardStamps;
+            int[] otherCosts = forward ? backwardCosts : forwardCosts;
+
+            // the tile where the sides meet on the shortest route, found
+            // after the whole level is grown
+            int meeting = -1;
+            int best = Integer.MAX_VALUE;
+            int nextSize = 0;
+            for (int i = 0; i < size; i++) {
+                int tile = frontier[i];
+                for (int direction = 0; direction < 4; direction++) {
+                    int next = forward ? graph.move(tile, direction)
+                            : graph.moveInto(tile, direction);
+                    if (next < 0 || stamps[next] == stamp) {
+                        continue;
+                    }
+                    stamps[next] = stamp;
+                    costs[next] = costs[tile] + 1;
+                    links[next] = tile;
+                    directions[next] = (byte) direction;
+                    if (otherStamps[next] == stamp
+                            && costs[next] + otherCosts[next] < best) {
+                        best = costs[next] + otherCosts[next];
+                        meeting = next;
+                    }
+                    if (nextSize == nextFrontier.length) {
+                        nextFrontier = Arrays.copyOf(nextFrontier,
+                                nextSize * 2);
+                    }
+                    nextFrontier[nextSize++] = next;
+                }
+            }
+
+            if (meeting >= 0) {
+                return joinPaths(start, meeting, target);
+            }
+
+            // the grown level becomes the frontier of its side, and the old
+            // frontier is reused for the next level
+            int[] grown = nextFrontier;
+            nextFrontier = frontier;
+            if (forward) {
+                forwardFrontier = grown;
+                forwardSize = nextSize;
+            } else {
+                backwardFrontier = grown;
+                backwardSize = nextSize;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Build the route found by A* or the forward side of the bidirectional
+     * search.
+     * @param start the index of the tile started at
+     * @param end the index of the tile reached
+     * @return the directions of each move
+     */
+    private int[] forwardPath(int start, int end) {
+        int[] path = new int[forwardCosts[end]];
+        for (int tile = end, i = path.length - 1; tile != start;
+                tile = forwardLinks[tile], i--) {
+            path[i] = forwardDirections[tile];
+        }
+        return path;
+    }
+
+    /**
+     * Build the route found by the bidirectional search.
+     * @param start the index of the tile started at
+     * @param meeting the index of the tile where the sides met
+     * @param target the index of the target tile
+     * @return the directions of each move
+     */
+    private int[] joinPaths(int start, int meeting, int target) {
+        int[] first = forwardPath(start, meeting);
+        int[] path = Arrays.copyOf(first,
+                first.length + backwardCosts[meeting]);
+        int i = first.length;
+        for (int tile = meeting; tile != target;
+                tile = backwardLinks[tile]) {
+            path[i++] = backwardDirections[tile];
+        }
+        return path;
+    }
+
+    /**
+     * Get the Manhattan distance between two tiles.
+     * @param first the index of a tile
+     * @param second the index of another tile
+     * @return the distance
+     */
+    private int distance(int first, int second) {
+        return Math.abs(graph.getX(first) - graph.getX(second))
+                + Math.abs(graph.getY(first) - graph.getY(second));
+    }
+
+    /**
+     * Start a new search, so that all tiles are unreached.
+     * @return the stamp of the search
+     */
+    private int nextSearch() {
+        if (search == Integer.MAX_VALUE) {
+            Arrays.fill(forwardStamps, 0);
+            Arrays.fill(backwardStamps, 0);
+            search = 0;
+        }
+        return ++search;
+    }
+
+    /**
+     * Add a tile to the A* open set.
+     * @param estimate the estimated cost of a route through the tile
+     * @param cost the cost of the route to the tile
+     * @param tile the index of the tile
+     */
+    private void push(int estimate, int cost, int tile) {
+        if (heapSize == heapKeys.length) {
+            heapKeys = Arrays.copyOf(heapKeys, heapSize * 2);
+            heapTiles = Arrays.copyOf(heapTiles, heapSize * 2);
+        }
+        // lower estimates first, then the tiles furthest from the start
+        long key = ((long) estimate << 32) | (Integer.MAX_VALUE - cost);
+
+        int i = heapSize++;
+        while (i > 0) {
+            int parent = (i - 1) >>> 1;
+            if (heapKeys[parent] <= key) {
+                break;
+            }
+            heapKeys[i] = heapKeys[parent];
+            heapTiles[i] = heapTiles[parent];
+            i = parent;
+        }
+        heapKeys[i] = key;
+        heapTiles[i] = tile;
+    }
+
+    /**
+     * Remove the first tile of the A* open set.
+     */
+    private void pop() {
+        long key = heapKeys[--heapSize];
+        int tile = heapTiles[heapSize];
+        int i = 0;
+        while (true) {
+            int child = 2 * i + 1;
+            if (child >= heapSize) {
+                break;
+            }
+            if (child + 1 < heapSize && heapKeys[child + 1] < heapKeys[child]) {
+                child++;
+            }
+            if (key <= heapKeys[child]) {
+                break;
+            }
+            heapKeys[i] = heapKeys[child];
+            heapTiles[i] = heapTiles[child];
+            i = child;
+        }
+        heapKeys[i] = key;
+        heapTiles[i] = tile;
+    }
+}
@@ -0,0 +1,208 @@
+package csse2002.block.world;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Performs the actions in an actions file on a world map like
+ * {@link BatchActionProcessor}, but reads and parses them on another thread,
+ * so a producer writing actions to a pipe (e.g. System.in) is not stalled
+ * while actions are performed and their outcomes written. <br>
+ * The reader thread sends blocks of up to BLOCK_SIZE parsed actions to the
+ * calling thread through a queue of at most QUEUE_CAPACITY blocks. When the
+ * queue is full the reader thread waits, so at most
+ * BLOCK_SIZE * QUEUE_CAPACITY actions are read ahead of those performed.
+ * As for BatchActionProcessor, a block ends early when the reader has no
+ * more input ready, and the sink is flushed when there is nothing left to
+ * perform.
+ * @serial exclude
+ */
+public class PipelinedActionProcessor {
+
+    /**
+     * The largest number of actions sent to be performed together.
+     */
+    public static final int BLOCK_SIZE = BatchActionProcessor.BLOCK_SIZE;
+
+    /**
+     * The largest number of blocks read but not yet performed.
+     */
+    public static final int QUEUE_CAPACITY = 64;
+
+    /**
+     * A block of parsed actions, and how reading ended after them.
+     */
+    private static final class Block {
+
+        // the actions
+        private final Action[] actions;
+
+        // the exception that ended reading (an ActionFormatException for an
+        // invalid line, a RuntimeException or an Error), or null
+        private final Throwable error;
+
+        // whether the reader reached the end of the file
+        private final boolean last;
+
+        /**
+         * Create a block.
+         * @param actions the actions
+         * @param error the exception that ended reading, or null
+         * @param last whether reading reached the end of the file
+         */
+        private Block(Action[] actions, Throwable error, boolean last) {
+            this.actions = actions;
+            this.error = error;
+            this.last = last;
+        }
+    }
+
+    /**
+     * PipelinedActionProcessor only has static members.
+     */
+    private PipelinedActionProcessor() {
+    }
+
+    /**
+     * Read all the actions from the given reader and perform them on the
+     * given map, in the same order and with the same results as
+     * Action.processActions(). <br>
+     * The outcome of each action is sent to the sink, which is flushed
+     * whenever no parsed actions are waiting to be performed, and before
+     * returning or throwing. <br>
+     * If a line is not a valid action, the actions before it are performed
+     * and then the ActionFormatException is thrown. Likewise if reading or
+     * parsing a line throws a RuntimeException or an Error, the actions
+     * before it are performed and then it is thrown. <br>
+     * If this method throws before the end of the file (e.g. the sink throws
+     * an IOException), the reader thread is interrupted, but may stay
+     * blocked reading until the reader has input or is closed.
+     * @param reader the reader to read actions from
+     * @param map the map to perform the actions on
+     * @param sink the sink to send outcomes to
+     * @return the number of actions performed
+     * @throws ActionFormatException if Action.loadAction() would throw an
+     *         ActionFormatException
+     * @throws IOException if the sink throws an IOException, or the calling
+     *         thread is interrupted (InterruptedIOException)
+     * @require reader != null &amp;&amp; map != null &amp;&amp; sink != null
+     */
+    public static long processActions(BufferedReader reader, WorldMap map,
+                                      ActionSink sink)
+            throws ActionFormatException, IOException {
+        BlockingQueue<Block> queue = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+        Thread readerThread = new Thread(() -> read(reader, queue),
+                "action-reader");
+        readerThread.setDaemon(true);
+        readerThread.start();
+
+        long performed = 0;
+        try {
+            while (true) {
+                Block block = queue.poll();
+                if (block == null) {
+                    // idle until the reader sends more, so write what has
+                    // been performed so far
+                    sink.flush();
+                    block = queue.take();
+                }
+
+                for (Action action : block.actions) {
+                    sink.accept(action, Action.applyAction(action, map));
+                }
+                performed += block.actions.length;
+
+                if (block.error instanceof ActionFormatException) {
+                    throw (ActionFormatException) block.error;
+                } else if (block.error instanceof Error) {
+                    throw (Error) block.error;
+                } else if (block.error != null) {
+                    throw (RuntimeException) block.error;
+                } else if (block.last) {
+                    return performed;
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException(
+                    "Interrupted while waiting for actions");
+        } finally {
+            readerThread.interrupt();
+            sink.flush();
+        }
+    }
+
+    /**
+     * Read and parse actions, sending them to the queue in blocks, until
+     * the end of the file, an invalid line, or the thread is interrupted.
+     * @param reader the reader to read actions from
+     * @param queue the queue to send blocks to
+     */
+    private static void read(BufferedReader reader,
+                             BlockingQueue<Block> queue) {
+        Action[] actions = new Action[BLOCK_SIZE];
+        int count = 0;
+
+        try {
+            while (true) {
+                String line;
+                try {
+                    line = reader.readLine();
+                } catch (IOException e) {
+                    queue.put(new Block(Arrays.copyOf(actions, count),
+                            new ActionFormatException(e.toString()), false));
+                    return;
+                }
+                if (line == null) {
+                    queue.put(new Block(Arrays.copyOf(actions, count), null,
+                            true));
+                    return;
+                }
+
+                try {
+                    actions[count] = Action.parseAction(line);
+                } catch (ActionFormatException e) {
+                    queue.put(new Block(Arrays.copyOf(actions, count), e,
+                            false));
+                    return;
+                }
+                count++;
+
+                if (count == BLOCK_SIZE || !ready(reader)) {
+                    queue.put(new Block(Arrays.copyOf(actions, count), null,
+                            false));
+                    count = 0;
+                }
+            }
+        } catch (InterruptedException e) {
+            // the actions are no longer wanted
+        } catch (Throwable e) {
+            // send the actions parsed before the exception, and the
+            // exception to be thrown by processActions(), so that it does
+            // not wait for more blocks
+            try {
+                queue.put(new Block(Arrays.copyOf(actions, count), e, false));
+            } catch (InterruptedException interrupted) {
+                // the actions are no longer wanted
+            }
+        }
+    }
+
+    /**
+     * Check whether a reader has input ready.
+     * @param reader the reader
+     * @return reader.ready(), or false if it throws an IOException (which
+     *         the next read reports)
+     */
+    private static boolean ready(BufferedReader reader) {
+        try {
+            return reader.ready();
+        } catch (IOException e) {
+            return false;
+        }
+    }
+}
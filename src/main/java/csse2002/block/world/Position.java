@@ -1,7 +1,5 @@
 package csse2002.block.world;
 
-import java.util.Objects;
-
 /**
  * Represents the position of a {@link Tile Tile}
  * in the {@link SparseTileArray SparseTileArray}.
@@ -73,7 +71,9 @@ public class Position implements Comparable<Position> {
 
     @Override
     public int hashCode() {
-        return Objects.hash(x, y);
+        // same value as Objects.hash(x, y), without boxing x and y
+        // into a varargs array
+        return 31 * (31 + x) + y;
     }
 
     /**
@@ -0,0 +1,381 @@
+package csse2002.block.world;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * The components of the tiles of a WorldMap that a builder can walk
+ * between (see {@link WorldMap#isReachable(Position, Position)}), kept up
+ * to date as heights and exits change. <br>
+ * Two tiles are joined if a builder can move from each to the other in the
+ * "north", "east", "south" or "west" direction (see TileGraph.move()). Each
+ * tile has a label, and labels are merged in a union-find forest, so tiles
+ * are in the same component iff their labels have the same root. Joining
+ * two tiles merges their labels' roots. Separating two tiles searches from
+ * both at once, one tile at a time each, until the searches meet (the
+ * component is unchanged) or one runs out of tiles, which are then the
+ * whole of a new component and are given a new label. So a split costs
+ * about twice the size of the smaller part. <br>
+ * Changed tiles are only queued by the change (see changed(), called by the
+ * map's TileTracker); the components are updated on the next query. <br>
+ * A move with no move back (a one way exit) does not join tiles, so while
+ * there are any, tiles in different components are searched for a route.
+ * @serial exclude
+ */
+final class Reachability {
+
+    // the graph of the map's tiles
+    private final TileGraph graph;
+
+    // bit d is set iff a builder can move from the tile in direction d,
+    // by tile index, as of the last update of the tile
+    private final int[] moves;
+
+    // the number of moves with no move back
+    private int oneWayMoves;
+
+    // the label of each tile, by tile index
+    private final int[] labels;
+
+    // the parent of each label in the union-find forest, and the rank of
+    // each root
+    private int[] parents;
+    private byte[] ranks;
+    private int labelCount;
+
+    // 1 if the tile has changed since it was last updated, by tile index
+    private final AtomicIntegerArray changedTiles;
+
+    // the indexes of changed tiles, guarded by changedTiles
+    private int[] queue = new int[16];
+    private int queueSize;
+
+    // the tiles reached by the searches of a split, and the search each
+    // tile was last reached by (two per split, see separate())
+    private final int[] firstReached;
+    private final int[] secondReached;
+    private final int[] stamps;
+    private int search = 0;
+
+    // the path finder used while there are one way moves
+    private final PathFinder finder;
+
+    /**
+     * Compute the components of a map. The map's tracker queues changes to
+     * its tiles (see TileTracker.setReachability()). <br>
+     * Must not be called while the map is being changed.
+     * @param map the map
+     */
+    Reachability(WorldMap map) {
+        graph = map.getTileGraph();
+        finder = new PathFinder(map);
+        int size = graph.size();
+        moves = new int[size];
+        labels = new int[size];
+        changedTiles = new AtomicIntegerArray(size);
+        firstReached = new int[size];
+        secondReached = new int[size];
+        stamps = new int[size];
+
+        for (int i = 0; i < size; i++) {
+            for (int direction = 0; direction < 4; direction++) {
+                if (graph.move(i, direction) >= 0) {
+                    moves[i] |= 1 << direction;
+                }
+            }
+        }
+        for (int i = 0; i < size; i++) {
+            for (int direction = 0; direction < 4; direction++) {
+                if ((moves[i] >>> direction & 1) != 0
+                        && !canMove(graph.neighbour(i, direction),
+                        direction ^ 2)) {
+                    oneWayMoves++;
+                }
+            }
+        }
+
+        // label each component by a breadth-first search
+        parents = new int[Math.max(16, size)];
+        ranks = new byte[parents.length];
+        Arrays.fill(labels, -1);
+        for (int i = 0; i < size; i++) {
+            if (labels[i] < 0) {
+                int label = newLabel();
+                labels[i] = label;
+                firstReached[0] = i;
+                for (int head = 0, tail = 1; head < tail; head++) {
+                    int tile = firstReached[head];
+                    for (int direction = 0; direction < 4; direction++) {
+                        int next = join(tile, direction);
+                        if (next >= 0 && labels[next] < 0) {
+                            labels[next] = label;
+                            firstReached[tail++] = next;
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Queue a tile whose height or exits have changed. <br>
+     * Safe to call from any thread.
+     * @param index the index of the tile
+     */
+    void changed(int index) {
+        if (changedTiles.get(index) == 0
+                && changedTiles.compareAndSet(index, 0, 1)) {
+            synchronized (changedTiles) {
+                if (queueSize == queue.length) {
+                    queue = Arrays.copyOf(queue, queueSize * 2);
+                }
+                queue[queueSize++] = index;
+            }
+        }
+    }
+
+    /**
+     * Check whether a builder can walk from one tile to another.
+     * @param from the index of the tile to start at
+     * @param to the index of the tile to reach
+     * @return true iff to can be reached from from
+     */
+    synchronized boolean isReachable(int from, int to) {
+        update();
+        if (find(labels[from]) == find(labels[to])) {
+            return true;
+        }
+        if (oneWayMoves == 0) {
+            return false;
+        }
+        return finder.findPathBidirectional(graph.getTile(from),
+                graph.getTile(to)) != null;
+    }
+
+    /**
+     * Update the components for the queued tiles.
+     */
+    private void update() {
+        int[] changes;
+        int count;
+        synchronized (changedTiles) {
+            changes = queue;
+            count = queueSize;
+            queue = new int[16];
+            queueSize = 0;
+        }
+        for (int i = 0; i < count; i++) {
+            int tile = changes[i];
+            // cleared first, so a change made while the tile is read
+            // queues it again
+            changedTiles.set(tile, 0);
+            for (int direction = 0; direction < 4; direction++) {
+                updateMoves(tile, direction);
+            }
+        }
+        if (labelCount > 2 * labels.length + 16) {
+            compact();
+        }
+    }
+
+    /**
+     * Update the moves between a tile and the tile next to it in a
+     * direction, joining or separating them if they changed.
+     * @param tile the index of the tile
+     * @param direction Tile.NORTH, EAST, SOUTH or WEST
+     */
+    private void updateMoves(int tile, int direction) {
+        int next = graph.neighbour(tile, direction);
+        if (next < 0) {
+            return;
+        }
+        int back = direction ^ 2;
+        boolean out = canMove(tile, direction);
+        boolean in = canMove(next, back);
+        boolean newOut = graph.move(tile, direction) >= 0;
+        boolean newIn = graph.move(next, back) >= 0;
+        if (out == newOut && in == newIn) {
+            return;
+        }
+
+        moves[tile] = (moves[tile] & ~(1 << direction))
+                | (newOut ? 1 << direction : 0);
+        moves[next] = (moves[next] & ~(1 << back)) | (newIn ? 1 << back : 0);
+        oneWayMoves += (newOut != newIn ? 1 : 0) - (out != in ? 1 : 0);
+
+        boolean joined = out && in;
+        if (!joined && newOut && newIn) {
+            union(labels[tile], labels[next]);
+        } else if (joined && !(newOut && newIn)) {
+            separate(tile, next);
+        }
+    }
+
+    /**
+     * Check whether a builder could move from a tile in a direction, as of
+     * the last update of the tile.
+     * @param tile the index of the tile
+     * @param direction Tile.NORTH, EAST, SOUTH or WEST
+     * @return true iff the move is recorded
+     */
+    private boolean canMove(int tile, int direction) {
+        return (moves[tile] >>> direction & 1) != 0;
+    }
+
+    /**
+     * Get the tile joined to a tile in a direction.
+     * @param tile the index of the tile
+     * @param direction Tile.NORTH, EAST, SOUTH or WEST
+     * @return the index of the joined tile, or -1 if the tiles are not
+     *         joined
+     */
+    private int join(int tile, int direction) {
+        if (!canMove(tile, direction)) {
+            return -1;
+        }
+        int next = graph.neighbour(tile, direction);
+        return canMove(next, direction ^ 2) ? next : -1;
+    }
+
+    /**
+     * Give the tiles cut off from a component by separating two tiles
+     * their own label.
+     * @param first the index of one tile
+     * @param second the index of the other tile
+     */
+    private void separate(int first, int second) {
+        if (search >= Integer.MAX_VALUE - 2) {
+            Arrays.fill(stamps, 0);
+            search = 0;
+        }
+        int firstStamp = ++search;
+        int secondStamp = ++search;
+        stamps[first] = firstStamp;
+        stamps[second] = secondStamp;
+        firstReached[0] = first;
+        secondReached[0] = second;
+        int firstHead = 0;
+        int firstTail = 1;
+        int secondHead = 0;
+        int secondTail = 1;
+
+        // expand one tile from each side in turn
+        while (true) {
+            if (firstHead == firstTail) {
+                relabel(firstReached, firstTail);
+                return;
+            }
+            int tile = firstReached[firstHead++];
+            for (int direction = 0; direction < 4; direction++) {
+                int next = join(tile, direction);
+                if (next < 0 || stamps[next] == firstStamp) {
+                    continue;
+                }
+                if (stamps[next] == secondStamp) {
+                    return;
+                }
+                stamps[next] = firstStamp;
+                firstReached[firstTail++] = next;
+            }
+
+            if (secondHead == secondTail) {
+                relabel(secondReached, secondTail);
+                return;
+            }
+            tile = secondReached[secondHead++];
+            for (int direction = 0; direction < 4; direction++) {
+                int next = join(tile, direction);
+                if (next < 0 || stamps[next] == secondStamp) {
+                    continue;
+                }
+                if (stamps[next] == firstStamp) {
+                    return;
+                }
+                stamps[next] = secondStamp;
+                secondReached[secondTail++] = next;
+            }
+        }
+    }
+
+    /**
+     * Give tiles a new label.
+     * @param tiles the indexes of the tiles
+     * @param count the number of tiles
+     */
+    private void relabel(int[] tiles, int count) {
+        int label = newLabel();
+        for (int i = 0; i < count; i++) {
+            labels[tiles[i]] = label;
+        }
+    }
+
+    /**
+     * Create a label, as the root of its own tree.
+     * @return the label
+     */
+    private int newLabel() {
+        if (labelCount == parents.length) {
+            parents = Arrays.copyOf(parents, labelCount * 2);
+            ranks = Arrays.copyOf(ranks, labelCount * 2);
+        }
+        parents[labelCount] = labelCount;
+        ranks[labelCount] = 0;
+        return labelCount++;
+    }
+
+    /**
+     * Find the root of a label's tree, halving the path to it.
+     * @param label the label
+     * @return the root
+     */
+    private int find(int label) {
+        int current = label;
+        while (parents[current] != current) {
+            parents[current] = parents[parents[current]];
+            current = parents[current];
+        }
+        return current;
+    }
+
+    /**
+     * Merge the trees of two labels, by rank.
+     * @param first a label
+     * @param second another label
+     */
+    private void union(int first, int second) {
+        int firstRoot = find(first);
+        int secondRoot = find(second);
+        if (firstRoot == secondRoot) {
+            return;
+        }
+        if (ranks[firstRoot] < ranks[secondRoot]) {
+            parents[firstRoot] = secondRoot;
+        } else {
+            parents[secondRoot] = firstRoot;
+            if (ranks[firstRoot] == ranks[secondRoot]) {
+                ranks[firstRoot]++;
+            }
+        }
+    }
+
+    /**
+     * Replace the labels with one label per component, dropping the labels
+     * left unused by splits.
+     */
+    private void compact() {
+        int[] renamed = new int[labelCount];
+        Arrays.fill(renamed, -1);
+        int count = 0;
+        for (int i = 0; i < labels.length; i++) {
+            int root = find(labels[i]);
+            if (renamed[root] < 0) {
+                renamed[root] = count++;
+            }
+            labels[i] = renamed[root];
+        }
+        labelCount = 0;
+        for (int i = 0; i < count; i++) {
+            newLabel();
+        }
+    }
+}
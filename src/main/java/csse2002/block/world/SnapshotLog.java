@@ -0,0 +1,406 @@
+package csse2002.block.world;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.function.Supplier;
+
+/**
+ * The history a WorldMap keeps so that its snapshots (see
+ * {@link WorldMap#snapshot()}) stay unchanged while the map changes. <br>
+ * Time is divided into numbered epochs. A snapshot is the state of the map
+ * at the end of an epoch, and taking one starts the next epoch. Every
+ * change to the map is a write (see write()) that belongs to the epoch it
+ * started in. Taking a snapshot waits for the writes of the epoch it ends
+ * to finish, but never stops new writes. <br>
+ * Tiles are grouped into chunks of TileIndex.CHUNK_SIZE by CHUNK_SIZE
+ * positions. While a snapshot is open, the first write to a chunk in each
+ * later epoch saves a copy of the blocks of the chunk's tiles before
+ * changing them, tagged with the epoch. The snapshot of epoch s reads a
+ * tile from the earliest copy of its chunk tagged after s, or from the tile
+ * itself if there is no such copy. The map's builder is recorded after
+ * every write that changes it, tagged with the epoch. <br>
+ * Copies and records that no open snapshot can read are dropped by later
+ * writes.
+ * @serial exclude
+ */
+final class SnapshotLog {
+
+    /**
+     * The tiles of a chunk, and the copies of their blocks.
+     */
+    private static final class Chunk {
+
+        // the tiles, by index in the chunk (see SnapshotLog.chunkIndexes)
+        private final Tile[] tiles;
+
+        // the epoch of copies.epoch, or -1 if there are no copies. Only
+        // changed while synchronized on the chunk.
+        private volatile long savedEpoch = -1;
+
+        // the copies, newest first
+        private volatile Copy copies;
+
+        /**
+         * Create a chunk.
+         * @param tiles the tiles in the chunk
+         */
+        private Chunk(Tile[] tiles) {
+            this.tiles = tiles;
+        }
+
+        /**
+         * Find the copy of the chunk a snapshot reads.
+         * @param epoch the epoch of the snapshot
+         * @return the earliest copy tagged after epoch, or null if there is
+         *         none
+         */
+        private Copy find(long epoch) {
+            Copy found = null;
+            for (Copy copy = copies; copy != null && copy.epoch > epoch;
+                    copy = copy.older) {
+                found = copy;
+            }
+            return found;
+        }
+    }
+
+    /**
+     * The blocks of the tiles of a chunk, before the first write to the
+     * chunk in an epoch.
+     */
+    private static final class Copy {
+
+        // the epoch of the write
+        private final long epoch;
+
+        // the packed column and block list of each tile (see
+        // Tile.getColumn() and Tile.getBlockList())
+        private final int[] columns;
+        private final List<Block>[] lists;
+
+        // the next older copy, or null
+        private volatile Copy older;
+
+        /**
+         * Copy the blocks of the tiles of a chunk.
+         * @param epoch the epoch of the write
+         * @param tiles the tiles
+         * @param older the next older copy, or null
+         */
+        @SuppressWarnings("unchecked")
+        private Copy(long epoch, Tile[] tiles, Copy older) {
+            this.epoch = epoch;
+            this.older = older;
+            columns = new int[tiles.length];
+            List<Block>[] tileLists = null;
+            for (int i = 0; i < tiles.length; i++) {
+                List<Block> list = tiles[i].getBlockList();
+                if (list != null) {
+                    if (tileLists == null) {
+                        tileLists = (List<Block>[]) new List<?>[tiles.length];
+                    }
+                    tileLists[i] = list;
+                }
+                columns[i] = tiles[i].getColumn();
+            }
+            lists = tileLists;
+        }
+
+        /**
+         * Get the blocks of a tile in the copy.
+         * @param index the index of the tile in the chunk
+         * @return a read only list of the blocks
+         */
+        private List<Block> getBlocks(int index) {
+            return Tile.blocksOf(columns[index],
+                    lists == null ? null : lists[index]);
+        }
+    }
+
+    /**
+     * The map's builder after the last write to it in an epoch.
+     */
+    private static final class BuilderRecord {
+
+        // the epoch of the write
+        private final long epoch;
+
+        // the builder's tile and a read only copy of its inventory
+        private final Tile tile;
+        private final List<Block> inventory;
+
+        // the record of an earlier epoch, or null
+        private volatile BuilderRecord older;
+
+        /**
+         * Record the builder.
+         * @param epoch the epoch of the write
+         * @param builder the builder
+         * @param older the record of an earlier epoch, or null
+         */
+        private BuilderRecord(long epoch, Builder builder,
+                              BuilderRecord older) {
+            this.epoch = epoch;
+            this.tile = builder.getCurrentTile();
+            this.inventory = Collections.unmodifiableList(
+                    builder.saveInventory());
+            this.older = older;
+        }
+    }
+
+    // the builder recorded
+    private final Builder builder;
+
+    // the graph of the map's tiles
+    private final TileGraph graph;
+
+    // the chunk of each tile and the tile's index in it, by index in graph
+    private final Chunk[] chunks;
+    private final int[] chunkIndexes;
+
+    // the current epoch. Only changed while synchronized on the log.
+    private volatile long epoch = 0;
+
+    // the number of unfinished writes of even and odd epochs
+    private final AtomicIntegerArray writers = new AtomicIntegerArray(2);
+
+    // the epochs of open snapshots, guarded by the log
+    private final TreeSet<Long> open = new TreeSet<>();
+
+    // the epoch of the oldest open snapshot, or Long.MAX_VALUE if none are
+    // open
+    private volatile long oldestOpen = Long.MAX_VALUE;
+
+    // the builder records, newest first
+    private volatile BuilderRecord builderRecords;
+
+    /**
+     * Start recording the changes to a map. The map's tracker passes on
+     * changes to its tiles (see TileTracker.setSnapshotLog()). <br>
+     * Must not be called while the map is being changed.
+     * @param graph the graph of the map's tiles
+     * @param builder the builder of the map
+     */
+    SnapshotLog(TileGraph graph, Builder builder) {
+        this.builder = builder;
+        this.graph = graph;
+        chunks = new Chunk[graph.size()];
+        chunkIndexes = new int[graph.size()];
+
+        Map<Long, List<Integer>> chunkTiles = new HashMap<>();
+        for (int i = 0; i < graph.size(); i++) {
+            chunkTiles.computeIfAbsent(TileIndex.chunkKey(graph.getX(i),
+                    graph.getY(i)), key -> new ArrayList<>()).add(i);
+        }
+        for (List<Integer> indexes : chunkTiles.values()) {
+            Tile[] tiles = new Tile[indexes.size()];
+            for (int i = 0; i < tiles.length; i++) {
+                tiles[i] = graph.getTile(indexes.get(i));
+            }
+            Chunk chunk = new Chunk(tiles);
+            for (int i = 0; i < tiles.length; i++) {
+                chunks[indexes.get(i)] = chunk;
+                chunkIndexes[indexes.get(i)] = i;
+            }
+        }
+
+        builderRecords = new BuilderRecord(-1, builder, null);
+    }
+
+    /**
+     * Open a snapshot of the map, ending the current epoch. <br>
+     * Waits for unfinished writes of the current epoch.
+     * @return the epoch of the snapshot
+     */
+    synchronized long open() {
+        long snapshotEpoch = epoch;
+        open.add(snapshotEpoch);
+        oldestOpen = open.first();
+        epoch = snapshotEpoch + 1;
+
+        int parity = (int) snapshotEpoch & 1;
+        while (writers.get(parity) != 0) {
+            Thread.yield();
+        }
+        return snapshotEpoch;
+    }
+
+    /**
+     * Close a snapshot, so that the history only it reads can be dropped.
+     * @param snapshotEpoch the epoch of the snapshot
+     */
+    synchronized void close(long snapshotEpoch) {
+        open.remove(snapshotEpoch);
+        oldestOpen = open.isEmpty() ? Long.MAX_VALUE : open.first();
+    }
+
+    /**
+     * Change the map, saving copies of the chunks of the tiles changed
+     * first if a snapshot needs them, and recording the builder afterwards
+     * if it changed. <br>
+     * The change must not itself be recorded (i.e. it uses the apply
+     * methods of Tile and Builder rather than the try methods).
+     * @param first a tile the change may change the blocks of, or null
+     * @param second another tile the change may change, or null
+     * @param changed a builder the change may change, or null
+     * @param change the change, returning SUCCESS if it changed the builder
+     * @return the outcome of the change
+     */
+    ActionOutcome write(Tile first, Tile second, Builder changed,
+                        Supplier<ActionOutcome> change) {
+        long writeEpoch = beginWrite();
+        try {
+            if (oldestOpen < writeEpoch) {
+                save(first, writeEpoch);
+                save(second, writeEpoch);
+            }
+
+            ActionOutcome outcome = change.get();
+            if (changed == builder && outcome == ActionOutcome.SUCCESS) {
+                BuilderRecord latest = builderRecords;
+                builderRecords = new BuilderRecord(writeEpoch, builder,
+                        prune(latest.epoch == writeEpoch ? latest.older
+                                : latest));
+            }
+            return outcome;
+        } finally {
+            writers.decrementAndGet((int) writeEpoch & 1);
+        }
+    }
+
+    /**
+     * Get the blocks of a tile in a snapshot.
+     * @param tile the tile
+     * @param snapshotEpoch the epoch of the snapshot
+     * @return a read only list of the blocks
+     * @require tile is in the map, and the snapshot is open
+     */
+    List<Block> getBlocks(Tile tile, long snapshotEpoch) {
+        int index = graph.indexOf(tile);
+        Chunk chunk = chunks[index];
+        Copy copy = chunk.find(snapshotEpoch);
+        if (copy == null) {
+            // the tile has not changed since the snapshot, unless a write
+            // saves a copy while it is being read
+            List<Block> list = tile.getBlockList();
+            int column = tile.getColumn();
+            copy = chunk.find(snapshotEpoch);
+            if (copy == null) {
+                return Tile.blocksOf(column, list);
+            }
+        }
+        return copy.getBlocks(chunkIndexes[index]);
+    }
+
+    /**
+     * Get the builder's tile in a snapshot.
+     * @param snapshotEpoch the epoch of the snapshot
+     * @return the tile
+     * @require the snapshot is open
+     */
+    Tile getBuilderTile(long snapshotEpoch) {
+        return findRecord(snapshotEpoch).tile;
+    }
+
+    /**
+     * Get the builder's inventory in a snapshot.
+     * @param snapshotEpoch the epoch of the snapshot
+     * @return a read only list of the inventory
+     * @require the snapshot is open
+     */
+    List<Block> getBuilderInventory(long snapshotEpoch) {
+        return findRecord(snapshotEpoch).inventory;
+    }
+
+    /**
+     * Start a write in the current epoch.
+     * @return the epoch of the write
+     */
+    private long beginWrite() {
+        while (true) {
+            long writeEpoch = epoch;
+            int parity = (int) writeEpoch & 1;
+            writers.incrementAndGet(parity);
+            if (epoch == writeEpoch) {
+                return writeEpoch;
+            }
+            // a snapshot ended the epoch, so it may not wait for this write
+            writers.decrementAndGet(parity);
+        }
+    }
+
+    /**
+     * Save a copy of the chunk of a tile, unless it has already been saved
+     * in this epoch.
+     * @param tile the tile, or null
+     * @param writeEpoch the epoch of the write
+     */
+    private void save(Tile tile, long writeEpoch) {
+        int index = tile == null ? -1 : graph.indexOf(tile);
+        Chunk chunk = index < 0 ? null : chunks[index];
+        if (chunk == null || chunk.savedEpoch == writeEpoch) {
+            return;
+        }
+        synchronized (chunk) {
+            if (chunk.savedEpoch != writeEpoch) {
+                chunk.copies = new Copy(writeEpoch, chunk.tiles,
+                        prune(chunk.copies));
+                chunk.savedEpoch = writeEpoch;
+            }
+        }
+    }
+
+    /**
+     * Drop the copies no open snapshot reads.
+     * @param newest the newest copy, or null
+     * @return the copies left, or null if there are none
+     */
+    private Copy prune(Copy newest) {
+        long oldest = oldestOpen;
+        if (newest == null || newest.epoch <= oldest) {
+            return null;
+        }
+        for (Copy copy = newest; copy.older != null; copy = copy.older) {
+            if (copy.older.epoch <= oldest) {
+                copy.older = null;
+                break;
+            }
+        }
+        return newest;
+    }
+
+    /**
+     * Drop the builder records no open snapshot reads.
+     * @param newest the newest record
+     * @return the records left
+     */
+    private BuilderRecord prune(BuilderRecord newest) {
+        long oldest = oldestOpen;
+        for (BuilderRecord record = newest; record != null;
+                record = record.older) {
+            if (record.epoch <= oldest) {
+                record.older = null;
+                break;
+            }
+        }
+        return newest;
+    }
+
+    /**
+     * Find the builder record a snapshot reads.
+     * @param snapshotEpoch the epoch of the snapshot
+     * @return the latest record of an epoch up to snapshotEpoch
+     */
+    private BuilderRecord findRecord(long snapshotEpoch) {
+        BuilderRecord record = builderRecords;
+        while (record.epoch > snapshotEpoch) {
+            record = record.older;
+        }
+        return record;
+    }
+}
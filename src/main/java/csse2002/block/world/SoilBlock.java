@@ -5,6 +5,18 @@ package csse2002.block.world;
  * @serial exclude
  */
 public class SoilBlock extends GroundBlock {
+
+    /**
+     * The type ordinal of SoilBlocks (see Block.getTypeOrdinal()).
+     */
+    public static final int ORDINAL = 2;
+
+    /**
+     * A shared SoilBlock. SoilBlocks have no state, so this instance can be
+     * used instead of constructing a new one.
+     */
+    public static final SoilBlock INSTANCE = new SoilBlock();
+
     /**
      * Get the colour of a SoilBlock. <br>
      * Always returns "black".
@@ -35,4 +47,14 @@ public class SoilBlock extends GroundBlock {
         return true;
     }
 
+    /**
+     * Get the type ordinal of a SoilBlock. <br>
+     * Always returns SoilBlock.ORDINAL
+     * @return 2
+     */
+    @Override
+    public int getTypeOrdinal() {
+        return ORDINAL;
+    }
+
 }
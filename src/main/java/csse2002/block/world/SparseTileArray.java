@@ -1,6 +1,7 @@
 package csse2002.block.world;
 
-import java.util.*;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
 
 /**
  * A sparse representation of tiles in an Array. <br>
@@ -11,12 +12,35 @@ import java.util.*;
  */
 public class SparseTileArray {
 
-    // lookup tiles by position
-    private HashMap<Position, Tile> tileMap;
+    // constants for the breadth-first search, indexed by exit index
+    // (Tile.NORTH, Tile.EAST, Tile.SOUTH, Tile.WEST)
+    private static final int[] DIRECTIONS_X = {0, 1, 0, -1};
+    private static final int[] DIRECTIONS_Y = {-1, 0, 1, 0};
 
-    // a set of tiles in the order in
-    // a breadth-first search order
-    private List<Tile> orderedTiles;
+    // lookup tiles by position and positions by tile. Tiles are
+    // given slots in the order they are discovered, which is
+    // also the breadth-first search order.
+    private TileIndex tileIndex;
+
+    // the tile passed to addLinkedTiles and its position, or null if
+    // there are no tiles
+    private Tile startingTile;
+    private int startingX;
+    private int startingY;
+
+    // true if an exit that linked tiles has been removed since tileIndex
+    // was built, so it may hold tiles that are no longer linked to
+    // startingTile
+    private volatile boolean unlinked;
+
+    // true if an exit has changed since tileIndex was built that links new
+    // tiles or changes the order tiles are found in, so its slots may not be
+    // in breadth-first-search order
+    private volatile boolean unordered;
+
+    // the number of times tiles have been added to or removed from
+    // tileIndex, or moved to another position
+    private int version;
 
     /**
      * Constructor for a SparseTileArray.
@@ -40,7 +64,20 @@ public class SparseTileArray {
      * @require position != null
      */
     public Tile getTile(Position position) {
-        return tileMap.get(position);
+        return linkedIndex().tileAt(position.getX(), position.getY());
+    }
+
+    /**
+     * Get the tile at position (x, y). <br>
+     * Equivalent to getTile(new Position(x, y)), without allocating a
+     * Position.
+     * @param x the x coordinate
+     * @param y the y coordinate
+     * @return the tile at (x, y) or null if
+     *         no such tile exists.
+     */
+    public Tile getTile(int x, int y) {
+        return linkedIndex().tileAt(x, y);
     }
 
     /**
@@ -62,7 +99,72 @@ public class SparseTileArray {
      *         order.
      */
     public List<Tile> getTiles() {
-        return new ArrayList<>(orderedTiles);
+        return orderedIndex().tiles();
+    }
+
+    /**
+     * Get the number of tiles. <br>
+     * Equivalent to getTiles().size(), without copying the list.
+     * @return the number of tiles
+     */
+    int size() {
+        return orderedIndex().size();
+    }
+
+    /**
+     * Get a tile by its index in breadth-first-search order. <br>
+     * Equivalent to getTiles().get(index), without copying the list.
+     * @param index the index of the tile
+     * @return the tile
+     * @require 0 &lt;= index &lt; size()
+     */
+    Tile getTileAt(int index) {
+        return orderedIndex().tile(index);
+    }
+
+    /**
+     * Get the x coordinate of a tile by its index in breadth-first-search
+     * order.
+     * @param index the index of the tile
+     * @return the x coordinate of getTileAt(index)
+     * @require 0 &lt;= index &lt; size()
+     */
+    int getX(int index) {
+        return orderedIndex().x(index);
+    }
+
+    /**
+     * Get the y coordinate of a tile by its index in breadth-first-search
+     * order.
+     * @param index the index of the tile
+     * @return the y coordinate of getTileAt(index)
+     * @require 0 &lt;= index &lt; size()
+     */
+    int getY(int index) {
+        return orderedIndex().y(index);
+    }
+
+    /**
+     * Get the index of the tile at a position in breadth-first-search
+     * order.
+     * @param x the x coordinate
+     * @param y the y coordinate
+     * @return the index of getTile(x, y), or -1 if there is no tile at
+     *         (x, y)
+     */
+    int indexAt(int x, int y) {
+        return orderedIndex().slotAt(x, y);
+    }
+
+    /**
+     * Get the index of a tile in breadth-first-search order. <br>
+     * Equivalent to getTiles().indexOf(tile) in constant time, as tiles are
+     * compared by identity and a tile can only be added once.
+     * @param tile the tile to find
+     * @return the index of the tile, or -1 if the tile is not in the array
+     */
+    int indexOf(Tile tile) {
+        return orderedIndex().slotOf(tile);
     }
 
     /**
@@ -133,66 +235,297 @@ public class SparseTileArray {
         // reset the state of this SparseTileArray instance
         this.reset();
 
-        Queue<Tile> tilesToProcess = new ArrayDeque<>();
+        // search large maps level by level in parallel, if there is more
+        // than one thread to search with
+        TileIndex index = null;
+        if (ForkJoinPool.getCommonPoolParallelism() > 1) {
+            try {
+                index = ParallelTileLinker.link(startingTile, startingX,
+                        startingY, ForkJoinPool.commonPool());
+            } catch (WorldMapInconsistentException inconsistentException) {
+                reset();
+                throw inconsistentException;
+            }
+        }
 
-        // lookup positions by tile
-        // Note: tile equals/hashCode will be
-        // default, so each tile instance will
-        // be unique.
-        HashMap<Tile, Position> tilePositions = new HashMap<>();
+        if (index == null) {
+            // search sequentially, which also finds the exact inconsistency
+            // if the parallel search found one. Add the starting tile. Slots
+            // are handed out in the order tiles are discovered, so the slots
+            // themselves form the queue of tiles to process.
+            index = new TileIndex();
+            index.add(startingTile, startingX, startingY);
+
+            try {
+                linkTiles(index, null);
+            } catch (WorldMapInconsistentException inconsistentException) {
+                reset();
+                throw inconsistentException;
+            }
+        }
 
-        Position startingPosition = new Position(startingX, startingY);
+        this.startingTile = startingTile;
+        this.startingX = startingX;
+        this.startingY = startingY;
+        tileIndex = index;
+        version++;
+    }
 
-        // add the starting position to the queue for processing.
-        addTileForProcessing(tilesToProcess, tileMap, tilePositions,
-                startingPosition, startingTile);
+    /**
+     * Add an exit to a tile, adding any tiles it links to startingTile.
+     * <br>
+     * Equivalent to tile.addExit(name, target) followed by calling
+     * addLinkedTiles() again with the same startingTile and position, but
+     * only checks the geometric consistency of the tiles newly linked by
+     * the exit (unless it replaces an exit, and the check fails). If the
+     * exit links new tiles, or changes the order tiles are found in, the
+     * breadth-first-search order of getTiles() is brought up to date when
+     * it is next needed. <br>
+     * If the exit would make the tiles geometrically inconsistent, throw a
+     * WorldMapInconsistentException, and do not add it (the tiles and the
+     * SparseTileArray are unchanged).
+     * @param tile the tile to add the exit to
+     * @param name the name of the exit
+     * @param target the tile the exit goes to
+     * @throws NoExitException if name or target is null
+     * @throws WorldMapInconsistentException if the exit would make the
+     *                                       tiles geometrically inconsistent
+     * @require tile != null
+     */
+    public void addExit(Tile tile, String name, Tile target)
+            throws NoExitException, WorldMapInconsistentException {
+        if (name == null || target == null) {
+            throw new NoExitException();
+        }
 
-        // constants for loop below
-        final String[] EXITS = {"north", "east", "south", "west"};
-        final int[] DIRECTIONS_X = {0, 1, 0, -1};
-        final int[] DIRECTIONS_Y = {-1, 0, 1, 0};
+        int direction = Tile.exitIndex(name);
+        int slot = direction < 0 ? -1 : tileIndex.slotOf(tile);
+        if (slot < 0) {
+            // only "north", "east", "south" and "west" exits from linked
+            // tiles link tiles
+            tile.addExit(name, target);
+            return;
+        }
 
+        Tile replaced = tile.getExit(direction);
+        if (replaced == target) {
+            return;
+        }
 
-        while (tilesToProcess.size() > 0) {
-            // loop until there are no more tiles to process
+        // whether the exit replaced was the one the breadth-first search
+        // found the tile it goes to by, and whether the new exit is found
+        // before the one the search finds target by, if it is linked
+        boolean reordered = unordered || unlinked;
+        boolean unlinks = replaced != null;
+        if (!reordered) {
+            int key = slot * 4 + direction;
+            // (a later key means the tiles have been changed directly)
+            unlinks = replaced != null && discoveryKey(replaced) >= key;
+            reordered = tileIndex.slotOf(target) >= 0
+                    && key < discoveryKey(target);
+        }
+
+        // find the tiles the exit links, checking them against the tiles
+        // already linked
+        TileIndex added = new TileIndex();
+        int x = tileIndex.x(slot) + DIRECTIONS_X[direction];
+        int y = tileIndex.y(slot) + DIRECTIONS_Y[direction];
+        try {
+            if (checkLinkedTileValid(tileIndex, added, x, y, target)) {
+                added.add(target, x, y);
+                linkTiles(added, tileIndex);
+            }
+        } catch (WorldMapInconsistentException inconsistentException) {
+            if (replaced == null && !unlinked) {
+                throw inconsistentException;
+            }
+            // the tiles in the way may only have been linked by removed
+            // exits, so check all the tiles linked with the exit
+            tile.addExit(name, target);
+            try {
+                refresh();
+            } catch (WorldMapInconsistentException stillInconsistent) {
+                if (replaced == null) {
+                    tile.removeExit(name);
+                } else {
+                    tile.addExit(name, replaced);
+                }
+                throw stillInconsistent;
+            }
+            return;
+        }
+
+        tile.addExit(name, target);
+        for (int i = 0; i < added.size(); i++) {
+            tileIndex.add(added.tile(i), added.x(i), added.y(i));
+        }
+        if (added.size() > 0) {
+            version++;
+            reordered = true;
+        }
+        if (unlinks) {
+            unlinked = true;
+            reordered = true;
+        }
+        if (reordered) {
+            unordered = true;
+        }
+    }
+
+    /**
+     * Remove an exit from a tile, removing any tiles no longer linked to
+     * startingTile. <br>
+     * Equivalent to tile.removeExit(name) followed by calling
+     * addLinkedTiles() again with the same startingTile and position,
+     * except that the tiles are searched again only if the exit is the one
+     * the breadth-first search found the tile it goes to by, and only when
+     * they are next needed (and only once for any number of changes).
+     * @param tile the tile to remove the exit from
+     * @param name the name of the exit
+     * @throws NoExitException if name is not an exit of tile, or is null
+     * @require tile != null
+     */
+    public void removeExit(Tile tile, String name) throws NoExitException {
+        int direction = name == null ? -1 : Tile.exitIndex(name);
+        int slot = direction < 0 ? -1 : tileIndex.slotOf(tile);
+        boolean unlinks = slot >= 0;
+        if (unlinks && !unordered && !unlinked) {
+            Tile target = tile.getExit(direction);
+            unlinks = target != null
+                    && discoveryKey(target) >= slot * 4 + direction;
+        }
+
+        tile.removeExit(name);
+        if (unlinks) {
+            unlinked = true;
+            unordered = true;
+        }
+    }
 
-            // get the next tile from the queue and its associated position
-            Tile tile = tilesToProcess.element();
-            orderedTiles.add(tile);
+    /**
+     * Get the order the breadth-first search finds a linked tile in: the
+     * slot of the tile whose exit it is first found through * 4 + the exit
+     * index. <br>
+     * Only valid while the slots of tileIndex are in breadth-first-search
+     * order.
+     * @param tile a linked tile
+     * @return the order the tile is found in, -1 for startingTile, or
+     *         Integer.MAX_VALUE if the tile is not found through the exits
+     *         of tileIndex (if exits have been changed directly)
+     */
+    private int discoveryKey(Tile tile) {
+        int slot = tileIndex.slotOf(tile);
+        if (slot == 0) {
+            return -1;
+        }
+        int key = Integer.MAX_VALUE;
+        if (slot > 0) {
+            for (int direction = 0; direction < 4; direction++) {
+                // a consistent tile with an exit to tile in this direction
+                // is next to it
+                int from = tileIndex.slotAt(
+                        tileIndex.x(slot) - DIRECTIONS_X[direction],
+                        tileIndex.y(slot) - DIRECTIONS_Y[direction]);
+                if (from >= 0
+                        && tileIndex.tile(from).getExit(direction) == tile) {
+                    key = Math.min(key, from * 4 + direction);
+                }
+            }
+        }
+        return key;
+    }
+
+    /**
+     * Get the number of times the tiles have changed, to tell whether data
+     * built from them is out of date. <br>
+     * The version changes whenever tiles are added or removed, or move to
+     * another position. It does not depend on the breadth-first-search
+     * order of the tiles, and getting it only searches the tiles again if
+     * an exit that linked tiles has been removed.
+     * @return the version of the tiles
+     */
+    int version() {
+        linkedIndex();
+        return version;
+    }
 
-            Position position = tilePositions.get(tile);
+    /**
+     * Add the tiles linked to the tiles of an index, in breadth-first-search
+     * order, checking that they are geometrically consistent.
+     * @param index the tiles to search from, which the tiles found are
+     *              added to
+     * @param linked tiles already linked, which the tiles found must also
+     *               be consistent with and are not added again, or null
+     * @throws WorldMapInconsistentException if the tiles are not
+     *                                       geometrically consistent
+     */
+    private static void linkTiles(TileIndex index, TileIndex linked)
+            throws WorldMapInconsistentException {
+        for (int slot = 0; slot < index.size(); slot++) {
+            // loop until there are no more tiles to process
+            linkExits(index, linked, slot);
+        }
+    }
 
-            // remove the tile from the queue
-            tilesToProcess.remove();
+    /**
+     * Add the tiles at the exits of a tile of an index that are not yet in
+     * it, checking that they are geometrically consistent.
+     * @param index the tiles being added
+     * @param linked tiles already linked, as for linkTiles(), or null
+     * @param slot the slot of the tile in index
+     * @throws WorldMapInconsistentException if the tiles are not
+     *                                       geometrically consistent
+     */
+    static void linkExits(TileIndex index, TileIndex linked, int slot)
+            throws WorldMapInconsistentException {
+        // get the next tile from the queue and its associated position
+        Tile tile = index.tile(slot);
+        int x = index.x(slot);
+        int y = index.y(slot);
 
-            for (int i = 0; i < EXITS.length; i++) {
-                // go through each exit name ("north", "east", "south", "west"}
+        for (int i = 0; i < DIRECTIONS_X.length; i++) {
+            // go through each exit ("north", "east", "south", "west"}
 
-                // get the tile in that direction
-                Tile tileInDirection = tile.getExits().get(EXITS[i]);
+            // get the tile in that direction
+            Tile tileInDirection = tile.getExit(i);
 
-                // create the associated position in that direction
-                Position positionInDirection =
-                        new Position(position.getX() + DIRECTIONS_X[i],
-                        position.getY() + DIRECTIONS_Y[i]);
+            // the associated position in that direction
+            int xInDirection = x + DIRECTIONS_X[i];
+            int yInDirection = y + DIRECTIONS_Y[i];
 
-                try {
-                    if (checkExistingTileValid(tileMap, tilePositions,
-                            positionInDirection, tileInDirection)) {
+            if (checkLinkedTileValid(linked, index, xInDirection,
+                    yInDirection, tileInDirection)) {
 
-                        // if the tile is valid (hasn't already been placed, the map
-                        // is still consistent) add the new tile for processing.
-                        addTileForProcessing(tilesToProcess, tileMap, tilePositions,
-                                positionInDirection, tileInDirection);
-                    }
-                } catch (WorldMapInconsistentException inconsistentException) {
-                    reset();
-                    throw inconsistentException;
-                }
+                // if the tile is valid (hasn't already been placed, the map
+                // is still consistent) add the new tile for processing.
+                index.add(tileInDirection, xInDirection, yInDirection);
             }
         }
     }
 
+    /**
+     * Check to see whether we should add a tile to an index for processing,
+     * as for checkExistingTileValid(), when the tile must also be consistent
+     * with tiles already linked.
+     * @param linked the tiles already linked, or null
+     * @param index the tiles being added
+     * @param x     the x coordinate we want to place a tile at
+     * @param y     the y coordinate we want to place a tile at
+     * @param tile  the tile we want to place
+     * @return true if we can place tile at (x, y), false otherwise.
+     * @throws WorldMapInconsistentException
+     */
+    private static boolean checkLinkedTileValid(TileIndex linked,
+            TileIndex index, int x, int y, Tile tile)
+            throws WorldMapInconsistentException {
+        if (linked != null && tile != null
+                && (linked.slotOf(tile) >= 0 || linked.tileAt(x, y) != null)) {
+            // already linked, or in the way of a linked tile
+            return checkExistingTileValid(linked, x, y, tile);
+        }
+        return checkExistingTileValid(index, x, y, tile);
+    }
+
     /**
      * Check to see whether we should add a tile a for processing. The following
      * cases are handled:
@@ -206,44 +539,47 @@ public class SparseTileArray {
      * so we return false (we don't want to place it again. </li>
      * </ol>
      *
-     * @param positionToTile the current mapping from positions to tiles
-     * @param tileToPosition the current mapping from tiles to positions
-     * @param position       the position we want to place a tile at
-     * @param tile           the tile we want to place
-     * @return true if we can place tile at position, false otherwise.
+     * @param index the current mapping between positions and tiles
+     * @param x     the x coordinate we want to place a tile at
+     * @param y     the y coordinate we want to place a tile at
+     * @param tile  the tile we want to place
+     * @return true if we can place tile at (x, y), false otherwise.
      * @throws WorldMapInconsistentException
      */
-    private static boolean checkExistingTileValid(Map<Position, Tile> positionToTile, Map<Tile, Position> tileToPosition,
-                                                  Position position, Tile tile) throws WorldMapInconsistentException {
+    private static boolean checkExistingTileValid(TileIndex index, int x, int y,
+                                                  Tile tile) throws WorldMapInconsistentException {
         if (tile == null) {
             // this exit is a dead end, do not go any further
             return false;
         }
 
-        // get the tile at the new position, and position of
+        // get the tile at the new position, and slot of
         // the new tile.
-        Tile tileToTest = positionToTile.get(position);
-        Position positionToTest = tileToPosition.get(tile);
+        Tile tileToTest = index.tileAt(x, y);
+        int slotOfTile = index.slotOf(tile);
 
-        if (positionToTest != null && !(position.equals(positionToTest))) {
+        if (slotOfTile >= 0
+                && (index.x(slotOfTile) != x || index.y(slotOfTile) != y)) {
             // we have already placed this tile somewhere else
             // this is bad, it means the map is inconsistent.
-            throw new WorldMapInconsistentException("Tile that should be at " + position +
-                    " is already assigned a different position at " + positionToTest);
+            throw new WorldMapInconsistentException("Tile that should be at "
+                    + new Position(x, y)
+                    + " is already assigned a different position at "
+                    + new Position(index.x(slotOfTile), index.y(slotOfTile)));
         }
 
         if (tileToTest != null && tile != tileToTest) {
             // if we get here, it means that a different
             // tile is present at the location where we
             // want to put our tile. This is bad.
-            throw new WorldMapInconsistentException("Position " + position +
-                    " is already occupied by a different tile.");
+            throw new WorldMapInconsistentException("Position "
+                    + new Position(x, y)
+                    + " is already occupied by a different tile.");
         }
 
         if (tileToTest == null) {
-            // tileToTest and positionToTest should be null
-            // iff the other is also null
-            assert positionToTest == null;
+            // the position is empty iff the tile has not been placed
+            assert slotOfTile < 0;
 
             // there is nothing at the position
             // where we want to put our tile.
@@ -261,31 +597,98 @@ public class SparseTileArray {
     }
 
     /**
-     * Add a tile and position for processing. We had t
-     * he tile to a queue of tiles to process,
-     * and also to two maps, a mapping from positions
-     * to tiles and a mapping from tiles to positions.
-     *
-     * @param tilesToProcess the queue of tiles to process further
-     * @param positionToTile the current mapping from positions to tiles
-     * @param tileToPosition the current mapping from tiles to positions
-     * @param position       the position to add for processing
-     * @param tile           the tile to add for processing
+     * Get the index of the tiles linked to startingTile, searching the
+     * tiles again first if exits have been removed.
+     * @return the index
+     */
+    private TileIndex linkedIndex() {
+        if (unlinked) {
+            refreshIfConsistent();
+        }
+        return tileIndex;
+    }
+
+    /**
+     * Get the index of the tiles linked to startingTile, with slots in
+     * breadth-first-search order, searching the tiles again first if exits
+     * have changed.
+     * @return the index
+     */
+    private TileIndex orderedIndex() {
+        if (unordered) {
+            refreshIfConsistent();
+        }
+        return tileIndex;
+    }
+
+    /**
+     * Search the tiles linked to startingTile again, if exits have changed.
+     * <br>
+     * addExit() and removeExit() keep the tiles consistent, but the exits of
+     * the tiles can also be changed directly (see Tile.addExit()). If that
+     * has made them inconsistent, the tiles keep the positions and order
+     * they had, as they would without addExit() and removeExit().
+     */
+    private synchronized void refreshIfConsistent() {
+        if (!unordered) {
+            return;
+        }
+        try {
+            refresh();
+        } catch (WorldMapInconsistentException inconsistentException) {
+            unlinked = false;
+            unordered = false;
+        }
+    }
+
+    /**
+     * Search the tiles linked to startingTile again. <br>
+     * If they are not geometrically consistent, the SparseTileArray is left
+     * unchanged.
+     * @throws WorldMapInconsistentException if the tiles are not
+     *                                       geometrically consistent
      */
-    private static void addTileForProcessing(Queue<Tile> tilesToProcess,
-                                             Map<Position, Tile> positionToTile,
-                                             Map<Tile, Position> tileToPosition,
-                                             Position position, Tile tile) {
-        positionToTile.put(position, tile);
-        tileToPosition.put(tile, position);
-        tilesToProcess.add(tile);
+    private synchronized void refresh() throws WorldMapInconsistentException {
+        TileIndex index = new TileIndex();
+        index.add(startingTile, startingX, startingY);
+        linkTiles(index, null);
+
+        if (!samePositions(index, tileIndex)) {
+            version++;
+        }
+        tileIndex = index;
+        unlinked = false;
+        unordered = false;
+    }
+
+    /**
+     * Check whether two indexes have the same tiles at the same positions,
+     * in any slots.
+     * @param first an index
+     * @param second another index
+     * @return true iff the indexes have the same tiles and positions
+     */
+    private static boolean samePositions(TileIndex first, TileIndex second) {
+        if (first.size() != second.size()) {
+            return false;
+        }
+        for (int slot = 0; slot < first.size(); slot++) {
+            if (second.tileAt(first.x(slot), first.y(slot))
+                    != first.tile(slot)) {
+                return false;
+            }
+        }
+        return true;
     }
 
     /**
      * Reset the state of the SparseTileArray to default.
      */
     private void reset() {
-        tileMap = new HashMap<>();
-        orderedTiles = new ArrayList<>();
+        tileIndex = new TileIndex();
+        startingTile = null;
+        version++;
+        unlinked = false;
+        unordered = false;
     }
 }
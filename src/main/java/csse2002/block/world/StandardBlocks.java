@@ -0,0 +1,86 @@
+package csse2002.block.world;
+
+/**
+ * Lookups for the standard {@link Block Block} types: {@link WoodBlock},
+ * {@link GrassBlock}, {@link SoilBlock} and {@link StoneBlock}. <br>
+ * The standard block classes have no state, so each type is represented by
+ * a single shared instance (e.g. {@link WoodBlock#INSTANCE}).
+ * @serial exclude
+ */
+public final class StandardBlocks {
+
+    /**
+     * The number of standard block types. Type ordinals are between 0 and
+     * COUNT - 1.
+     */
+    public static final int COUNT = 4;
+
+    // the shared block of each type, indexed by type ordinal
+    private static final Block[] BLOCKS = new Block[COUNT];
+    static {
+        BLOCKS[WoodBlock.ORDINAL] = WoodBlock.INSTANCE;
+        BLOCKS[GrassBlock.ORDINAL] = GrassBlock.INSTANCE;
+        BLOCKS[SoilBlock.ORDINAL] = SoilBlock.INSTANCE;
+        BLOCKS[StoneBlock.ORDINAL] = StoneBlock.INSTANCE;
+    }
+
+    /**
+     * StandardBlocks only has static members.
+     */
+    private StandardBlocks() {
+    }
+
+    /**
+     * Get the shared block with the given type ordinal.
+     * @param ordinal the type ordinal
+     * @return the shared block
+     * @require 0 &lt;= ordinal &lt; COUNT
+     */
+    public static Block fromOrdinal(int ordinal) {
+        return BLOCKS[ordinal];
+    }
+
+    /**
+     * Get the shared block with the given block type (as returned by
+     * Block.getBlockType()).
+     * @param blockType the name of the block type, e.g. "grass"
+     * @return the shared block, or null if blockType is not the name of a
+     *         standard block type
+     */
+    public static Block fromBlockType(String blockType) {
+        switch (blockType) {
+            case "grass":
+                return GrassBlock.INSTANCE;
+            case "soil":
+                return SoilBlock.INSTANCE;
+            case "stone":
+                return StoneBlock.INSTANCE;
+            case "wood":
+                return WoodBlock.INSTANCE;
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * Get the type ordinal of a block if it is exactly one of the standard
+     * block classes, and so interchangeable with the shared instance. <br>
+     * Subclasses of the standard block classes may change their behaviour,
+     * so are not considered standard.
+     * @param block the block to check
+     * @return the type ordinal, or -1 if block is null or not an instance of
+     *         exactly a standard block class
+     */
+    public static int standardOrdinal(Block block) {
+        if (block == null) {
+            return -1;
+        }
+
+        int ordinal = block.getTypeOrdinal();
+        if (ordinal < 0 || ordinal >= COUNT
+                || BLOCKS[ordinal].getClass() != block.getClass()) {
+            return -1;
+        }
+        return ordinal;
+    }
+}
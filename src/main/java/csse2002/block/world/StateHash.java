@@ -0,0 +1,183 @@
+package csse2002.block.world;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A Zobrist hash of the state of a WorldMap (see
+ * {@link WorldMap#stateHash()}), kept up to date by each change to the
+ * map. <br>
+ * Each (tile position, level, block type) has a pseudo-random 64 bit key,
+ * as does the position of the builder. The hash of the tiles and builder
+ * position is the XOR of the keys present, so a change XORs out the keys it
+ * removes and XORs in those it adds. The height of a tile is implied by
+ * which levels have a key. The inventory is a multiset, so its blocks' keys
+ * are added rather than XORed (two equal blocks must not cancel out). <br>
+ * Keys are computed by mixing their parts instead of being looked up in a
+ * table, so any position has a key, and nothing is stored per tile.
+ * @serial exclude
+ */
+final class StateHash {
+
+    // added to the builder position and inventory keys, so they differ
+    // from block keys
+    private static final long BUILDER_SALT = 0x2545F4914F6CDD1DL;
+    private static final long INVENTORY_SALT = 0x5851F42D4C957F2DL;
+
+    // multipliers for each part of a key
+    private static final long LEVEL_MIX = 0x9E3779B97F4A7C15L;
+    private static final long TYPE_MIX = 0xC2B2AE3D27D4EB4FL;
+
+    // the graph of the map's tiles, to find their positions
+    private final TileGraph graph;
+
+    // the XOR of the keys of the tiles' blocks and the builder's position
+    private final AtomicLong tiles = new AtomicLong();
+
+    // the sum of the keys of the inventory blocks
+    private final AtomicLong inventory = new AtomicLong();
+
+    /**
+     * Compute the hash of a map. The map's tracker passes on changes to its
+     * tiles and builder (see TileTracker.setStateHash()). <br>
+     * Must not be called while the map is being changed.
+     * @param graph the graph of the map's tiles
+     * @param builder the builder of the map
+     */
+    StateHash(TileGraph graph, Builder builder) {
+        this.graph = graph;
+        for (int i = 0; i < graph.size(); i++) {
+            toggle(graph.getTile(i).blocksKey(seedAt(i)));
+        }
+        builder.addToStateHash(this);
+    }
+
+    /**
+     * Get the seed of a tile's position, which its keys are computed from.
+     * @param tile the tile
+     * @return the seed, or 0 if the tile is not in the map
+     */
+    long seedOf(Tile tile) {
+        int index = graph.indexOf(tile);
+        return index < 0 ? 0 : seedAt(index);
+    }
+
+    /**
+     * Get the seed of the position of a tile of the map.
+     * @param index the index of the tile in the map's TileGraph
+     * @return the seed
+     */
+    private long seedAt(int index) {
+        return mix(TileIndex.pack(graph.getX(index), graph.getY(index)));
+    }
+
+    /**
+     * Get the hash.
+     * @return the hash of the map's state
+     */
+    long get() {
+        return tiles.get() ^ mix(inventory.get());
+    }
+
+    /**
+     * Get the type of a block, as used in keys.
+     * @param block the block
+     * @return the type ordinal, or another value based on
+     *         block.getBlockType() if there is no type ordinal
+     */
+    static long typeOf(Block block) {
+        int ordinal = block.getTypeOrdinal();
+        if (ordinal >= 0 && ordinal < StandardBlocks.COUNT) {
+            return ordinal;
+        }
+        String blockType = block.getBlockType();
+        return (1L << 32) | (blockType == null ? 0
+                : blockType.hashCode() & 0xFFFFFFFFL);
+    }
+
+    /**
+     * Get the key of a block on a tile.
+     * @param seed the seed of the tile's position
+     * @param level the index of the block on the tile, 0 is the bottom
+     * @param type the type of the block (see typeOf())
+     * @return the key
+     */
+    static long blockKey(long seed, int level, long type) {
+        return mix(seed + (level + 1) * LEVEL_MIX + (type + 1) * TYPE_MIX);
+    }
+
+    /**
+     * Add or remove the key of a block on a tile.
+     * @param seed the seed of the tile's position
+     * @param level the index of the block on the tile
+     * @param type the type of the block (see typeOf())
+     */
+    void toggleBlock(long seed, int level, long type) {
+        toggle(blockKey(seed, level, type));
+    }
+
+    /**
+     * XOR a key (or keys XORed together) into the hash.
+     * @param key the key
+     */
+    void toggle(long key) {
+        long current;
+        do {
+            current = tiles.get();
+        } while (!tiles.compareAndSet(current, current ^ key));
+    }
+
+    /**
+     * Move the builder from one tile to another.
+     * @param from the seed of the builder's old tile's position
+     * @param to the seed of the builder's new tile's position
+     */
+    void moveBuilder(long from, long to) {
+        toggle(builderKey(from) ^ builderKey(to));
+    }
+
+    /**
+     * Get the key of the builder's position.
+     * @param seed the seed of the builder's tile's position
+     * @return the key
+     */
+    static long builderKey(long seed) {
+        return mix(seed ^ BUILDER_SALT);
+    }
+
+    /**
+     * Add a block to the inventory.
+     * @param block the block
+     */
+    void addToInventory(Block block) {
+        inventory.addAndGet(inventoryKey(block));
+    }
+
+    /**
+     * Remove a block from the inventory.
+     * @param block the block
+     */
+    void removeFromInventory(Block block) {
+        inventory.addAndGet(-inventoryKey(block));
+    }
+
+    /**
+     * Get the key of an inventory block.
+     * @param block the block
+     * @return the key
+     */
+    private static long inventoryKey(Block block) {
+        return mix((typeOf(block) + 1) * TYPE_MIX + INVENTORY_SALT);
+    }
+
+    /**
+     * Mix the bits of a value (the finalizer of SplitMix64).
+     * @param value the value
+     * @return the mixed value
+     */
+    static long mix(long value) {
+        long z = value;
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+}
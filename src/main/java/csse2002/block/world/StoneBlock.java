@@ -5,6 +5,18 @@ package csse2002.block.world;
  * @serial exclude
  */
 public class StoneBlock implements Block {
+
+    /**
+     * The type ordinal of StoneBlocks (see Block.getTypeOrdinal()).
+     */
+    public static final int ORDINAL = 3;
+
+    /**
+     * A shared StoneBlock. StoneBlocks have no state, so this instance can be
+     * used instead of constructing a new one.
+     */
+    public static final StoneBlock INSTANCE = new StoneBlock();
+
     /**
      * Get the colour of a StoneBlock. <br>
      * Always returns "gray".
@@ -55,4 +67,14 @@ public class StoneBlock implements Block {
         return false;
     }
 
+    /**
+     * Get the type ordinal of a StoneBlock. <br>
+     * Always returns StoneBlock.ORDINAL
+     * @return 3
+     */
+    @Override
+    public int getTypeOrdinal() {
+        return ORDINAL;
+    }
+
 }
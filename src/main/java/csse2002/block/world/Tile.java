@@ -1,10 +1,17 @@
 package csse2002.block.world;
 
 import java.io.Serializable;
+import java.util.AbstractList;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
-import java.util.LinkedList;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.RandomAccess;
+import java.util.Set;
 import java.util.TreeMap;
 
 
@@ -17,17 +24,75 @@ import java.util.TreeMap;
  */
 @SuppressWarnings("ALL")
 public class Tile implements Serializable {
+    /**
+     * Index of the "north" exit, for getExit() and exitMask().
+     */
+    public static final int NORTH = 0;
+
+    /**
+     * Index of the "east" exit, for getExit() and exitMask().
+     */
+    public static final int EAST = 1;
+
+    /**
+     * Index of the "south" exit, for getExit() and exitMask().
+     */
+    public static final int SOUTH = 2;
+
+    /**
+     * Index of the "west" exit, for getExit() and exitMask().
+     */
+    public static final int WEST = 3;
+
+    /* Names of the exits with an index, indexed by exit index. */
+    private static final String[] EXIT_NAMES =
+            {"north", "east", "south", "west"};
+
     /* The maximum number of blocks allowed on a tile. */
     private static final int MAX_BLOCKS = 8;
 
     /* The maximum number of ground allowed on a tile. */
     private static final int MAX_GROUND_BLOCKS = 3;
 
-    /* Exits from this Tile. Strings are names of the exits */
-    private Map<String, Tile> exits;
+    /* Number of bits used to store the height of a packed column. */
+    private static final int HEIGHT_BITS = 4;
+
+    /* Number of bits used to store each block (its type ordinal) of a
+       packed column. */
+    private static final int CODE_BITS = 2;
+
+    /* Mask for the height of a packed column. */
+    private static final int HEIGHT_MASK = (1 << HEIGHT_BITS) - 1;
+
+    /* Mask for a single block code of a packed column. */
+    private static final int CODE_MASK = (1 << CODE_BITS) - 1;
 
-    /* Blocks in this Tile*/
-    private List<Block> blocks;
+    /* Exits from this Tile in the "north", "east", "south" and "west"
+       directions, indexed by exit index. null if there is no exit. */
+    private Tile[] directionExits;
+
+    /* Bit i is set iff directionExits[i] != null. */
+    private int exitMask;
+
+    /* Exits from this Tile with any other name, or null if there are
+       none. Strings are names of the exits */
+    private Map<String, Tile> namedExits;
+
+    /* Blocks in this Tile, packed into an int while every block is one of
+       the standard block types. The lowest HEIGHT_BITS hold the number of
+       blocks, followed by CODE_BITS per block from the bottom up.
+       Volatile so that snapshots can read it while it is changed. */
+    private volatile int column;
+
+    /* Blocks in this Tile if any block is not a standard block type,
+       otherwise null and the blocks are stored in column. The list is
+       replaced rather than changed, so snapshots can read it. */
+    private volatile List<Block> blocks;
+
+    /* The tracker passing changes to this Tile on to its map's snapshot
+       log, state hash and reachability components, or null if the map has
+       not needed one. */
+    private TileTracker tracker;
 
     /**
      * Construct a new tile.<br>
@@ -39,15 +104,11 @@ public class Tile implements Serializable {
      * a new Tile.
      */
     public Tile() {
-        exits = new TreeMap<String, Tile>();
-
-        // use a list for now, but could be a stack
-        blocks = new LinkedList<Block>();
+        directionExits = new Tile[EXIT_NAMES.length];
 
         // each tile starts with 2 soil blocks and 1 grass block
-        blocks.add(new SoilBlock());
-        blocks.add(new SoilBlock());
-        blocks.add(new GrassBlock());
+        column = pushCode(pushCode(pushCode(0, SoilBlock.ORDINAL),
+                SoilBlock.ORDINAL), GrassBlock.ORDINAL);
     }
 
     /**
@@ -75,7 +136,7 @@ public class Tile implements Serializable {
      *                          are instances of GroundBlock
      */
     public Tile(List<Block> startingBlocks) throws TooHighException {
-        exits = new TreeMap<>();
+        directionExits = new Tile[EXIT_NAMES.length];
 
         if (startingBlocks.size() > 8) {
             throw new TooHighException();
@@ -88,8 +149,226 @@ public class Tile implements Serializable {
             }
         }
 
-        // make a copy of startingBlocks
-        blocks = new LinkedList<>(startingBlocks);
+        // copy startingBlocks into a packed column if possible
+        column = 0;
+        for (Block block : startingBlocks) {
+            int code = StandardBlocks.standardOrdinal(block);
+            if (code < 0) {
+                // not a standard block, so store a copy of the list
+                column = 0;
+                blocks = new ArrayList<>(startingBlocks);
+                return;
+            }
+            column = pushCode(column, code);
+        }
+    }
+
+    /**
+     * Add a block code to the top of a packed column.
+     * @param column the packed column
+     * @param code the type ordinal of the block to add
+     * @return the new packed column
+     * @require the column has less than MAX_BLOCKS blocks
+     */
+    private static int pushCode(int column, int code) {
+        int height = column & HEIGHT_MASK;
+        int shift = HEIGHT_BITS + height * CODE_BITS;
+        return ((column & ~HEIGHT_MASK) | (code << shift)) + height + 1;
+    }
+
+    /**
+     * Remove the top block of a packed column.
+     * @param column the packed column
+     * @return the new packed column
+     * @require the column has at least one block
+     */
+    private static int popCode(int column) {
+        int height = (column & HEIGHT_MASK) - 1;
+        int shift = HEIGHT_BITS + height * CODE_BITS;
+        return ((column & ~HEIGHT_MASK) & ~(CODE_MASK << shift)) | height;
+    }
+
+    /**
+     * Get the type ordinal of a block in a packed column.
+     * @param column the packed column
+     * @param index the index of the block, 0 is the bottom
+     * @return the type ordinal
+     */
+    private static int codeAt(int column, int index) {
+        return (column >>> (HEIGHT_BITS + index * CODE_BITS)) & CODE_MASK;
+    }
+
+    /**
+     * Get the number of blocks on this tile. <br>
+     * Equivalent to getBlocks().size(), without creating a view of the
+     * blocks.
+     * @return the number of blocks
+     */
+    public int height() {
+        if (blocks != null) {
+            return blocks.size();
+        }
+        return column & HEIGHT_MASK;
+    }
+
+    /**
+     * Get the type ordinal of the top block on this tile. <br>
+     * Equivalent to getTopBlock().getTypeOrdinal() if there are blocks on
+     * the tile, without throwing an exception if there are none.
+     * @return the type ordinal of the top block (see
+     *         Block.getTypeOrdinal(), -1 if it is not a standard block
+     *         type), or -1 if there are no blocks on the tile
+     */
+    public int topBlockOrdinal() {
+        List<Block> list = blocks;
+        if (list != null) {
+            int height = list.size();
+            return height == 0 ? -1 : list.get(height - 1).getTypeOrdinal();
+        }
+        int packed = column;
+        int height = packed & HEIGHT_MASK;
+        return height == 0 ? -1 : codeAt(packed, height - 1);
+    }
+
+    /**
+     * Get a block on this tile.
+     * @param index the index of the block, 0 is the bottom
+     * @return the block at that index
+     * @require 0 &lt;= index &lt; height()
+     */
+    private Block blockAt(int index) {
+        if (blocks != null) {
+            return blocks.get(index);
+        }
+        return StandardBlocks.fromOrdinal(codeAt(column, index));
+    }
+
+    /**
+     * A read only view of the blocks on this tile, which reflects
+     * later changes to the tile.
+     */
+    private class BlockList extends AbstractList<Block>
+            implements RandomAccess {
+
+        /**
+         * Get a block on the tile.
+         * @param index the index of the block, 0 is the bottom
+         * @return the block at that index
+         * @throws IndexOutOfBoundsException if index is not between 0 and
+         *         size() - 1
+         */
+        @Override
+        public Block get(int index) {
+            if (index < 0 || index >= height()) {
+                throw new IndexOutOfBoundsException("Index: " + index
+                        + ", Size: " + height());
+            }
+            return blockAt(index);
+        }
+
+        /**
+         * Get the number of blocks on the tile.
+         * @return the number of blocks
+         */
+        @Override
+        public int size() {
+            return height();
+        }
+    }
+
+    /**
+     * A read only view of the exits from this tile, which reflects
+     * later changes to the tile. Iterates in order of exit name.
+     */
+    private class ExitMap extends AbstractMap<String, Tile> {
+
+        /**
+         * Get the tile at the named exit.
+         * @param name the name of the exit
+         * @return the tile, or null if there is no such exit
+         */
+        @Override
+        public Tile get(Object name) {
+            return name instanceof String ? getExit((String) name) : null;
+        }
+
+        /**
+         * Check whether there is an exit with the given name.
+         * @param name the name of the exit
+         * @return true if the exit exists
+         */
+        @Override
+        public boolean containsKey(Object name) {
+            return get(name) != null;
+        }
+
+        /**
+         * Get the number of exits.
+         * @return the number of exits
+         */
+        @Override
+        public int size() {
+            return Integer.bitCount(exitMask)
+                    + (namedExits == null ? 0 : namedExits.size());
+        }
+
+        /**
+         * Get the exits as a set of entries, sorted by name.
+         * @return the set of entries
+         */
+        @Override
+        public Set<Map.Entry<String, Tile>> entrySet() {
+            return new AbstractSet<Map.Entry<String, Tile>>() {
+                @Override
+                public Iterator<Map.Entry<String, Tile>> iterator() {
+                    // iterating is rare, so copy the exits in name order
+                    Map<String, Tile> sorted = namedExits == null
+                            ? new TreeMap<>() : new TreeMap<>(namedExits);
+                    for (int i = 0; i < EXIT_NAMES.length; i++) {
+                        if (directionExits[i] != null) {
+                            sorted.put(EXIT_NAMES[i], directionExits[i]);
+                        }
+                    }
+                    return Collections.unmodifiableMap(sorted).entrySet()
+                            .iterator();
+                }
+
+                @Override
+                public int size() {
+                    return ExitMap.this.size();
+                }
+            };
+        }
+    }
+
+    /**
+     * Get the exit index of an exit name.
+     * @param name the name of an exit
+     * @return NORTH, EAST, SOUTH or WEST for "north", "east", "south" or
+     *         "west", otherwise -1
+     */
+    public static int exitIndex(String name) {
+        switch (name) {
+            case "north":
+                return NORTH;
+            case "east":
+                return EAST;
+            case "south":
+                return SOUTH;
+            case "west":
+                return WEST;
+            default:
+                return -1;
+        }
+    }
+
+    /**
+     * Get the exit name of an exit index.
+     * @param index NORTH, EAST, SOUTH or WEST
+     * @return "north", "east", "south" or "west" respectively
+     */
+    public static String exitName(int index) {
+        return EXIT_NAMES[index];
     }
 
     /**
@@ -98,7 +377,64 @@ public class Tile implements Serializable {
      * @return map of names to Tiles
      */
     public Map<String, Tile> getExits() {
-        return Collections.unmodifiableMap(this.exits);
+        return new ExitMap();
+    }
+
+    /**
+     * Get the tile at an exit, given the exit index. <br>
+     * Equivalent to getExits().get(exitName(index)), without allocating.
+     * @param index NORTH, EAST, SOUTH or WEST
+     * @return the tile at that exit, or null if there is no such exit
+     */
+    public Tile getExit(int index) {
+        return directionExits[index];
+    }
+
+    /**
+     * Get the tile at the named exit. <br>
+     * Equivalent to getExits().get(name).
+     * @param name the name of the exit
+     * @return the tile at that exit, or null if there is no such exit
+     */
+    public Tile getExit(String name) {
+        int index = exitIndex(name);
+        if (index >= 0) {
+            return directionExits[index];
+        }
+        return namedExits == null ? null : namedExits.get(name);
+    }
+
+    /**
+     * Get which of the "north", "east", "south" and "west" exits exist. <br>
+     * Bit i (i.e. 1 &lt;&lt; i) is set iff getExit(i) != null, for i
+     * = NORTH, EAST, SOUTH or WEST.
+     * @return the exit mask
+     */
+    public int exitMask() {
+        return exitMask;
+    }
+
+    /**
+     * Check if any exit from this tile leads to the given tile.
+     * @param target the tile to look for
+     * @return true if there is an exit to target
+     */
+    boolean hasExitTo(Tile target) {
+        for (Tile exit : directionExits) {
+            if (exit == target) {
+                return true;
+            }
+        }
+        return namedExits != null && namedExits.containsValue(target);
+    }
+
+    /**
+     * Check if this tile has any exits other than "north", "east", "south"
+     * and "west".
+     * @return true if there are other exits
+     */
+    boolean hasNamedExits() {
+        return namedExits != null;
     }
 
     /**
@@ -108,7 +444,7 @@ public class Tile implements Serializable {
      * @return Blocks on the Tile
      */
     public List<Block> getBlocks() {
-        return Collections.unmodifiableList(this.blocks);
+        return new BlockList();
     }
 
     /**
@@ -118,11 +454,192 @@ public class Tile implements Serializable {
      * @throws TooLowException if there are no blocks on the tile
      */
     public Block getTopBlock() throws TooLowException {
-        if (blocks.size() == 0) {
+        int height = height();
+        if (height == 0) {
             throw new TooLowException();
         }
 
-        return blocks.get(blocks.size() - 1);
+        return blockAt(height - 1);
+    }
+
+    /**
+     * Get the block that is the top block on the tile, without throwing an
+     * exception.
+     * @return the top Block, or null if there are no blocks on the tile
+     */
+    Block peekTopBlock() {
+        int height = height();
+        return height == 0 ? null : blockAt(height - 1);
+    }
+
+    /**
+     * Create a tile with the same blocks as this one, and no exits.
+     * @return the new tile
+     */
+    Tile copyBlocks() {
+        Tile copy = new Tile();
+        copy.column = column;
+        copy.blocks = blocks == null ? null : new ArrayList<>(blocks);
+        return copy;
+    }
+
+    /**
+     * The blocks on a tile, saved by saveBlocks().
+     */
+    static final class SavedBlocks {
+
+        // the packed column, only meaningful if blocks is null
+        private final int column;
+
+        // a copy of the list of blocks, or null if they were packed
+        private final List<Block> blocks;
+
+        /**
+         * Save blocks.
+         * @param column the packed column
+         * @param blocks a copy of the list of blocks, or null to use column
+         */
+        private SavedBlocks(int column, List<Block> blocks) {
+            this.column = column;
+            this.blocks = blocks;
+        }
+    }
+
+    /**
+     * Save the blocks on this tile, so that they can be put back with
+     * restoreBlocks().
+     * @return the saved blocks
+     */
+    SavedBlocks saveBlocks() {
+        List<Block> list = blocks;
+        if (list != null) {
+            return new SavedBlocks(0, new ArrayList<>(list));
+        }
+        return new SavedBlocks(column, null);
+    }
+
+    /**
+     * Put back blocks saved by saveBlocks(). <br>
+     * The change is not recorded in the snapshot log (the caller records
+     * it).
+     * @param saved the saved blocks
+     */
+    void restoreBlocks(SavedBlocks saved) {
+        StateHash hash = getStateHash();
+        long seed = hash == null ? 0 : hash.seedOf(this);
+        if (hash != null) {
+            hash.toggle(blocksKey(seed));
+        }
+
+        if (saved.blocks == null) {
+            blocks = null;
+            column = saved.column;
+        } else {
+            blocks = new ArrayList<>(saved.blocks);
+            column = 0;
+        }
+
+        if (hash != null) {
+            hash.toggle(blocksKey(seed));
+        }
+        changed();
+    }
+
+    /**
+     * Get the XOR of the state hash keys of the blocks on this tile.
+     * @param seed the seed of this tile's position (see StateHash.seedOf())
+     * @return the XOR of the keys
+     */
+    long blocksKey(long seed) {
+        long key = 0;
+        int height = height();
+        for (int i = 0; i < height; i++) {
+            key ^= StateHash.blockKey(seed, i, StateHash.typeOf(blockAt(i)));
+        }
+        return key;
+    }
+
+    /**
+     * Pass changes to this tile on to a tracker.
+     * @param tileTracker the tracker of this tile's map
+     */
+    void attachTracker(TileTracker tileTracker) {
+        tracker = tileTracker;
+    }
+
+    /**
+     * Stop passing changes to this tile on to a tracker, if they still are.
+     * @param tileTracker the tracker to detach
+     */
+    void detachTracker(TileTracker tileTracker) {
+        if (tracker == tileTracker) {
+            tracker = null;
+        }
+    }
+
+    /**
+     * Tell the reachability components of this tile's map, if any, that
+     * this tile's height or exits have changed.
+     */
+    private void changed() {
+        TileTracker tileTracker = tracker;
+        if (tileTracker != null) {
+            tileTracker.changed(this);
+        }
+    }
+
+    /**
+     * Get the state hash changes to this tile update.
+     * @return the state hash, or null if the map does not keep one
+     */
+    private StateHash getStateHash() {
+        TileTracker tileTracker = tracker;
+        return tileTracker == null ? null : tileTracker.getStateHash();
+    }
+
+    /**
+     * Get the snapshot log changes to this tile are recorded in.
+     * @return the log, or null if changes are not recorded
+     */
+    SnapshotLog getSnapshotLog() {
+        TileTracker tileTracker = tracker;
+        return tileTracker == null ? null : tileTracker.getSnapshotLog();
+    }
+
+    /**
+     * Get the packed column of this tile, for a snapshot.
+     * @return the packed column (see column), only meaningful if
+     *         getBlockList() returns null
+     */
+    int getColumn() {
+        return column;
+    }
+
+    /**
+     * Get the list of blocks of this tile, for a snapshot. <br>
+     * The list is never changed.
+     * @return the list, or null if the blocks are stored in a packed
+     *         column
+     */
+    List<Block> getBlockList() {
+        return blocks;
+    }
+
+    /**
+     * Get the blocks read from a tile by getColumn() and getBlockList().
+     * @param column the packed column
+     * @param list the list of blocks, or null to use column
+     * @return a read only list of the blocks, index 0 is the bottom
+     */
+    static List<Block> blocksOf(int column, List<Block> list) {
+        if (list != null) {
+            return Collections.unmodifiableList(list);
+        }
+        Block[] result = new Block[column & HEIGHT_MASK];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = StandardBlocks.fromOrdinal(codeAt(column, i));
+        }
+        return Collections.unmodifiableList(Arrays.asList(result));
     }
 
     /**
@@ -131,11 +648,41 @@ public class Tile implements Serializable {
      * @throws TooLowException if there are no blocks on the tile
      */
     public void removeTopBlock() throws TooLowException {
-        if (blocks.size() == 0) {
+        if (height() == 0) {
             throw new TooLowException();
         }
 
-        blocks.remove(blocks.size() - 1);
+        SnapshotLog log = getSnapshotLog();
+        if (log == null) {
+            removeTop();
+        } else {
+            log.write(this, null, null, () -> {
+                removeTop();
+                return ActionOutcome.SUCCESS;
+            });
+        }
+    }
+
+    /**
+     * Remove the block on top of the tile.
+     * @require height() &gt; 0
+     */
+    private void removeTop() {
+        StateHash hash = getStateHash();
+        if (hash != null) {
+            int top = height() - 1;
+            hash.toggleBlock(hash.seedOf(this), top,
+                    StateHash.typeOf(blockAt(top)));
+        }
+
+        if (blocks != null) {
+            List<Block> list = new ArrayList<>(blocks);
+            list.remove(list.size() - 1);
+            blocks = list;
+        } else {
+            column = popCode(column);
+        }
+        changed();
     }
 
     /**
@@ -154,7 +701,17 @@ public class Tile implements Serializable {
         }
 
         // add to exits
-        exits.put(name, target);
+        int index = exitIndex(name);
+        if (index >= 0) {
+            directionExits[index] = target;
+            exitMask |= 1 << index;
+        } else {
+            if (namedExits == null) {
+                namedExits = new TreeMap<>();
+            }
+            namedExits.put(name, target);
+        }
+        changed();
     }
 
     /**
@@ -167,11 +724,21 @@ public class Tile implements Serializable {
      * @throws NoExitException if name is not in exits, or name is null
      */
     public void removeExit(String name) throws NoExitException {
-        if (name == null || !exits.containsKey(name)) {
+        if (name == null || getExit(name) == null) {
             throw new NoExitException();
         }
 
-        exits.remove(name);
+        int index = exitIndex(name);
+        if (index >= 0) {
+            directionExits[index] = null;
+            exitMask &= ~(1 << index);
+        } else {
+            namedExits.remove(name);
+            if (namedExits.isEmpty()) {
+                namedExits = null;
+            }
+        }
+        changed();
     }
 
     /**
@@ -189,19 +756,49 @@ public class Tile implements Serializable {
      * @throws InvalidBlockException if the block is not diggable
      */
     public Block dig() throws TooLowException, InvalidBlockException {
+        Block result = peekTopBlock();
+        switch (tryDig()) {
+            case TOO_LOW:
+                throw new TooLowException();
+            case INVALID_BLOCK:
+                throw new InvalidBlockException();
+            default:
+                return result;
+        }
+    }
 
-        if (blocks.size() == 0) {
-            throw new TooLowException();
+    /**
+     * Attempt to dig in the current tile, as dig() does, but return the
+     * outcome instead of throwing an exception. <br>
+     * The block removed is the one getTopBlock() returned before digging.
+     * @return TOO_LOW if there are no blocks on the tile, INVALID_BLOCK if
+     *         the block is not diggable, otherwise SUCCESS
+     */
+    public ActionOutcome tryDig() {
+        SnapshotLog log = getSnapshotLog();
+        if (log == null) {
+            return applyDig();
         }
+        return log.write(this, null, null, this::applyDig);
+    }
 
-        Block result = blocks.get(blocks.size() - 1);
+    /**
+     * Dig in the current tile, as tryDig() does, without recording the
+     * change in the snapshot log (the caller records it).
+     * @return the outcome, as for tryDig()
+     */
+    ActionOutcome applyDig() {
+        int height = height();
+        if (height == 0) {
+            return ActionOutcome.TOO_LOW;
+        }
 
-        if (!result.isDiggable()) {
-            throw new InvalidBlockException();
+        if (!blockAt(height - 1).isDiggable()) {
+            return ActionOutcome.INVALID_BLOCK;
         }
 
-        removeTopBlock();
-        return result;
+        removeTop();
+        return ActionOutcome.SUCCESS;
     }
 
     /**
@@ -228,38 +825,110 @@ public class Tile implements Serializable {
      */
     public void moveBlock(String exitName) throws TooHighException,
             InvalidBlockException, NoExitException {
-        if (exitName == null || !exits.containsKey(exitName)) {
-            throw new NoExitException();
+        moveBlockTo(exitName == null ? null : getExit(exitName));
+    }
+
+    /**
+     * Move the top block to the tile at an exit, given the exit index. <br>
+     * Equivalent to moveBlock(exitName(index)).
+     * @param index NORTH, EAST, SOUTH or WEST
+     * @throws TooHighException if the target tile is &ge; to this one.
+     * @throws InvalidBlockException if the block is not moveable
+     * @throws NoExitException if the exit does not exist
+     */
+    public void moveBlock(int index) throws TooHighException,
+            InvalidBlockException, NoExitException {
+        moveBlockTo(directionExits[index]);
+    }
+
+    /**
+     * Move the top block to another tile, as moveBlock() describes.
+     * @param exit the tile at the exit, or null if there is no such exit
+     * @throws TooHighException if the target tile is &ge; to this one.
+     * @throws InvalidBlockException if the block is not moveable
+     * @throws NoExitException if exit is null
+     */
+    private void moveBlockTo(Tile exit) throws TooHighException,
+            InvalidBlockException, NoExitException {
+        switch (tryMoveBlockTo(exit)) {
+            case NO_EXIT:
+                throw new NoExitException();
+            case TOO_HIGH:
+                throw new TooHighException();
+            case INVALID_BLOCK:
+                throw new InvalidBlockException();
+            default:
+                break;
         }
+    }
 
-        Tile exit = exits.get(exitName);
-        if (exit.getBlocks().size() >= blocks.size()) {
-            throw new TooHighException();
+    /**
+     * Attempt to move the top block to the tile at the named exit, as
+     * moveBlock() does, but return the outcome instead of throwing an
+     * exception.
+     * @param exitName the name of the exit to move the block to
+     * @return NO_EXIT if the exit is null or does not exist, TOO_HIGH if the
+     *         target tile is &ge; to this one, INVALID_BLOCK if the block is
+     *         not moveable, otherwise SUCCESS
+     */
+    public ActionOutcome tryMoveBlock(String exitName) {
+        return tryMoveBlockTo(exitName == null ? null : getExit(exitName));
+    }
+
+    /**
+     * Attempt to move the top block to the tile at an exit, given the exit
+     * index. <br>
+     * Equivalent to tryMoveBlock(exitName(index)).
+     * @param index NORTH, EAST, SOUTH or WEST
+     * @return the outcome, as for tryMoveBlock(String)
+     */
+    public ActionOutcome tryMoveBlock(int index) {
+        return tryMoveBlockTo(directionExits[index]);
+    }
+
+    /**
+     * Move the top block to another tile, as moveBlock() describes.
+     * @param exit the tile at the exit, or null if there is no such exit
+     * @return the outcome, as for tryMoveBlock(String)
+     */
+    private ActionOutcome tryMoveBlockTo(Tile exit) {
+        SnapshotLog log = getSnapshotLog();
+        if (log == null || exit == null) {
+            return applyMoveBlockTo(exit);
         }
+        return log.write(this, exit, null, () -> applyMoveBlockTo(exit));
+    }
 
-        Block block = null;
-        try {
-            block = getTopBlock();
-        } catch (TooLowException tooLow) {
-            // not possible to end up here,
-            // but required anyway.
-            assert (false);
+    /**
+     * Move the top block to another tile, as moveBlock() describes, without
+     * recording the change in the snapshot log.
+     * @param exit the tile at the exit, or null if there is no such exit
+     * @return the outcome, as for tryMoveBlock(String)
+     */
+    private ActionOutcome applyMoveBlockTo(Tile exit) {
+        if (exit == null) {
+            return ActionOutcome.NO_EXIT;
         }
 
-        if (!block.isMoveable()) {
-            throw new InvalidBlockException();
+        int height = height();
+        if (exit.height() >= height) {
+            return ActionOutcome.TOO_HIGH;
         }
 
-        // should not throw TooHighException, because must be < 8 blocks
-        exit.placeBlock(block);
+        // there is a top block, because this tile is higher than the exit
+        Block block = blockAt(height - 1);
+        if (!block.isMoveable()) {
+            return ActionOutcome.INVALID_BLOCK;
+        }
 
-        try {
-            removeTopBlock();
-        } catch (TooLowException tooLow) {
-            // not possible to end up here,
-            // but required anyway.
-            assert (false);
+        // should not fail, because must be < 8 blocks
+        ActionOutcome placed = exit.applyPlaceBlock(block);
+        if (placed != ActionOutcome.SUCCESS) {
+            return placed;
         }
+
+        removeTop();
+        return ActionOutcome.SUCCESS;
     }
 
     /**
@@ -282,17 +951,69 @@ public class Tile implements Serializable {
      */
     public void placeBlock(Block block) throws TooHighException,
             InvalidBlockException {
+        switch (tryPlaceBlock(block)) {
+            case INVALID_BLOCK:
+                throw new InvalidBlockException();
+            case TOO_HIGH:
+                throw new TooHighException();
+            default:
+                break;
+        }
+    }
+
+    /**
+     * Attempt to place a block on a tile, as placeBlock() does, but return
+     * the outcome instead of throwing an exception.
+     * @param block the block to place.
+     * @return INVALID_BLOCK if the block is null, TOO_HIGH if there are
+     *         already 8 blocks on the tile, or if this is a ground block and
+     *         there are already 3 or more blocks on the tile, otherwise
+     *         SUCCESS
+     */
+    public ActionOutcome tryPlaceBlock(Block block) {
+        SnapshotLog log = getSnapshotLog();
+        if (log == null) {
+            return applyPlaceBlock(block);
+        }
+        return log.write(this, null, null, () -> applyPlaceBlock(block));
+    }
+
+    /**
+     * Place a block on a tile, as tryPlaceBlock() does, without recording
+     * the change in the snapshot log (the caller records it).
+     * @param block the block to place.
+     * @return the outcome, as for tryPlaceBlock()
+     */
+    ActionOutcome applyPlaceBlock(Block block) {
         if (block == null) {
-            throw new InvalidBlockException();
+            return ActionOutcome.INVALID_BLOCK;
         }
 
-        if (blocks.size() >= MAX_BLOCKS
+        int height = height();
+        if (height >= MAX_BLOCKS
                 || (block instanceof GroundBlock
-                && blocks.size() >= MAX_GROUND_BLOCKS)) {
-            throw new TooHighException();
+                && height >= MAX_GROUND_BLOCKS)) {
+            return ActionOutcome.TOO_HIGH;
         }
 
-        blocks.add(block);
+        StateHash hash = getStateHash();
+        if (hash != null) {
+            hash.toggleBlock(hash.seedOf(this), height,
+                    StateHash.typeOf(block));
+        }
+
+        int code = StandardBlocks.standardOrdinal(block);
+        if (blocks == null && code >= 0) {
+            column = pushCode(column, code);
+        } else {
+            // not a standard block, so fall back to storing a list
+            List<Block> list = new ArrayList<>(getBlocks());
+            list.add(block);
+            blocks = list;
+            column = 0;
+        }
+        changed();
+        return ActionOutcome.SUCCESS;
     }
 
 }
@@ -0,0 +1,165 @@
+package csse2002.block.world;
+
+/**
+ * The tiles of a WorldMap as a graph of tile indexes (in breadth-first-search
+ * order when the graph was built, see {@link SparseTileArray#getTiles()}),
+ * for searching the moves a builder can make. <br>
+ * The graph only stores the tiles and the index of the tile next to each
+ * one in each direction, which do not change. Whether a builder can move
+ * between two tiles (see Builder.canEnter()) is worked out from the tiles'
+ * current exit masks and heights when asked, so the graph stays correct as
+ * blocks and exits change. <br>
+ * Only the "north", "east", "south" and "west" exits are followed, as they
+ * are the moves Action and the game can replay.
+ * @serial exclude
+ */
+final class TileGraph {
+
+    // the change in x and y of a move in each direction, by exit index
+    private static final int[] DIRECTIONS_X = {0, 1, 0, -1};
+    private static final int[] DIRECTIONS_Y = {-1, 0, 1, 0};
+
+    // the tiles and their positions, by index
+    private final Tile[] tiles;
+    private final int[] xs;
+    private final int[] ys;
+
+    // the index of the tile next to each tile in each direction, or -1,
+    // at index * 4 + direction
+    private final int[] adjacent;
+
+    // the tiles by position and identity, to look up the indexes of tiles.
+    // Kept apart from the map's SparseTileArray, whose indexes change when
+    // exits change.
+    private final TileIndex index;
+
+    /**
+     * Create the graph of the tiles of a map.
+     * @param tileArray the tiles of the map
+     */
+    TileGraph(SparseTileArray tileArray) {
+        int size = tileArray.size();
+        tiles = new Tile[size];
+        xs = new int[size];
+        ys = new int[size];
+        adjacent = new int[size * 4];
+        index = new TileIndex();
+
+        for (int i = 0; i < size; i++) {
+            tiles[i] = tileArray.getTileAt(i);
+            xs[i] = tileArray.getX(i);
+            ys[i] = tileArray.getY(i);
+            index.add(tiles[i], xs[i], ys[i]);
+        }
+        for (int i = 0; i < size; i++) {
+            for (int direction = 0; direction < 4; direction++) {
+                adjacent[i * 4 + direction] = index.slotAt(
+                        xs[i] + DIRECTIONS_X[direction],
+                        ys[i] + DIRECTIONS_Y[direction]);
+            }
+        }
+    }
+
+    /**
+     * Get the number of tiles.
+     * @return the number of tiles
+     */
+    int size() {
+        return tiles.length;
+    }
+
+    /**
+     * Get a tile.
+     * @param index the index of the tile
+     * @return the tile
+     */
+    Tile getTile(int index) {
+        return tiles[index];
+    }
+
+    /**
+     * Get the index of a tile.
+     * @param tile the tile
+     * @return the index, or -1 if the tile is not in the map
+     */
+    int indexOf(Tile tile) {
+        return index.slotOf(tile);
+    }
+
+    /**
+     * Get the index of the tile at a position.
+     * @param x the x coordinate
+     * @param y the y coordinate
+     * @return the index, or -1 if there is no tile at (x, y)
+     */
+    int indexAt(int x, int y) {
+        return index.slotAt(x, y);
+    }
+
+    /**
+     * Get the x coordinate of a tile.
+     * @param index the index of the tile
+     * @return the x coordinate
+     */
+    int getX(int index) {
+        return xs[index];
+    }
+
+    /**
+     * Get the y coordinate of a tile.
+     * @param index the index of the tile
+     * @return the y coordinate
+     */
+    int getY(int index) {
+        return ys[index];
+    }
+
+    /**
+     * Get the tile next to a tile in a direction.
+     * @param index the index of the tile
+     * @param direction Tile.NORTH, EAST, SOUTH or WEST
+     * @return the index of the tile next to it, or -1 if there is no tile
+     *         at that position
+     */
+    int neighbour(int index, int direction) {
+        return adjacent[index * 4 + direction];
+    }
+
+    /**
+     * Get the tile a builder on a tile moves to by moving in a direction,
+     * if it can.
+     * @param from the index of the builder's tile
+     * @param direction Tile.NORTH, EAST, SOUTH or WEST
+     * @return the index of the tile moved to, or -1 if the builder cannot
+     *         enter it (there is no exit, or the heights differ by more
+     *         than 1)
+     */
+    int move(int from, int direction) {
+        Tile tile = tiles[from];
+        if ((tile.exitMask() & (1 << direction)) == 0) {
+            return -1;
+        }
+        int to = adjacent[from * 4 + direction];
+        if (to < 0 || tile.getExit(direction) != tiles[to]
+                || Math.abs(tiles[to].height() - tile.height()) > 1) {
+            return -1;
+        }
+        return to;
+    }
+
+    /**
+     * Get the tile a builder moves from to reach a tile by moving in a
+     * direction, if it can.
+     * @param to the index of the tile moved to
+     * @param direction Tile.NORTH, EAST, SOUTH or WEST
+     * @return the index of the tile moved from, or -1 if no builder can
+     *         reach to by moving in that direction
+     */
+    int moveInto(int to, int direction) {
+        int from = adjacent[to * 4 + (direction ^ 2)];
+        if (from < 0 || move(from, direction) != to) {
+            return -1;
+        }
+        return from;
+    }
+}
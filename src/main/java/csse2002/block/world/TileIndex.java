@@ -0,0 +1,341 @@
+package csse2002.block.world;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A primitive index of {@link Tile Tile}s by position, used internally by
+ * {@link SparseTileArray SparseTileArray}. <br>
+ * Each added tile is given a slot number (0, 1, 2, ...) in the order it
+ * was added. <br>
+ * Positions are grouped into square chunks of CHUNK_SIZE x CHUNK_SIZE
+ * tiles. Each chunk holds a dense array of its tiles, and chunks are looked
+ * up by packing the chunk coordinates into a single long. Neighbouring
+ * positions usually fall in the same chunk, so the most recently used chunk
+ * is remembered to skip the hash lookup. <br>
+ * Tiles are looked up by identity. Neither lookup boxes or allocates, and
+ * both hash tables use open addressing with linear probing.
+ * @serial exclude
+ */
+class TileIndex {
+
+    /* log2 of the width and height of a chunk */
+    static final int CHUNK_SHIFT = 4;
+
+    /* The width and height of a chunk, in tiles. */
+    static final int CHUNK_SIZE = 1 << CHUNK_SHIFT;
+
+    /* Mask for the coordinates of a tile within its chunk. */
+    private static final int CHUNK_MASK = CHUNK_SIZE - 1;
+
+    /**
+     * A CHUNK_SIZE x CHUNK_SIZE square of tiles.
+     */
+    private static final class Chunk {
+
+        // the packed chunk coordinates
+        final long key;
+
+        // tiles in the chunk, indexed by (y within chunk) * CHUNK_SIZE
+        // + (x within chunk)
+        final Tile[] tiles = new Tile[CHUNK_SIZE * CHUNK_SIZE];
+
+        /**
+         * Create an empty chunk.
+         * @param key the packed chunk coordinates
+         */
+        Chunk(long key) {
+            this.key = key;
+        }
+    }
+
+    // the initial capacity of the hash tables, must be a power of two
+    private static final int INITIAL_CAPACITY = 16;
+
+    // multiplier used to spread hash bits (the golden ratio)
+    private static final long MIX = 0x9E3779B97F4A7C15L;
+
+    // tiles, x and y coordinates, indexed by slot
+    private Tile[] slotTiles;
+    private int[] slotXs;
+    private int[] slotYs;
+
+    // the number of slots in use
+    private int size;
+
+    // chunk table, null if empty
+    private Chunk[] chunks;
+
+    // the number of chunks in use
+    private int chunkCount;
+
+    // the chunk of the most recent lookup, null if none. Held in a
+    // single field, so it is always a consistent (key, tiles) pair.
+    private Chunk lastChunk;
+
+    // identity table: tile keys and (slot + 1), 0 if empty
+    private Tile[] identityKeys;
+    private int[] identitySlots;
+
+    /**
+     * Construct an empty TileIndex.
+     */
+    TileIndex() {
+        slotTiles = new Tile[INITIAL_CAPACITY];
+        slotXs = new int[INITIAL_CAPACITY];
+        slotYs = new int[INITIAL_CAPACITY];
+        size = 0;
+
+        chunks = new Chunk[INITIAL_CAPACITY];
+        chunkCount = 0;
+        identityKeys = new Tile[INITIAL_CAPACITY * 2];
+        identitySlots = new int[INITIAL_CAPACITY * 2];
+    }
+
+    /**
+     * Pack a position into a single long, x in the high 32 bits and y in
+     * the low 32 bits.
+     * @param x the x coordinate
+     * @param y the y coordinate
+     * @return the packed position
+     */
+    static long pack(int x, int y) {
+        return ((long) x << 32) | (y & 0xFFFFFFFFL);
+    }
+
+    /**
+     * Get the packed coordinates of the chunk containing (x, y).
+     * @param x the x coordinate
+     * @param y the y coordinate
+     * @return the packed chunk coordinates
+     */
+    static long chunkKey(int x, int y) {
+        return pack(x >> CHUNK_SHIFT, y >> CHUNK_SHIFT);
+    }
+
+    /**
+     * Get the number of tiles in the index.
+     * @return the number of tiles
+     */
+    int size() {
+        return size;
+    }
+
+    /**
+     * Get the tile in a slot.
+     * @param slot the slot, between 0 and size() - 1
+     * @return the tile in that slot
+     */
+    Tile tile(int slot) {
+        return slotTiles[slot];
+    }
+
+    /**
+     * Get the x coordinate of the tile in a slot.
+     * @param slot the slot, between 0 and size() - 1
+     * @return the x coordinate
+     */
+    int x(int slot) {
+        return slotXs[slot];
+    }
+
+    /**
+     * Get the y coordinate of the tile in a slot.
+     * @param slot the slot, between 0 and size() - 1
+     * @return the y coordinate
+     */
+    int y(int slot) {
+        return slotYs[slot];
+    }
+
+    /**
+     * Get the slot of the tile at (x, y).
+     * @param x the x coordinate
+     * @param y the y coordinate
+     * @return the slot, or -1 if there is no tile at (x, y)
+     */
+    int slotAt(int x, int y) {
+        Tile tile = tileAt(x, y);
+        return tile == null ? -1 : slotOf(tile);
+    }
+
+    /**
+     * Get the slot of the given tile instance.
+     * @param tile the tile to find
+     * @return the slot, or -1 if the tile is not in the index
+     */
+    int slotOf(Tile tile) {
+        int mask = identityKeys.length - 1;
+        int i = identityHash(tile) & mask;
+
+        while (identitySlots[i] != 0) {
+            if (identityKeys[i] == tile) {
+                return identitySlots[i] - 1;
+            }
+            i = (i + 1) & mask;
+        }
+        return -1;
+    }
+
+    /**
+     * Get the tile at (x, y).
+     * @param x the x coordinate
+     * @param y the y coordinate
+     * @return the tile, or null if there is no tile at (x, y)
+     */
+    Tile tileAt(int x, int y) {
+        long key = chunkKey(x, y);
+        Chunk chunk = lastChunk;
+
+        if (chunk == null || chunk.key != key) {
+            chunk = findChunk(key);
+            if (chunk == null) {
+                return null;
+            }
+            lastChunk = chunk;
+        }
+        return chunk.tiles[offsetInChunk(x, y)];
+    }
+
+    /**
+     * Add a tile at (x, y) in the next slot.
+     * @param tile the tile to add
+     * @param x the x coordinate
+     * @param y the y coordinate
+     * @return the slot given to the tile
+     * @require slotAt(x, y) == -1 &amp;&amp; slotOf(tile) == -1
+     */
+    int add(Tile tile, int x, int y) {
+        if (size == slotTiles.length) {
+            int capacity = size * 2;
+            slotTiles = Arrays.copyOf(slotTiles, capacity);
+            slotXs = Arrays.copyOf(slotXs, capacity);
+            slotYs = Arrays.copyOf(slotYs, capacity);
+            rehashIdentities(capacity * 2);
+        }
+
+        int slot = size++;
+        slotTiles[slot] = tile;
+        slotXs[slot] = x;
+        slotYs[slot] = y;
+        insertIdentity(slot);
+
+        long key = chunkKey(x, y);
+        Chunk chunk = findChunk(key);
+        if (chunk == null) {
+            chunk = insertChunk(key);
+        }
+        chunk.tiles[offsetInChunk(x, y)] = tile;
+        return slot;
+    }
+
+    /**
+     * Get a copy of the tiles in slot order.
+     * @return a new list of tiles
+     */
+    List<Tile> tiles() {
+        return new ArrayList<>(Arrays.asList(slotTiles).subList(0, size));
+    }
+
+    /**
+     * Get the index of (x, y) within the tile array of its chunk.
+     * @param x the x coordinate
+     * @param y the y coordinate
+     * @return the index within the chunk
+     */
+    private static int offsetInChunk(int x, int y) {
+        return ((y & CHUNK_MASK) << CHUNK_SHIFT) | (x & CHUNK_MASK);
+    }
+
+    /**
+     * Find a chunk in the chunk table.
+     * @param key the packed chunk coordinates
+     * @return the chunk, or null if there are no tiles in that chunk
+     */
+    private Chunk findChunk(long key) {
+        int mask = chunks.length - 1;
+        int i = (int) ((key * MIX) >>> 32) & mask;
+
+        Chunk chunk;
+        while ((chunk = chunks[i]) != null) {
+            if (chunk.key == key) {
+                return chunk;
+            }
+            i = (i + 1) & mask;
+        }
+        return null;
+    }
+
+    /**
+     * Create a new empty chunk and insert it into the chunk table,
+     * growing the table if needed.
+     * @param key the packed chunk coordinates
+     * @return the new chunk
+     */
+    private Chunk insertChunk(long key) {
+        if ((chunkCount + 1) * 2 > chunks.length) {
+            Chunk[] oldChunks = chunks;
+            chunks = new Chunk[oldChunks.length * 2];
+            for (Chunk chunk : oldChunks) {
+                if (chunk != null) {
+                    placeChunk(chunk);
+                }
+            }
+        }
+
+        Chunk chunk = new Chunk(key);
+        placeChunk(chunk);
+        chunkCount++;
+        return chunk;
+    }
+
+    /**
+     * Place a chunk in the first free entry of the chunk table.
+     * @param chunk the chunk to place
+     */
+    private void placeChunk(Chunk chunk) {
+        int mask = chunks.length - 1;
+        int i = (int) ((chunk.key * MIX) >>> 32) & mask;
+        while (chunks[i] != null) {
+            i = (i + 1) & mask;
+        }
+        chunks[i] = chunk;
+    }
+
+    /**
+     * Insert a slot into the identity table.
+     * @param slot the slot to insert
+     */
+    private void insertIdentity(int slot) {
+        Tile tile = slotTiles[slot];
+        int mask = identityKeys.length - 1;
+        int i = identityHash(tile) & mask;
+        while (identitySlots[i] != 0) {
+            i = (i + 1) & mask;
+        }
+        identityKeys[i] = tile;
+        identitySlots[i] = slot + 1;
+    }
+
+    /**
+     * Rebuild the identity table with a new capacity.
+     * @param capacity the new capacity, a power of two
+     */
+    private void rehashIdentities(int capacity) {
+        identityKeys = new Tile[capacity];
+        identitySlots = new int[capacity];
+        for (int slot = 0; slot < size; slot++) {
+            insertIdentity(slot);
+        }
+    }
+
+    /**
+     * Compute a well spread identity hash for a tile.
+     * @param tile the tile
+     * @return the hash
+     */
+    private static int identityHash(Tile tile) {
+        return (int) ((System.identityHashCode(tile) * MIX) >>> 32);
+    }
+}
@@ -0,0 +1,120 @@
+package csse2002.block.world;
+
+/**
+ * Passes the changes to the tiles of a WorldMap to the map's snapshot log,
+ * state hash and reachability components, whichever the map keeps, and
+ * the changes to its builder to its state hash. <br>
+ * Each tile of the map refers to the map's tracker, which is its only
+ * reference to them. They keep what they need per tile in arrays indexed
+ * by the tile's index in the map's TileGraph (see indexOf()), so a tile
+ * costs no more memory while the map keeps none of them. <br>
+ * A tracker is made for one set of tiles: when tiles are added to or
+ * removed from the map, the map detaches its tracker (from the tiles and
+ * the builder) and makes a new one.
+ * @serial exclude
+ */
+final class TileTracker {
+
+    // the graph of the map's tiles, whose indexes the tracked data uses
+    private final TileGraph graph;
+
+    // the builder of the map
+    private final Builder builder;
+
+    // the data tracking the tiles, or null if the map does not keep it
+    private volatile SnapshotLog snapshotLog;
+    private volatile StateHash stateHash;
+    private volatile Reachability reachability;
+
+    /**
+     * Create a tracker for the tiles of a graph and a builder, and attach
+     * it to them. <br>
+     * Must not be called while the map is being changed.
+     * @param graph the graph of the map's tiles
+     * @param builder the builder of the map
+     */
+    TileTracker(TileGraph graph, Builder builder) {
+        this.graph = graph;
+        this.builder = builder;
+        for (int i = 0; i < graph.size(); i++) {
+            graph.getTile(i).attachTracker(this);
+        }
+        builder.attachTracker(this);
+    }
+
+    /**
+     * Detach this tracker from the tiles and builder it was attached to, so
+     * that their changes are no longer passed on.
+     */
+    void detach() {
+        for (int i = 0; i < graph.size(); i++) {
+            graph.getTile(i).detachTracker(this);
+        }
+        builder.detachTracker(this);
+    }
+
+    /**
+     * Get the index of a tile, which the tracked data is indexed by.
+     * @param tile the tile
+     * @return the index of the tile in the map's TileGraph, or -1 if the
+     *         tile is not tracked
+     */
+    int indexOf(Tile tile) {
+        return graph.indexOf(tile);
+    }
+
+    /**
+     * Get the snapshot log changes to the tiles are recorded in.
+     * @return the log, or null if changes are not recorded
+     */
+    SnapshotLog getSnapshotLog() {
+        return snapshotLog;
+    }
+
+    /**
+     * Record changes to the tiles in a snapshot log.
+     * @param log the snapshot log of the map
+     */
+    void setSnapshotLog(SnapshotLog log) {
+        snapshotLog = log;
+    }
+
+    /**
+     * Get the state hash changes to the tiles and builder update.
+     * @return the state hash, or null if the map does not keep one
+     */
+    StateHash getStateHash() {
+        return stateHash;
+    }
+
+    /**
+     * Update a state hash with changes to the tiles and builder.
+     * @param hash the state hash of the map
+     */
+    void setStateHash(StateHash hash) {
+        stateHash = hash;
+    }
+
+    /**
+     * Tell the reachability components, if any, that a tile's height or
+     * exits have changed.
+     * @param tile the tile
+     */
+    void changed(Tile tile) {
+        Reachability components = reachability;
+        if (components != null) {
+            int index = graph.indexOf(tile);
+            if (index >= 0) {
+                components.changed(index);
+            }
+        }
+    }
+
+    /**
+     * Update reachability components with changes to the tiles.
+     * @param components the reachability components of the map
+     */
+    void setReachability(Reachability components) {
+        reachability = components;
+    }
+}
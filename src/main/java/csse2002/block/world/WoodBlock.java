@@ -5,6 +5,18 @@ package csse2002.block.world;
  * @serial exclude
  */
 public class WoodBlock implements Block {
+
+    /**
+     * The type ordinal of WoodBlocks (see Block.getTypeOrdinal()).
+     */
+    public static final int ORDINAL = 0;
+
+    /**
+     * A shared WoodBlock. WoodBlocks have no state, so this instance can be
+     * used instead of constructing a new one.
+     */
+    public static final WoodBlock INSTANCE = new WoodBlock();
+
     /**
      * Get the colour of a WoodBlock. <br>
      * Always returns "brown".
@@ -55,4 +67,14 @@ public class WoodBlock implements Block {
         return true;
     }
 
+    /**
+     * Get the type ordinal of a WoodBlock. <br>
+     * Always returns WoodBlock.ORDINAL
+     * @return 0
+     */
+    @Override
+    public int getTypeOrdinal() {
+        return ORDINAL;
+    }
+
 }
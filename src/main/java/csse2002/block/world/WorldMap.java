@@ -6,9 +6,14 @@ import java.io.FileNotFoundException;
 import java.io.FileReader;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
 
 import java.util.ArrayList;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
 
 /**
  * A class to store a world map.
@@ -26,9 +31,40 @@ public class WorldMap {
     // the builder
     private Builder builder;
 
+    // the history kept for snapshots, or null if no snapshot has been taken
+    private SnapshotLog snapshotLog;
+
+    // the state hash, or null if stateHash() has not been called
+    private StateHash stateHash;
+
+    // the graph of the tiles, or null if it has not been needed yet
+    private TileGraph tileGraph;
+
+    // the path finder used by findPath(), or null if it has not been called
+    private PathFinder pathFinder;
+
+    // the reachability components, or null if isReachable() has not been
+    // called
+    private Reachability reachability;
+
+    // passes changes to the tiles on to snapshotLog, stateHash and
+    // reachability, or null if none of them has been built
+    private TileTracker tracker;
+
+    // the version of tileArray the fields above were built for
+    private int tilesVersion;
+
     // store the system line separator ("\n", "\r\n" or "\r")
     private static final String LINE_SEP = System.lineSeparator();
 
+    // the size of the buffer used by saveMap, in characters
+    private static final int WRITE_BUFFER_SIZE = 1 << 16;
+
+    // the exit indices of "east", "north", "south" and "west", in order of
+    // name, which is the order saveMap writes exits in
+    private static final int[] EXITS_BY_NAME =
+            {Tile.EAST, Tile.NORTH, Tile.SOUTH, Tile.WEST};
+
     /**
      * A helper class for reading lines. It wraps a BufferedReader
      * and maintains the line number for error reporting.
@@ -311,6 +347,299 @@ public class WorldMap {
         return tileArray.getTile(position);
     }
 
+    /**
+     * Get the tile at position (x, y). <br>
+     * Equivalent to getTile(new Position(x, y)), without allocating a
+     * Position.
+     * @param x the x coordinate
+     * @param y the y coordinate
+     * @return the tile at (x, y), or null if there is no such tile
+     */
+    public Tile getTile(int x, int y) {
+        return tileArray.getTile(x, y);
+    }
+
+    /**
+     * Get the height (number of blocks) of the tile at position (x, y).
+     * @param x the x coordinate
+     * @param y the y coordinate
+     * @return the height of the tile at (x, y), or 0 if there is no such
+     *         tile
+     */
+    public int heightAt(int x, int y) {
+        Tile tile = tileArray.getTile(x, y);
+        return tile == null ? 0 : tile.height();
+    }
+
+    /**
+     * Get the heights of the 8 tiles around position (x, y), as for
+     * heightAt(). <br>
+     * The heights are stored starting from the north-west tile and
+     * proceeding clockwise:
+     * <pre>
+     * 0 1 2
+     * 7 . 3
+     * 6 5 4
+     * </pre>
+     * @param x the x coordinate
+     * @param y the y coordinate
+     * @param heights the array to store the heights in
+     * @require heights.length &gt;= 8
+     */
+    public void neighbourHeights(int x, int y, int[] heights) {
+        heights[0] = heightAt(x - 1, y - 1);
+        heights[1] = heightAt(x, y - 1);
+        heights[2] = heightAt(x + 1, y - 1);
+        heights[3] = heightAt(x + 1, y);
+        heights[4] = heightAt(x + 1, y + 1);
+        heights[5] = heightAt(x, y + 1);
+        heights[6] = heightAt(x - 1, y + 1);
+        heights[7] = heightAt(x - 1, y);
+    }
+
+    /**
+     * Create a copy of this map, with copies of its tiles and builder, so
+     * that one loaded map can be used many times. <br>
+     * Exits to tiles outside the map (e.g. named exits) lead to copies of
+     * those tiles with the same blocks and no exits.
+     * @return the copy
+     * @throws WorldMapInconsistentException if this map is inconsistent
+     *         (not possible for a loaded map)
+     */
+    WorldMap copy() throws WorldMapInconsistentException {
+        Map<Tile, Tile> copies = new IdentityHashMap<>();
+        int numTiles = tileArray.size();
+        for (int i = 0; i < numTiles; i++) {
+            Tile tile = tileArray.getTileAt(i);
+            copies.put(tile, tile.copyBlocks());
+        }
+
+        for (int i = 0; i < numTiles; i++) {
+            Tile tile = tileArray.getTileAt(i);
+            Tile copy = copies.get(tile);
+            for (Map.Entry<String, Tile> exit : tile.getExits().entrySet()) {
+                Tile target = copies.get(exit.getValue());
+                if (target == null) {
+                    target = exit.getValue().copyBlocks();
+                    copies.put(exit.getValue(), target);
+                }
+                try {
+                    copy.addExit(exit.getKey(), target);
+                } catch (NoExitException e) {
+                    // not possible, the name and target are not null
+                    assert (false);
+                }
+            }
+        }
+
+        Tile builderTile = copies.get(builder.getCurrentTile());
+        if (builderTile == null) {
+            builderTile = builder.getCurrentTile().copyBlocks();
+        }
+        Builder builderCopy = new Builder(builder.getName(), builderTile);
+        builderCopy.restore(builderTile, builder.saveInventory());
+
+        return new WorldMap(copies.get(tileArray.getTileAt(0)), startPosition,
+                builderCopy);
+    }
+
+    /**
+     * Get the tiles of the map with their positions.
+     * @return the sparse tile array
+     */
+    SparseTileArray getTileArray() {
+        return tileArray;
+    }
+
+    /**
+     * Take a snapshot of the blocks and builder of the map, which other
+     * threads can read while the map changes (see {@link WorldSnapshot}).
+     * <br>
+     * Taking a snapshot does not copy the map: instead, until the snapshot
+     * is closed, the first change to each 16 by 16 area of tiles after it is
+     * taken saves a copy of that area's blocks. A snapshot can be taken while
+     * the map is changing, and only waits for changes already in progress.
+     * <br>
+     * The first snapshot of a map prepares its tiles to record changes, and
+     * must not be taken while the map is changing.
+     * @return the snapshot, to be closed when no longer needed
+     */
+    public synchronized WorldSnapshot snapshot() {
+        checkTiles();
+        if (snapshotLog == null) {
+            snapshotLog = new SnapshotLog(getTileGraph(), builder);
+            getTracker().setSnapshotLog(snapshotLog);
+        }
+        return new WorldSnapshot(this, snapshotLog, snapshotLog.open());
+    }
+
+    /**
+     * Get a 64 bit hash of the state of the map: the blocks on each tile
+     * (by position, level and block type), the builder's position and the
+     * builder's inventory (as a multiset, ignoring order). <br>
+     * Maps in the same state have the same hash, however they got there,
+     * and maps in different states almost certainly have different hashes.
+     * <br>
+     * The hash is updated by each change to the map, so this method is
+     * O(1), except that the first call computes it from the whole map and
+     * must not be made while the map is changing.
+     * @return the hash
+     */
+    public synchronized long stateHash() {
+        checkTiles();
+        if (stateHash == null) {
+            stateHash = new StateHash(getTileGraph(), builder);
+            getTracker().setStateHash(stateHash);
+        }
+        return stateHash.get();
+    }
+
+    /**
+     * Find a shortest route for a builder between two tiles of the map,
+     * following the "north", "east", "south" and "west" exits and only
+     * entering tiles it can enter (see Builder.canEnter()). <br>
+     * The route is returned as exit indices (Tile.NORTH, EAST, SOUTH or
+     * WEST), which can be replayed one move at a time, e.g. as MOVE_BUILDER
+     * actions (see {@link PathFinder#toActions(int[])}). <br>
+     * Searches made by this method are one at a time; use a
+     * {@link PathFinder} per thread to search in parallel.
+     * @param from the tile to start at
+     * @param to the tile to reach
+     * @return the directions of each move in order (empty if from == to),
+     *         or null if to cannot be reached, or either tile is not in the
+     *         map
+     * @require from != null &amp;&amp; to != null
+     */
+    public synchronized int[] findPath(Tile from, Tile to) {
+        checkTiles();
+        if (pathFinder == null) {
+            pathFinder = new PathFinder(this);
+        }
+        return pathFinder.findPath(from, to);
+    }
+
+    /**
+     * Check whether a builder can walk from one position to another, by the
+     * moves findPath() follows. <br>
+     * The map keeps the components of tiles that a builder can walk between
+     * up to date as blocks and exits change, so this method is near
+     * constant time, except that the first call computes them from the
+     * whole map and must not be made while the map is changing. While the
+     * map has a one way exit (or a move blocked only in one direction),
+     * positions in different components are searched for a route.
+     * @param from the position to start at
+     * @param to the position to reach
+     * @return true iff there are tiles at both positions, and a builder
+     *         can walk from the first to the second
+     * @require from != null &amp;&amp; to != null
+     */
+    public boolean isReachable(Position from, Position to) {
+        Reachability components;
+        int first;
+        int second;
+        synchronized (this) {
+            TileGraph graph = getTileGraph();
+            first = graph.indexAt(from.getX(), from.getY());
+            second = graph.indexAt(to.getX(), to.getY());
+            if (first < 0 || second < 0) {
+                return false;
+            }
+            if (reachability == null) {
+                reachability = new Reachability(this);
+                getTracker().setReachability(reachability);
+            }
+            components = reachability;
+        }
+        return components.isReachable(first, second);
+    }
+
+    /**
+     * Add an exit to a tile of the map (see Tile.addExit()), adding the
+     * tiles it links to the map. <br>
+     * Only the tiles newly linked by the exit are checked for geometric
+     * consistency (see {@link SparseTileArray#addExit}). If the exit would
+     * make the map inconsistent, it is not added. <br>
+     * If tiles are added, data kept about the tiles of the map (snapshot
+     * history, the state hash, reachability components) is rebuilt when it
+     * is next needed, and PathFinder objects made for the map before must
+     * not be used after. Tiles must not be added while snapshots are open or
+     * while the map is changing. ParallelActionExecutor and
+     * MultiBuilderWorld objects made for the map before must not be used
+     * after any exit is added or removed, as the order of the tiles may
+     * change.
+     * @param tile the tile to add the exit to
+     * @param name the name of the exit
+     * @param target the tile the exit goes to
+     * @throws NoExitException if name or target is null
+     * @throws WorldMapInconsistentException if the exit would make the
+     *         map geometrically inconsistent
+     * @require tile != null
+     */
+    public synchronized void addExit(Tile tile, String name, Tile target)
+            throws NoExitException, WorldMapInconsistentException {
+        tileArray.addExit(tile, name, target);
+    }
+
+    /**
+     * Remove an exit from a tile of the map (see Tile.removeExit()),
+     * removing any tiles no longer linked to the map. <br>
+     * The tiles are searched again when they are next needed (and only
+     * once for any number of changes). The same restrictions as addExit()
+     * apply.
+     * @param tile the tile to remove the exit from
+     * @param name the name of the exit
+     * @throws NoExitException if name is not an exit of tile, or is null
+     * @require tile != null
+     */
+    public synchronized void removeExit(Tile tile, String name)
+            throws NoExitException {
+        tileArray.removeExit(tile, name);
+    }
+
+    /**
+     * Get the graph of the tiles of the map, building it the first time.
+     * @return the graph
+     */
+    synchronized TileGraph getTileGraph() {
+        checkTiles();
+        if (tileGraph == null) {
+            tileGraph = new TileGraph(tileArray);
+        }
+        return tileGraph;
+    }
+
+    /**
+     * Get the tracker of changes to the tiles and builder of the map,
+     * attaching it to them the first time.
+     * @return the tracker
+     */
+    private TileTracker getTracker() {
+        if (tracker == null) {
+            tracker = new TileTracker(getTileGraph(), builder);
+        }
+        return tracker;
+    }
+
+    /**
+     * Drop the data kept about the tiles of the map if the tiles have
+     * changed since it was built.
+     */
+    private void checkTiles() {
+        int version = tileArray.version();
+        if (version != tilesVersion) {
+            tilesVersion = version;
+            if (tracker != null) {
+                tracker.detach();
+                tracker = null;
+            }
+            snapshotLog = null;
+            stateHash = null;
+            tileGraph = null;
+            pathFinder = null;
+            reachability = null;
+        }
+    }
+
     /**
      * Get a list of tiles in a breadth-first-search
      * order (see {@link SparseTileArray SparseTileArray.getTiles()}
@@ -432,7 +761,11 @@ public class WorldMap {
      * </ol>
      *
      * Hint: create a SparseTileArray as a member and call
-     * SparseTileArray.addLinkedTiles() to populate it.
+     * SparseTileArray.addLinkedTiles() to populate it. <br>
+     *
+     * Files starting with the magic bytes of the binary map format (as
+     * written by saveBinaryMap()) are loaded as binary maps instead. The
+     * builder is placed on the tile it was on when the map was saved.
      *
      * @param filename the name to load the file from
      * @throws WorldMapFormatException if the file is incorrectly formatted
@@ -446,9 +779,73 @@ public class WorldMap {
             throws WorldMapFormatException, WorldMapInconsistentException,
             FileNotFoundException {
 
-        LineReader reader = new LineReader(
-                new BufferedReader(new FileReader(filename)));
+        ByteBuffer contents = MappedMapReader.contents(filename);
+        Charset charset = Charset.defaultCharset();
+        if (contents != null && BinaryMapFormat.hasMagic(contents)) {
+            load(new BinaryMapReader(contents));
+        } else if (contents != null && MappedMapReader.canRead(charset)) {
+            load(new MappedMapReader(contents, charset));
+        } else {
+            load(new LineReader(new BufferedReader(new FileReader(filename))));
+        }
+    }
 
+    /**
+     * Load a world map from the contents of a binary map file.
+     * @param reader the reader for the file
+     * @throws WorldMapFormatException if the file is not a valid binary map
+     * @throws WorldMapInconsistentException if the file is a valid binary
+     *         map, but has inconsistencies (such as overlapping tiles)
+     */
+    private void load(BinaryMapReader reader)
+            throws WorldMapFormatException, WorldMapInconsistentException {
+        try {
+            reader.read();
+
+            Builder builder = new Builder(reader.getBuilderName(),
+                    reader.getBuilderTile(), reader.getInventory());
+            reset(reader.getTiles()[0], reader.getStartPosition(), builder);
+
+        } catch (TooHighException | InvalidBlockException
+                | NoExitException e) {
+            throw loadFailure(e);
+        }
+    }
+
+    /**
+     * Load a world map from the contents of a file read at once. <br>
+     * See the WorldMap(filename) constructor for the format of the map.
+     * @param reader the reader for the file
+     * @throws WorldMapFormatException if the file is incorrectly formatted
+     * @throws WorldMapInconsistentException if the file is correctly
+     *         formatted, but has inconsistencies (such as overlapping tiles)
+     */
+    private void load(MappedMapReader reader)
+            throws WorldMapFormatException, WorldMapInconsistentException {
+        try {
+            reader.read();
+
+            Tile startTile = reader.getTiles()[0];
+            Builder builder = new Builder(reader.getBuilderName(), startTile,
+                    reader.getInventory());
+            reset(startTile, reader.getStartPosition(), builder);
+
+        } catch (TooHighException | InvalidBlockException
+                | NoExitException e) {
+            throw loadFailure(e);
+        }
+    }
+
+    /**
+     * Load a world map by reading a file line by line. <br>
+     * See the WorldMap(filename) constructor for the format of the map.
+     * @param reader the line reader for the file
+     * @throws WorldMapFormatException if the file is incorrectly formatted
+     * @throws WorldMapInconsistentException if the file is correctly
+     *         formatted, but has inconsistencies (such as overlapping tiles)
+     */
+    private void load(LineReader reader)
+            throws WorldMapFormatException, WorldMapInconsistentException {
         try {
             // read in starting position
             String xString = reader.readLineOrThrow();
@@ -562,21 +959,35 @@ public class WorldMap {
             Builder builder = new Builder(builderName, startTile, inventory);
             reset(startTile, startPosition, builder);
 
-        } catch (TooHighException e) {
-            throw new WorldMapFormatException("A TooHighException would be "
-                    + "thrown.");
-        } catch (InvalidBlockException e) {
-            throw new WorldMapFormatException(
-                    "An InvalidBlockException would be thrown.");
-        } catch (NoExitException e) {
-            throw new WorldMapFormatException("A NoExitException would be "
-                    + "thrown.");
+        } catch (TooHighException | InvalidBlockException
+                | NoExitException e) {
+            throw loadFailure(e);
         } catch (IOException e) {
             throw new WorldMapFormatException("Readline would throw"
                     + " an IOException");
         }
     }
 
+    /**
+     * Get the exception to throw when loading a map would throw one of the
+     * exceptions of placing blocks or adding exits.
+     * @param e the exception loading the map would throw
+     * @return a WorldMapFormatException naming the exception
+     */
+    private static WorldMapFormatException loadFailure(
+            BlockWorldException e) {
+        if (e instanceof TooHighException) {
+            return new WorldMapFormatException("A TooHighException would be "
+                    + "thrown.");
+        } else if (e instanceof InvalidBlockException) {
+            return new WorldMapFormatException(
+                    "An InvalidBlockException would be thrown.");
+        } else {
+            return new WorldMapFormatException("A NoExitException would be "
+                    + "thrown.");
+        }
+    }
+
     /**
      * Saves the given WorldMap to a file specified by the filename. <br>
      * See the WorldMap(filename) constructor for the format of the map. <br>
@@ -609,105 +1020,135 @@ public class WorldMap {
     public void saveMap(String filename) throws
             IOException {
 
+        // write each part of the map as it is encoded, so saving takes time
+        // linear in the number of tiles and constant extra memory
+        try (BufferedWriter writer = new BufferedWriter(
+                new FileWriter(filename), WRITE_BUFFER_SIZE)) {
+
+            // start position
+            writer.write(Integer.toString(getStartPosition().getX()));
+            writer.write(LINE_SEP);
+            writer.write(Integer.toString(getStartPosition().getY()));
+            writer.write(LINE_SEP);
+
+            // builder
+            writer.write(getBuilder().getName());
+            writer.write(LINE_SEP);
+            writeBlocks(writer, getBuilder().getInventory());
+            writer.write(LINE_SEP);
+
+            // total tiles
+            int numTiles = tileArray.size();
+            writer.write("total:");
+            writer.write(Integer.toString(numTiles));
+            writer.write(LINE_SEP);
+
+            // tile blocks
+            for (int i = 0; i < numTiles; i++) {
+                writer.write(Integer.toString(i));
+                writer.write(' ');
+                writeBlocks(writer, tileArray.getTileAt(i).getBlocks());
+            }
+            writer.write(LINE_SEP);
 
-        // add everything to a string and then write that to a file
-        StringBuilder toWrite = new StringBuilder();
-
-        // start position
-        toWrite.append(getStartPosition().getX()).append(LINE_SEP);
-        toWrite.append(getStartPosition().getY()).append(LINE_SEP);
-
-        // builder
-        toWrite.append(getBuilder().getName()).append(LINE_SEP);
-        toWrite.append(encodeBlocks(getBuilder().getInventory()));
-        toWrite.append(LINE_SEP);
-
-        List<Tile> tiles = getTiles();
-
-        StringBuilder exits = new StringBuilder();
-
-        // total tiles
-        toWrite.append("total:").append(tiles.size()).append(LINE_SEP);
-
-        // tile blocks (and handle tile exits using a second string builder)
-        for (int i = 0; i < tiles.size(); i++) {
-            toWrite.append(encodeTile(tiles.get(i), i));
-            exits.append(encodeExits(tiles, tiles.get(i), i));
+            // tile exits
+            writer.write("exits");
+            writer.write(LINE_SEP);
+            for (int i = 0; i < numTiles; i++) {
+                writeExits(writer, tileArray.getTileAt(i), i);
+            }
         }
-        toWrite.append(LINE_SEP);
-
-        // write exits
-        toWrite.append("exits").append(LINE_SEP);
-        toWrite.append(exits.toString());
-
-        // write the string builder toWrite to a file
-        BufferedWriter writer =
-                new BufferedWriter(new FileWriter(filename));
-        writer.write(toWrite.toString());
+    }
 
-        writer.close();
+    /**
+     * Saves the given WorldMap to a file in the binary map format, which
+     * can be loaded with the WorldMap(filename) constructor. <br>
+     * A binary map is smaller and faster to load than a text map. It holds
+     * the same information as a text map, plus the tile the builder is on
+     * and any exits other than "north", "east", "south" and "west". <br>
+     * The Tile IDs relate to the ordering of tiles returned by getTiles(),
+     * as for saveMap().
+     *
+     * @param filename the filename to be written to
+     * @throws IOException if the file cannot be opened or written to, or a
+     *         block is not a "grass", "soil", "wood" or "stone" block
+     * @require filename != null
+     */
+    public void saveBinaryMap(String filename) throws IOException {
+        BinaryMapFormat.write(filename, getStartPosition(), getBuilder(),
+                tileArray);
     }
 
     /**
-     * Encodes the exits of the given tile as a correctly formatted line to be
-     * written to a tileArray file.
+     * Writes the exits of the given tile as a correctly formatted line of
+     * a world map file. <br>
+     * Exits are written in order of name. Exits to tiles that are not in
+     * the map are written with the id -1.
      *
-     * @param tiles all the tiles in the tileArray
-     * @param tile the tile to encode the exits of
+     * @param writer the writer to write to
+     * @param tile the tile to write the exits of
      * @param id the id of the tile in the file
-     * @return an encoded string representing the tile's exits
+     * @throws IOException if writing fails
      */
-    private static String encodeExits(List<Tile> tiles, Tile tile, int id) {
-        StringBuilder result = new StringBuilder();
-        result.append(id).append(" ");
+    private void writeExits(Writer writer, Tile tile, int id)
+            throws IOException {
+        writer.write(Integer.toString(id));
+        writer.write(' ');
 
         String sep = "";
 
-        // encode each exit into a StringBuilder
-        for (String exitName : tile.getExits().keySet()) {
-            result.append(sep);
-            result.append(exitName).append(":");
-            result.append(tiles.indexOf(tile.getExits().get(exitName)));
-            sep = ",";
+        if (!tile.hasNamedExits()) {
+            // only "north", "east", "south" and "west" exits, so avoid
+            // sorting the exits by name
+            for (int index : EXITS_BY_NAME) {
+                Tile exit = tile.getExit(index);
+                if (exit != null) {
+                    writer.write(sep);
+                    writeExit(writer, Tile.exitName(index), exit);
+                    sep = ",";
+                }
+            }
+        } else {
+            for (Map.Entry<String, Tile> exit : tile.getExits().entrySet()) {
+                writer.write(sep);
+                writeExit(writer, exit.getKey(), exit.getValue());
+                sep = ",";
+            }
         }
 
-
-        result.append(LINE_SEP);
-
-        return result.toString();
+        writer.write(LINE_SEP);
     }
 
     /**
-     * Encodes the given tile in the correct format to be written to a tileArray
-     * file.
-     * @param tile the tile to be encoded
-     * @param id the id of the tile in the file
-     * @return the encoded tile
+     * Writes a single exit in the form {@literal <name>:<id>}.
+     * @param writer the writer to write to
+     * @param name the name of the exit
+     * @param exit the tile the exit leads to
+     * @throws IOException if writing fails
      */
-    private static String encodeTile(Tile tile, int id) {
-        return id + " " + encodeBlocks(tile.getBlocks());
+    private void writeExit(Writer writer, String name, Tile exit)
+            throws IOException {
+        writer.write(name);
+        writer.write(':');
+        writer.write(Integer.toString(tileArray.indexOf(exit)));
     }
 
     /**
-     * Encodes a list of blocks in the correct format to be written to a
-     * world map file.
-     * @param blocks the list of blocks to be encoded
-     * @return the encoded block list
+     * Writes a list of blocks in the correct format for a world map file,
+     * followed by a line separator.
+     * @param writer the writer to write to
+     * @param blocks the list of blocks to be written
+     * @throws IOException if writing fails
      */
-    private static String encodeBlocks(List<Block> blocks) {
-
-        if (blocks.size() == 0) {
-            return LINE_SEP;
-        }
-
-        StringBuilder result = new StringBuilder();
-        for (Block item : blocks) {
-            result.append(item.getBlockType()).append(',');
+    private static void writeBlocks(Writer writer, List<Block> blocks)
+            throws IOException {
+        for (int i = 0; i < blocks.size(); i++) {
+            if (i > 0) {
+                writer.write(',');
+            }
+            writer.write(blocks.get(i).getBlockType());
         }
-        result.deleteCharAt(result.length() - 1);
-        result.append(LINE_SEP);
-
-        return result.toString();
+        writer.write(LINE_SEP);
     }
 
     /**
@@ -861,25 +1302,18 @@ public class WorldMap {
     }
 
     /**
-     * Creates a block based on the required type provided.
-     * @param blockType the type of block to be created
-     * @return a new block of type blockType
+     * Gets the shared block of the required type provided.
+     * @param blockType the type of block
+     * @return the shared block of type blockType
      */
     private static Block decodeBlock(String blockType) throws
             WorldMapFormatException {
-        switch (blockType) {
-            case "grass":
-                return new GrassBlock();
-            case "soil":
-                return new SoilBlock();
-            case "stone":
-                return new StoneBlock();
-            case "wood":
-                return new WoodBlock();
-            default:
-                throw new WorldMapFormatException(
-                        "Invalid block name specified");
+        Block block = StandardBlocks.fromBlockType(blockType);
+        if (block == null) {
+            throw new WorldMapFormatException(
+                    "Invalid block name specified");
         }
+        return block;
     }
 
     /**
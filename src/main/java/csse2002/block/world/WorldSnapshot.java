@@ -0,0 +1,104 @@
+package csse2002.block.world;
+
+import java.util.List;
+
+/**
+ * A read only view of a WorldMap's blocks and builder at the moment it was
+ * taken (see {@link WorldMap#snapshot()}), which does not change when the
+ * map changes. <br>
+ * Any thread can read a snapshot while other threads change the map.
+ * Reading never waits for or blocks changes to the map, and always sees
+ * the whole of each change or none of it (e.g. a block being moved is on
+ * exactly one of the two tiles). <br>
+ * The map keeps the history a snapshot needs until it is closed, so
+ * snapshots should be closed when no longer needed. A snapshot must not be
+ * read after it is closed. <br>
+ * Only blocks and the map's builder are in the snapshot. Exits, and the
+ * tiles of the map, must not be changed while snapshots are open.
+ * @serial exclude
+ */
+public class WorldSnapshot implements AutoCloseable {
+
+    // the map the snapshot is of
+    private final WorldMap map;
+
+    // the map's history, and the epoch of the snapshot in it
+    private final SnapshotLog log;
+    private final long epoch;
+
+    // whether close() has been called
+    private boolean closed;
+
+    /**
+     * Create a snapshot.
+     * @param map the map the snapshot is of
+     * @param log the map's history
+     * @param epoch the epoch of the snapshot, returned by log.open()
+     */
+    WorldSnapshot(WorldMap map, SnapshotLog log, long epoch) {
+        this.map = map;
+        this.log = log;
+        this.epoch = epoch;
+    }
+
+    /**
+     * Get the map the snapshot is of.
+     * @return the map
+     */
+    public WorldMap getMap() {
+        return map;
+    }
+
+    /**
+     * Get the blocks on a tile when the snapshot was taken.
+     * @param tile the tile
+     * @return a read only list of the blocks, index 0 is the bottom
+     * @require tile is a tile of getMap()
+     */
+    public List<Block> getBlocks(Tile tile) {
+        return log.getBlocks(tile, epoch);
+    }
+
+    /**
+     * Get the blocks on the tile at a position when the snapshot was taken.
+     * @param x the x coordinate
+     * @param y the y coordinate
+     * @return a read only list of the blocks, index 0 is the bottom, or
+     *         null if there is no tile at that position
+     */
+    public List<Block> getBlocks(int x, int y) {
+        Tile tile = map.getTileArray().getTile(x, y);
+        return tile == null ? null : log.getBlocks(tile, epoch);
+    }
+
+    /**
+     * Get the tile the map's builder was on when the snapshot was taken.
+     * @return the builder's tile
+     */
+    public Tile getBuilderTile() {
+        return log.getBuilderTile(epoch);
+    }
+
+    /**
+     * Get the map's builder's inventory when the snapshot was taken.
+     * @return a read only list of the inventory
+     */
+    public List<Block> getBuilderInventory() {
+        return log.getBuilderInventory(epoch);
+    }
+
+    /**
+     * Close the snapshot, so the map no longer keeps history for it. <br>
+     * Closing a snapshot more than once has no effect.
+     */
+    @Override
+    public void close() {
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+        }
+        log.close(epoch);
+    }
+}
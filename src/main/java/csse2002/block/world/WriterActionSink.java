@@ -0,0 +1,103 @@
+package csse2002.block.world;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.Writer;
+
+/**
+ * An ActionSink that writes the message Action.processAction() would print
+ * for each outcome, one per line. <br>
+ * Messages are collected in a buffer and written when it is full, or when
+ * flush() is called.
+ * @serial exclude
+ */
+public class WriterActionSink implements ActionSink {
+
+    // the number of buffered chars that causes the buffer to be written
+    private static final int BUFFER_SIZE = 1 << 13;
+
+    // the line separator println() uses
+    private static final String LINE_SEPARATOR = System.lineSeparator();
+
+    // the writer or stream to write to (exactly one is not null)
+    private final Writer writer;
+    private final PrintStream stream;
+
+    // the messages that have not been written
+    private final StringBuilder buffer;
+
+    /**
+     * Create a sink that writes to a Writer.
+     * @param writer the writer
+     * @require writer != null
+     */
+    public WriterActionSink(Writer writer) {
+        this(writer, null);
+    }
+
+    /**
+     * Create a sink that writes to a PrintStream (e.g. System.out), encoded
+     * the same way as stream.println() would.
+     * @param stream the stream
+     * @require stream != null
+     */
+    public WriterActionSink(PrintStream stream) {
+        this(null, stream);
+    }
+
+    /**
+     * Create a sink that writes to a writer or a stream.
+     * @param writer the writer, or null
+     * @param stream the stream, or null
+     */
+    private WriterActionSink(Writer writer, PrintStream stream) {
+        this.writer = writer;
+        this.stream = stream;
+        buffer = new StringBuilder(BUFFER_SIZE + 64);
+    }
+
+    /**
+     * Buffer the message for the outcome of an action.
+     * @param action the action that was performed
+     * @param outcome the outcome of the action
+     * @throws IOException if the buffer is full and writing fails
+     */
+    @Override
+    public void accept(Action action, ActionOutcome outcome)
+            throws IOException {
+        buffer.append(outcome.describe(action)).append(LINE_SEPARATOR);
+        if (buffer.length() >= BUFFER_SIZE) {
+            writeBuffer();
+        }
+    }
+
+    /**
+     * Write and flush the buffered messages.
+     * @throws IOException if writing fails
+     */
+    @Override
+    public void flush() throws IOException {
+        writeBuffer();
+        if (writer != null) {
+            writer.flush();
+        } else {
+            stream.flush();
+        }
+    }
+
+    /**
+     * Write the buffered messages, and empty the buffer.
+     * @throws IOException if writing fails
+     */
+    private void writeBuffer() throws IOException {
+        if (buffer.length() == 0) {
+            return;
+        }
+        if (writer != null) {
+            writer.append(buffer);
+        } else {
+            stream.print(buffer);
+        }
+        buffer.setLength(0);
+    }
+}
@@ -116,8 +116,8 @@ public class GameController
      */
     @Override
     public void moveBuilder(Direction direction) throws NoExitException {
-        Tile newTile = model.getCurrentTile()
-                .getExits().get(direction.name());
+        // Direction's ordinals match the exit indices used by Tile.
+        Tile newTile = model.getCurrentTile().getExit(direction.ordinal());
         model.getBuilder().moveTo(newTile);
 
         model.setCurrentPosition(Positions.add(
@@ -3,6 +3,7 @@ package game.model;
 import csse2002.block.world.Block;
 import csse2002.block.world.GrassBlock;
 import csse2002.block.world.SoilBlock;
+import csse2002.block.world.StandardBlocks;
 import csse2002.block.world.StoneBlock;
 import csse2002.block.world.WoodBlock;
 
@@ -18,32 +19,40 @@ import java.util.Map;
  */
 public enum BlockType {
     /** Wood block type. */
-    wood(WoodBlock.class),
+    wood(WoodBlock.class, WoodBlock.ORDINAL),
     /** Grass block type. */
-    grass(GrassBlock.class),
+    grass(GrassBlock.class, GrassBlock.ORDINAL),
     /** Soil block type. */
-    soil(SoilBlock.class),
+    soil(SoilBlock.class, SoilBlock.ORDINAL),
     /** Stone block type. */
-    stone(StoneBlock.class);
+    stone(StoneBlock.class, StoneBlock.ORDINAL);
 
     /** Class of the block type. */
     private final Class<? extends Block> blockClass;
+    /** Type ordinal of the block type, see {@link Block#getTypeOrdinal()}. */
+    private final int typeOrdinal;
 
-    /** Map of classes to enum values. */
+    /** Map of classes to enum values, for blocks without a type ordinal. */
     private final static Map<Class, BlockType> classToType = new HashMap<>();
+    /** Enum values indexed by block type ordinal. */
+    private final static BlockType[] ordinalToType =
+            new BlockType[StandardBlocks.COUNT];
     static {
         // Because we can't access static from an enum constructor.
         for (BlockType blockType : BlockType.values()) {
             classToType.put(blockType.blockClass, blockType);
+            ordinalToType[blockType.typeOrdinal] = blockType;
         }
     }
 
     /**
      * New BlockType value.
      * @param blockClass Block's class type.
+     * @param typeOrdinal Block's type ordinal.
      */
-    BlockType(Class<? extends Block> blockClass) {
+    BlockType(Class<? extends Block> blockClass, int typeOrdinal) {
         this.blockClass = blockClass;
+        this.typeOrdinal = typeOrdinal;
     }
 
     /**
@@ -53,7 +62,26 @@ public enum BlockType {
      * @return Value from this enum.
      */
     public static BlockType fromBlock(Block block) {
+        BlockType blockType = fromTypeOrdinal(block.getTypeOrdinal());
+        if (blockType != null) {
+            return blockType;
+        }
         return classToType.get(block.getClass());
     }
+
+    /**
+     * Returns the enum value of the given block type ordinal.
+     *
+     * @param typeOrdinal Block type ordinal, see
+     *                    {@link Block#getTypeOrdinal()}.
+     * @return Value from this enum, or null if the ordinal is not a
+     *         standard block type.
+     */
+    public static BlockType fromTypeOrdinal(int typeOrdinal) {
+        if (typeOrdinal >= 0 && typeOrdinal < ordinalToType.length) {
+            return ordinalToType[typeOrdinal];
+        }
+        return null;
+    }
 }
 
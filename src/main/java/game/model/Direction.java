@@ -1,10 +1,12 @@
 package game.model;
 
 import csse2002.block.world.Position;
+import csse2002.block.world.Tile;
 
 /**
  * Enum representing the four cardinal directions. Defined in the order of
- * N, E, S, W.
+ * N, E, S, W, so each ordinal is the matching exit index of {@link Tile}
+ * (e.g. {@code north.ordinal() == Tile.NORTH}).
  */
 public enum Direction {
     /** North enum value. */
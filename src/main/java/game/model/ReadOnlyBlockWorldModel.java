@@ -8,7 +8,7 @@ import csse2002.block.world.WorldMap;
 import game.model.events.BaseBlockWorldEvent;
 
 import java.util.Collections;
-import java.util.HashMap;
+import java.util.EnumMap;
 import java.util.Map;
 
 /**
@@ -75,6 +75,18 @@ public abstract class ReadOnlyBlockWorldModel
         return getWorldMap().getTile(position);
     }
 
+    /**
+     * Gets the tile at the given coordinates, without allocating a
+     * {@link Position}.
+     * @param x x coordinate of tile.
+     * @param y y coordinate of tile.
+     * @return Tile at (x, y) or null if no such tile exists.
+     * @see WorldMap#getTile(int, int)
+     */
+    public final Tile getTile(int x, int y) {
+        return getWorldMap().getTile(x, y);
+    }
+
     /**
      * Computes and returns a mapping representing the count of each block
      * type in the builder's current inventory.
@@ -84,13 +96,16 @@ public abstract class ReadOnlyBlockWorldModel
      * @return Mapping of block counts.
      */
     public final Map<BlockType, Integer> getInventoryCount() {
-        Map<BlockType, Integer> countMap = new HashMap<>();
-        for (BlockType type : BlockType.values()) {
-            countMap.put(type, 0);
-        }
+        // Count into an array indexed by enum ordinal, then box once per
+        // block type rather than once per block.
+        int[] counts = new int[BlockType.values().length];
         for (Block block : getBuilder().getInventory()) {
-            BlockType type = BlockType.fromBlock(block);
-            countMap.put(type, countMap.get(type) + 1);
+            counts[BlockType.fromBlock(block).ordinal()]++;
+        }
+
+        Map<BlockType, Integer> countMap = new EnumMap<>(BlockType.class);
+        for (BlockType type : BlockType.values()) {
+            countMap.put(type, counts[type.ordinal()]);
         }
         return Collections.unmodifiableMap(countMap);
     }
@@ -21,8 +21,6 @@ import javafx.geometry.Pos;
 import javafx.scene.control.Button;
 import javafx.scene.layout.VBox;
 
-import java.util.Map;
-
 /**
  * Pane containing two d-pads for moving the builder and blocks, as well as
  * a dig button.
@@ -80,9 +78,9 @@ public class GameControlsPane extends VBox implements ControlsView {
      * @param event Event, unused.
      */
     private void updateBuilderExits(BaseBlockWorldEvent event) {
-        Map<String, Tile> exits = model.getCurrentTile().getExits();
+        int exits = model.getCurrentTile().exitMask();
         for (Direction dir : Direction.values()) {
-            boolean hasExit = exits.containsKey(dir.name());
+            boolean hasExit = (exits & (1 << dir.ordinal())) != 0;
 
             builderDPad.getButton(dir).setDisable(!hasExit);
             blockDPad.getButton(dir).setDisable(!hasExit);
@@ -101,7 +99,7 @@ public class GameControlsPane extends VBox implements ControlsView {
             // Because we disable buttons when there is no exit, we know
             // this exception is caused by incorrect heights.
             int adjHeight = model.getCurrentTile()
-                    .getExits().get(direction.name()).getBlocks().size();
+                    .getExit(direction.ordinal()).getBlocks().size();
             int ourHeight = model.getCurrentTile()
                     .getBlocks().size();
             String relation = adjHeight > ourHeight ? "high" : "low";
@@ -11,7 +11,6 @@ import game.model.events.BuilderMovedEvent;
 import game.model.events.ErrorEvent;
 import game.model.events.MessageEvent;
 import game.model.events.WorldMapLoadedEvent;
-import game.util.Cache;
 import game.util.Utilities;
 import game.view.components.FadingLabel;
 import game.view.components.TileSquare;
@@ -26,7 +25,7 @@ import javafx.scene.layout.StackPane;
 import javafx.scene.paint.Color;
 import javafx.util.Duration;
 
-import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.Map;
 
 /**
@@ -37,12 +36,12 @@ public class GameWorldMapView extends UniformGridPane {
     // We don't ever remove items from this unless a new map is loaded.
     // Potentially, memory usage could increase without bound, but we
     // only generate tiles as they are encountered so this is not much of a
-    // problem.
-    /** Mapping of position to tile square instances. */
-    private final Map<Position, TileSquare> tileSquareMap = new HashMap<>();
-    /** Cache of tile heights, used for computing AO. */
-    private final Cache<Position, Integer>
-            tileHeights = new Cache<>(this::getTileHeight);
+    // problem. Keyed by tile, so tile squares can be found by coordinates
+    // (see WorldMap#getTile(int, int)) without allocating positions.
+    /** Mapping of tile to tile square instances. */
+    private final Map<Tile, TileSquare> tileSquareMap = new IdentityHashMap<>();
+    /** Relative heights of adjacent tiles, reused for computing AO. */
+    private final int[] adjacentHeights = new int[8];
     /** 2-dimensional array of tile panes. Indexed as tilePanes[col][row]. */
     private final Pane[][] tilePanes;
 
@@ -210,19 +209,6 @@ public class GameWorldMapView extends UniformGridPane {
         GridPane.setHalignment(label, HPos.CENTER);
     }
 
-    /**
-     * Computes and returns the height of the tile at the given position.
-     * @param position Position of tile.
-     * @return Number of blocks on tile.
-     */
-    private int getTileHeight(Position position) {
-        Tile tile = model.getTile(position);
-        if (tile == null) {
-            return 0;
-        }
-        return model.getTile(position).getBlocks().size();
-    }
-
     /**
      * Updates tiles on the changed block and updates the lighting of all
      * its neighbours.
@@ -230,97 +216,68 @@ public class GameWorldMapView extends UniformGridPane {
      */
     private void blocksChangedHandler(BlocksChangedEvent event) {
         Position position = event.getPosition();
-        updateTileBlocks(position);
-        updateAOAllNeighbours(position);
+        updateTileBlocks(model.getTile(position));
+        updateAOAllNeighbours(position.getX(), position.getY());
     }
 
     /**
-     * Updates the height and top block of the tile at the given position.
-     * @param position Position of tile to update.
+     * Updates the height and top block of the given tile.
+     * @param tile Tile to update.
      */
-    private void updateTileBlocks(Position position) {
-        Tile tile = model.getTile(position);
-        TileSquare tileSquare = tileSquareMap.get(position);
+    private void updateTileBlocks(Tile tile) {
+        TileSquare tileSquare = tileSquareMap.get(tile);
         assert tileSquare != null;
 
-        int height = tile.getBlocks().size();
+        int height = tile.height();
         tileSquare.setHeight(height);
-        tileHeights.put(position, height);
 
-        try {
-            tileSquare.setTopBlock(height == 0
-                    ? null : BlockType.fromBlock(tile.getTopBlock()));
-        } catch (TooLowException e) {
-            throw new AssertionError(e);
+        BlockType topBlock = BlockType.fromTypeOrdinal(tile.topBlockOrdinal());
+        if (topBlock == null && height > 0) {
+            // Not a standard block type, look it up by class.
+            try {
+                topBlock = BlockType.fromBlock(tile.getTopBlock());
+            } catch (TooLowException e) {
+                throw new AssertionError(e);
+            }
         }
+        tileSquare.setTopBlock(topBlock);
     }
 
     /**
      * Updates the ambient occlusion of all neighbours (8 blocks) surrounding
      * the given position, as well as the position itself.
-     * @param position Position to update.
+     * @param x x coordinate of position to update.
+     * @param y y coordinate of position to update.
      */
-    private void updateAOAllNeighbours(Position position) {
-        updateAOSingle(position);
-        Position[] neighbours = getAdjacentPositions(position);
-        for (int i = 0; i < 8; i++) {
-            updateAOSingle(neighbours[i]);
+    private void updateAOAllNeighbours(int x, int y) {
+        for (int dx = -1; dx <= 1; dx++) {
+            for (int dy = -1; dy <= 1; dy++) {
+                updateAOSingle(x + dx, y + dy);
+            }
         }
     }
 
     /**
      * Updates ambient occlusion of the single tile at the given position.
-     * @param position Position of tile to update
+     * @param x x coordinate of tile to update.
+     * @param y y coordinate of tile to update.
      */
-    private void updateAOSingle(Position position) {
-        TileSquare tileSquare = tileSquareMap.get(position);
+    private void updateAOSingle(int x, int y) {
+        Tile tile = model.getTile(x, y);
+        TileSquare tileSquare = tile == null ? null : tileSquareMap.get(tile);
         if (tileSquare == null) {
             return; // No tile exists here. Nothing to do.
         }
 
-        int thisHeight = tileHeights.get(position);
-        Position[] adjPositions = getAdjacentPositions(position);
-        int[] adjacent = new int[8];
-
+        // Heights of the 8 adjacent tiles, starting north-west and
+        // proceeding clockwise.
+        int thisHeight = tile.height();
+        model.getWorldMap().neighbourHeights(x, y, adjacentHeights);
         for (int i = 0; i < 8; i++) {
-            adjacent[i] = tileHeights.get(adjPositions[i]) - thisHeight;
+            adjacentHeights[i] -= thisHeight;
         }
 
-        tileSquare.getAmbientOcclusion().setAdjacent(adjacent);
-    }
-
-    /**
-     * Gets the 8 positions immediately adjacent to the given position,
-     * starting north-west and proceeding clockwise.
-     * @param centre Centre position.
-     * @return Array of adjacent positions.
-     */
-    private Position[] getAdjacentPositions(Position centre) {
-        Position[] positions = new Position[8];
-
-        // Start at north-west of the given position.
-        int curX = centre.getX()-1;
-        int curY = centre.getY()-1;
-
-        int dx = 1;
-        int dy = 0;
-        int oldDy;
-        // Gets 8 positions. Starts by moving horizontally to the right.
-        for (int i = 0; i < 8; i++) {
-            positions[i] = new Position(curX, curY);
-
-            // At corners, rotate 90 degrees clockwise.
-            if (i % 2 == 0 && i != 0) {
-                oldDy = dy;
-                dy = dx;
-                dx = -oldDy;
-            }
-
-            // Shift to the next position.
-            curX += dx;
-            curY += dy;
-        }
-        return positions;
+        tileSquare.getAmbientOcclusion().setAdjacent(adjacentHeights);
     }
 
     /**
@@ -350,7 +307,6 @@ public class GameWorldMapView extends UniformGridPane {
      */
     private void resetInternalState() {
         clearTilePanes();
-        tileHeights.clear();
         tileSquareMap.clear();
     }
 
@@ -374,13 +330,14 @@ public class GameWorldMapView extends UniformGridPane {
         for (int c = 0; c < this.columns; c++) {
             for (int r = 0; r < this.rows; r++) {
                 // Position index of the current cell.
-                Position pos = new Position(curX+c-halfCols, curY+r-halfRows);
-                TileSquare tile = getOrMakeSquare(pos);
+                int x = curX+c-halfCols;
+                int y = curY+r-halfRows;
+                TileSquare tile = getOrMakeSquare(x, y);
                 if (tile == null) { // No tile at this position.
                     tilePanes[c][r].getChildren().clear();
                     continue;
                 }
-                tile.setBuilderTile(pos.equals(current));
+                tile.setBuilderTile(x == curX && y == curY);
                 tilePanes[c][r].getChildren().setAll(tile);
             }
         }
@@ -394,34 +351,36 @@ public class GameWorldMapView extends UniformGridPane {
      * null if there is no tile at the position.
      *
      * Creates a new tile square if none has previously been generated.
-     * @param pos Position of tile.
+     * @param x x coordinate of tile.
+     * @param y y coordinate of tile.
      * @return Tile square of position.
      */
-    private TileSquare getOrMakeSquare(Position pos) {
-        Tile tile = model.getTile(pos);
+    private TileSquare getOrMakeSquare(int x, int y) {
+        Tile tile = model.getTile(x, y);
         if (tile == null) {
             return null;
         }
-        TileSquare square = tileSquareMap.get(pos);
+        TileSquare square = tileSquareMap.get(tile);
         if (square == null) {
             square = new TileSquare();
             // Set width based on the number of columns.
             square.maxWidthProperty().bind(widthProperty().divide(columns));
-            Map<String, Tile> exits = tile.getExits();
+            int exitMask = tile.exitMask();
 
-            // Add all exits.
+            // Add all exits. Direction ordinals are the exit indexes.
             for (Direction direction : Direction.values()) {
-                square.setHasExit(direction, exits.containsKey(direction.name()));
+                square.setHasExit(direction,
+                        (exitMask & (1 << direction.ordinal())) != 0);
             }
             // Add to mapping.
-            tileSquareMap.put(pos, square);
+            tileSquareMap.put(tile, square);
             // Apply visibilities.
             square.setExitVisibility(exitsVisible);
             square.setHeightVisibility(heightsVisible);
             square.getAmbientOcclusion().setVisible(ambientOcclusionOn);
             // Update visual state.
-            updateTileBlocks(pos);
-            updateAOSingle(pos);
+            updateTileBlocks(tile);
+            updateAOSingle(x, y);
         }
         return square;
     }
@@ -13,7 +13,7 @@ import javafx.scene.image.ImageView;
 import javafx.scene.layout.StackPane;
 
 import java.util.Collection;
-import java.util.HashMap;
+import java.util.EnumMap;
 import java.util.Map;
 
 
@@ -21,10 +21,12 @@ import java.util.Map;
  * Visual representation of a single {@link Tile} on the map.
  */
 public class TileSquare extends StackPane implements TileView {
-    /** Mapping of block types to images to use. null is for no blocks. */
-    private final static Map<BlockType, String> blockImages = new HashMap<>();
+    /** Image to use for tiles with no blocks. */
+    private final static String bedrockImage = "file:src/images/bedrock.png";
+    /** Mapping of block types to images to use. */
+    private final static Map<BlockType, String> blockImages =
+            new EnumMap<>(BlockType.class);
     static {
-        blockImages.put(null, "file:src/images/bedrock.png");
         blockImages.put(BlockType.grass, ("file:src/images/grass_top2.png"));
         blockImages.put(BlockType.soil, ("file:src/images/dirt.png"));
         blockImages.put(BlockType.stone, ("file:src/images/stone.png"));
@@ -147,7 +149,8 @@ public class TileSquare extends StackPane implements TileView {
      */
     @Override
     public void setTopBlock(BlockType blockType) {
-        String path = blockImages.get(blockType);
+        String path = blockType == null
+                ? bedrockImage : blockImages.get(blockType);
         loadAndSetImage(blockImage, path);
     }
 